@@ -0,0 +1,107 @@
+package org.ltimothy.fclab;
+
+import org.ltimothy.fclab.gui.DefaultGUI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times launching the shadow jar in a fresh JVM until it exits, once per measured iteration. The user interface exits
+ * right after showing its first frame, so its score is the time to first frame as a user sees it, including JVM
+ * startup. The command line validates {@code SampleData}. Each launch runs with the JDK's default class-data sharing
+ * archive and with the application archive built by {@code ./gradlew cdsArchive}; run it with
+ * {@code ./gradlew startupBenchmark}, which passes both paths.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"gui", "cli"})
+    public String launch;
+
+    @Param({"default", "app"})
+    public String classDataSharing;
+
+    @Param("")
+    public String jar;
+
+    @Param("")
+    public String archive;
+
+    @Param("SampleData/data.csv")
+    public String input;
+
+    private List<String> command;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (!new File(jar).isFile()) {
+            throw new IllegalStateException("Missing the shadow jar, pass it with -p jar=<file>");
+        }
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if ("app".equals(classDataSharing)) {
+            if (!new File(archive).isFile()) {
+                throw new IllegalStateException("Missing the class-data sharing archive, pass it with " +
+                        "-p archive=<file>");
+            }
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+
+        output = Files.createTempFile("startup", ".csv").toFile();
+        if ("gui".equals(launch)) {
+            if (GraphicsEnvironment.isHeadless()) {
+                throw new IllegalStateException("No display to show the first frame on");
+            }
+            command.add("-D" + DefaultGUI.EXIT_AFTER_FIRST_FRAME_PROPERTY + "=true");
+            command.add("-jar");
+            command.add(jar);
+        } else {
+            command.addAll(List.of("-jar", jar, "--input", input, "--id-column", "AF", "--first-column", "C",
+                    "--prefix", "X_", "--output", output.getPath(), "--quiet"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (output != null && !output.delete()) {
+            output.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public int launch() throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        final int exitValue = process.waitFor();
+        if (exitValue != 0) {
+            throw new IllegalStateException("Exited with " + exitValue + ": " + command);
+        }
+        return exitValue;
+    }
+}
@@ -0,0 +1,27 @@
+package org.ltimothy.fclab.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times {@link CharsetDetector#detectCharset} on a freshly created detector, as the GUI does for every selected file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CharsetDetectionBenchmark {
+    @Benchmark
+    public Charset detectCharset(final SyntheticExportState state) {
+        return new CharsetDetector().detectCharset(state.file);
+    }
+}
@@ -0,0 +1,102 @@
+package org.ltimothy.fclab.data;
+
+import org.ltimothy.fclab.listener.ComparisonListener;
+import org.ltimothy.fclab.listener.ComparisonSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the pair comparison loop on rows that are already parsed, and the whole analysis of a file with a varying
+ * number of comparison threads or with dictionary-encoded rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CompareBenchmark {
+    private static final int QUALTRICS_HEADERS_TOTAL_LENGTH = 3;
+
+    private String[] primaryHeader;
+    private List<String[][]> pairs;
+
+    @Setup(Level.Trial)
+    public void loadPairs(final SyntheticExportState state) throws IOException {
+        final int participantIdColumn = state.export.getParticipantIdColumn();
+        final List<String[]> rows = new ArrayList<>();
+        try (final RecordReader reader = ParserType.OPENCSV.open(state.file, StandardCharsets.UTF_8,
+                state.fileType.getDelimiter())) {
+            reader.scan((record, offset, length) -> rows.add(record.toArray()));
+        }
+
+        primaryHeader = rows.get(0);
+        final Map<String, String[]> participantIdToRow = new HashMap<>();
+        for (final String[] row : rows.subList(QUALTRICS_HEADERS_TOTAL_LENGTH, rows.size())) {
+            participantIdToRow.put(row[participantIdColumn], row);
+        }
+        pairs = new ArrayList<>();
+        for (final Map.Entry<String, String[]> entry : participantIdToRow.entrySet()) {
+            final String[] doubleEntry = participantIdToRow.get(SyntheticExport.DOUBLE_ENTRY_PREFIX + entry.getKey());
+            if (doubleEntry != null) {
+                pairs.add(new String[][]{entry.getValue(), doubleEntry});
+            }
+        }
+    }
+
+    /**
+     * Sequential comparison of every pair, the part of the analysis that runs on the comparison threads.
+     */
+    @Benchmark
+    public ComparisonSummary comparePairs(final SyntheticExportState state, final Blackhole blackhole) {
+        final EntryComparator entryComparator = new EntryComparator(state.export.getParticipantIdColumn(),
+                SyntheticExport.FIRST_RELEVANT_COLUMN, ComparisonListener.NONE);
+        entryComparator.usePlan(primaryHeader, List.of(), new int[0]);
+        for (final String[][] pair : pairs) {
+            blackhole.consume(entryComparator.comparePair(pair[0][state.export.getParticipantIdColumn()],
+                    primaryHeader, pair[0], pair[1]));
+        }
+        return entryComparator.finish();
+    }
+
+    @Benchmark
+    public QualtricsSurvey analyzeFile(final SyntheticExportState state, final ComparisonThreads threads) {
+        return new QualtricsSurvey(state.file, state.export.surveyOptions()
+                .comparisonThreads(threads.count)
+                .build(), ComparisonListener.NONE, ProgressListener.NONE);
+    }
+
+    /**
+     * Whole analysis with the export held as dictionary codes, comparable to {@link #analyzeFile} on one thread.
+     */
+    @Benchmark
+    public DictionaryEncodedSurvey analyzeFileDictionaryEncoded(final SyntheticExportState state) {
+        return new DictionaryEncodedSurvey(state.file, state.options(), ComparisonListener.NONE,
+                ProgressListener.NONE);
+    }
+
+    @State(Scope.Benchmark)
+    public static class ComparisonThreads {
+        @Param({"1", "4"})
+        public int count;
+    }
+}
@@ -0,0 +1,87 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.CSVWriter;
+import com.opencsv.ICSVWriter;
+import org.ltimothy.fclab.listener.ComparisonListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times writing an analyzed survey, both through {@link QualtricsSurvey#getExportData()} and {@link CSVWriter} into a
+ * discarding writer, and through {@link SurveyExporter} into a plain or gzipped file as the save button does, as well
+ * as analyzing while exporting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExportBenchmark {
+    private QualtricsSurvey survey;
+    private File output;
+    private File compressedOutput;
+
+    @Setup(Level.Trial)
+    public void analyze(final SyntheticExportState state) throws IOException {
+        survey = new QualtricsSurvey(state.file, state.options(), ComparisonListener.NONE, ProgressListener.NONE);
+        output = File.createTempFile("synthetic-export-validated-", "." + state.fileType.getExtension());
+        output.deleteOnExit();
+        compressedOutput = SurveyExporter.compressed(output);
+        compressedOutput.deleteOnExit();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(output.toPath());
+        Files.deleteIfExists(compressedOutput.toPath());
+    }
+
+    @Benchmark
+    public void writeExportData(final SyntheticExportState state) throws IOException {
+        try (final ICSVWriter writer = new CSVWriter(Writer.nullWriter(), state.fileType.getDelimiter(),
+                ICSVWriter.DEFAULT_QUOTE_CHARACTER, ICSVWriter.DEFAULT_ESCAPE_CHARACTER,
+                ICSVWriter.DEFAULT_LINE_END)) {
+            for (final String[] row : survey.getExportData()) {
+                writer.writeNext(row);
+            }
+        }
+    }
+
+    @Benchmark
+    public void exportToFile(final SyntheticExportState state) throws IOException {
+        SurveyExporter.export(survey, output, state.fileType, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void exportToCompressedFile(final SyntheticExportState state) throws IOException {
+        SurveyExporter.export(survey, compressedOutput, state.fileType, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Analysis and export in one pass, with rows written as they are compared, as the command line does.
+     */
+    @Benchmark
+    public void analyzeWhileExporting(final SyntheticExportState state) throws IOException {
+        SurveyExporter.exportWhileAnalyzing(output, state.fileType, StandardCharsets.UTF_8, writer ->
+                new QualtricsSurvey(state.file, state.options(), ComparisonListener.NONE, ProgressListener.NONE,
+                        writer));
+    }
+}
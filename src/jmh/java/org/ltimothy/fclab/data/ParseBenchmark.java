@@ -0,0 +1,71 @@
+package org.ltimothy.fclab.data;
+
+import org.ltimothy.fclab.listener.ComparisonListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times {@link QualtricsSurvey#loadFile} with each {@link ParserType}, and replaying a {@link SurveySnapshot} written
+ * once per trial, without comparing any pairs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ParseBenchmark {
+    @Param({"OPENCSV", "MAPPED"})
+    public ParserType parserType;
+
+    private File snapshotFile;
+
+    @Setup(Level.Trial)
+    public void writeSnapshot(final SyntheticExportState state) {
+        snapshotFile = SurveySnapshot.defaultFileFor(state.file);
+        new QualtricsSurvey(snapshotOptions(state), ComparisonListener.NONE, ProgressListener.NONE)
+                .loadFile(state.file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSnapshot() throws IOException {
+        Files.deleteIfExists(snapshotFile.toPath());
+    }
+
+    @Benchmark
+    public int loadFile(final SyntheticExportState state) {
+        final QualtricsSurvey survey = new QualtricsSurvey(state.export.surveyOptions().parserType(parserType).build(),
+                ComparisonListener.NONE, ProgressListener.NONE);
+        survey.loadFile(state.file);
+        return survey.getParticipantCount();
+    }
+
+    @Benchmark
+    public int loadSnapshot(final SyntheticExportState state) {
+        final QualtricsSurvey survey = new QualtricsSurvey(snapshotOptions(state), ComparisonListener.NONE,
+                ProgressListener.NONE);
+        survey.loadFile(state.file);
+        return survey.getParticipantCount();
+    }
+
+    private SurveyOptions snapshotOptions(final SyntheticExportState state) {
+        return state.export.surveyOptions().parserType(parserType).snapshotFile(Optional.of(snapshotFile)).build();
+    }
+}
@@ -0,0 +1,188 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.CSVWriter;
+import com.opencsv.ICSVWriter;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates a Qualtrics-like export for the benchmarks: three header rows followed by one row per participant, with
+ * the double entries of a share of the participants appended after all original entries. The participant ID is the
+ * last column and the first two columns hold Qualtrics metadata that is not compared.
+ * <p>
+ * Run {@link #main(String[])} to write an export for manual runs of the command line.
+ */
+@Getter
+@Builder
+public class SyntheticExport {
+    public static final String DOUBLE_ENTRY_PREFIX = "X_";
+    public static final int FIRST_RELEVANT_COLUMN = 2;
+    private static final int METADATA_COLUMNS = 2;
+    private static final int ANSWER_VALUES = 6;
+
+    @Builder.Default
+    private final int participants = 10_000;
+    @Builder.Default
+    private final int columns = 100;
+    /**
+     * Share of participants that also have a double entry.
+     */
+    @Builder.Default
+    private final double doubleEntryRate = 0.5;
+    /**
+     * Share of the compared cells of a double entry that differ from the original entry.
+     */
+    @Builder.Default
+    private final double mismatchRate = 0.02;
+    /**
+     * Share of cells holding free text with quotes and delimiters, which have to be quoted.
+     */
+    @Builder.Default
+    private final double quotedRate = 0.05;
+    /**
+     * Share of cells holding free text that spans several lines.
+     */
+    @Builder.Default
+    private final double multilineRate = 0.0;
+    @NonNull
+    @Builder.Default
+    private final DelimitedFileType fileType = DelimitedFileType.CSV;
+    @Builder.Default
+    private final long seed = 42;
+
+    public static void main(@NonNull final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticExport <output.csv|output.tsv> [participants] [columns] " +
+                    "[mismatch rate] [multiline rate]");
+            return;
+        }
+        final File output = new File(args[0]);
+        final SyntheticExportBuilder builder = builder()
+                .fileType(DelimitedFileType.fromFile(output).orElse(DelimitedFileType.CSV));
+        if (args.length > 1) {
+            builder.participants(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            builder.columns(Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            builder.mismatchRate(Double.parseDouble(args[3]));
+        }
+        if (args.length > 4) {
+            builder.multilineRate(Double.parseDouble(args[4]));
+        }
+        final SyntheticExport export = builder.build();
+        export.write(output);
+        System.out.println("Wrote " + output + ", the participant ID is column index " +
+                export.getParticipantIdColumn() + " and comparisons start at column index " + FIRST_RELEVANT_COLUMN);
+    }
+
+    public int getParticipantIdColumn() {
+        return columns - 1;
+    }
+
+    public SurveyOptions.SurveyOptionsBuilder surveyOptions() {
+        return SurveyOptions.builder()
+                .participantIdColumn(getParticipantIdColumn())
+                .firstRelevantColumn(FIRST_RELEVANT_COLUMN)
+                .doubleEntryIdPrefix(DOUBLE_ENTRY_PREFIX)
+                .charset(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the export to a new temporary file, which is deleted when the JVM exits.
+     */
+    public File writeTemporaryFile() throws IOException {
+        final File file = File.createTempFile("synthetic-export-", "." + fileType.getExtension());
+        file.deleteOnExit();
+        write(file);
+        return file;
+    }
+
+    public void write(@NonNull final File file) throws IOException {
+        if (columns <= FIRST_RELEVANT_COLUMN) {
+            throw new IllegalArgumentException("At least " + (FIRST_RELEVANT_COLUMN + 1) + " columns are required");
+        }
+
+        try (final ICSVWriter writer = new CSVWriter(
+                new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8)), fileType.getDelimiter(),
+                ICSVWriter.DEFAULT_QUOTE_CHARACTER, ICSVWriter.DEFAULT_ESCAPE_CHARACTER, ICSVWriter.DEFAULT_LINE_END)) {
+            writeHeaders(writer);
+            for (int participant = 0; participant < participants; participant++) {
+                writer.writeNext(originalEntry(participant), false);
+            }
+            for (int participant = 0; participant < participants; participant++) {
+                final Random random = participantRandom(participant, 1);
+                if (random.nextDouble() < doubleEntryRate) {
+                    writer.writeNext(doubleEntry(participant, random), false);
+                }
+            }
+        }
+    }
+
+    private void writeHeaders(@NonNull final ICSVWriter writer) {
+        final String[] names = new String[columns];
+        final String[] descriptions = new String[columns];
+        final String[] importIds = new String[columns];
+        for (int column = 0; column < columns; column++) {
+            names[column] = "Q" + column;
+            descriptions[column] = "Item Description Removed";
+            importIds[column] = "{\"ImportId\":\"QID" + column + "\"}";
+        }
+        names[0] = "DistributionChannel";
+        names[1] = "UserLanguage";
+        names[getParticipantIdColumn()] = "ParticipantID";
+        writer.writeNext(names, false);
+        writer.writeNext(descriptions, false);
+        writer.writeNext(importIds, false);
+    }
+
+    private String[] originalEntry(final int participant) {
+        final Random random = participantRandom(participant, 0);
+        final String[] row = new String[columns];
+        row[0] = "anonymous";
+        row[1] = "EN";
+        for (int column = METADATA_COLUMNS; column < columns; column++) {
+            row[column] = answer(random);
+        }
+        row[getParticipantIdColumn()] = participantId(participant);
+        return row;
+    }
+
+    private String[] doubleEntry(final int participant, @NonNull final Random random) {
+        final String[] row = originalEntry(participant);
+        for (int column = FIRST_RELEVANT_COLUMN; column < getParticipantIdColumn(); column++) {
+            if (random.nextDouble() < mismatchRate) {
+                row[column] = row[column] + "0";
+            }
+        }
+        row[getParticipantIdColumn()] = DOUBLE_ENTRY_PREFIX + participantId(participant);
+        return row;
+    }
+
+    private String answer(@NonNull final Random random) {
+        final double kind = random.nextDouble();
+        if (kind < quotedRate) {
+            return "Said \"maybe\"" + fileType.getDelimiter() + " then answered " + random.nextInt(ANSWER_VALUES);
+        } else if (kind < quotedRate + multilineRate) {
+            return "First line\nSecond line " + random.nextInt(ANSWER_VALUES);
+        }
+        return Integer.toString(random.nextInt(ANSWER_VALUES));
+    }
+
+    private Random participantRandom(final int participant, final int stream) {
+        return new Random(seed * 31 + participant * 2L + stream);
+    }
+
+    private static String participantId(final int participant) {
+        return "R_" + Integer.toString(participant, Character.MAX_RADIX);
+    }
+}
@@ -0,0 +1,54 @@
+package org.ltimothy.fclab.data;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Synthetic export shared by the benchmarks, generated once per trial from the JMH parameters. Override the parameters
+ * on the command line, e.g. {@code -PjmhArgs="-p participants=100000 -p fileType=TSV"}.
+ */
+@State(Scope.Benchmark)
+public class SyntheticExportState {
+    @Param({"10000"})
+    public int participants;
+    @Param({"100"})
+    public int columns;
+    @Param({"0.02"})
+    public double mismatchRate;
+    @Param({"0.0", "0.05"})
+    public double multilineRate;
+    @Param({"CSV", "TSV"})
+    public DelimitedFileType fileType;
+
+    public SyntheticExport export;
+    public File file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        export = SyntheticExport.builder()
+                .participants(participants)
+                .columns(columns)
+                .mismatchRate(mismatchRate)
+                .multilineRate(multilineRate)
+                .fileType(fileType)
+                .build();
+        file = export.writeTemporaryFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    public SurveyOptions options() {
+        return export.surveyOptions().build();
+    }
+}
@@ -1,12 +1,43 @@
-package org.ltimothy.fclab;
-
-import org.ltimothy.fclab.dagger.DaggerServiceComponent;
-import org.ltimothy.fclab.dagger.GUIModule;
-import org.ltimothy.fclab.dagger.ServiceComponent;
-
-public class DoubleEntry {
-    public static void main(final String[] args) {
-        final ServiceComponent serviceComponent = DaggerServiceComponent.builder().gUIModule(new GUIModule()).build();
-        serviceComponent.launchGUI();
-    }
-}
+package org.ltimothy.fclab;
+
+import org.ltimothy.fclab.cli.CommandLineArguments;
+import org.ltimothy.fclab.dagger.CLIComponent;
+import org.ltimothy.fclab.dagger.CLIModule;
+import org.ltimothy.fclab.dagger.DaemonModule;
+import org.ltimothy.fclab.dagger.DaggerCLIComponent;
+import org.ltimothy.fclab.dagger.DaggerServiceComponent;
+import org.ltimothy.fclab.dagger.GUIModule;
+import org.ltimothy.fclab.dagger.ServiceComponent;
+import org.ltimothy.fclab.handler.BatchHandler;
+
+public class DoubleEntry {
+    public static void main(final String[] args) {
+        if (args.length > 0) {
+            System.exit(runHeadless(args));
+        }
+
+        final ServiceComponent serviceComponent = DaggerServiceComponent.builder().gUIModule(new GUIModule()).build();
+        serviceComponent.launchGUI().launchGUI();
+    }
+
+    private static int runHeadless(final String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        final CommandLineArguments arguments;
+        try {
+            arguments = CommandLineArguments.parse(args);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(CommandLineArguments.USAGE);
+            return BatchHandler.EXIT_FAILURE;
+        }
+
+        if (arguments.isServe()) {
+            final ServiceComponent serviceComponent =
+                    DaggerServiceComponent.builder().gUIModule(new GUIModule()).build();
+            return serviceComponent.daemonComponent(new DaemonModule(arguments)).validationDaemon().run(arguments);
+        }
+
+        final CLIComponent cliComponent = DaggerCLIComponent.builder().cLIModule(new CLIModule(arguments)).build();
+        return cliComponent.batchHandler().run(arguments);
+    }
+}
@@ -0,0 +1,394 @@
+package org.ltimothy.fclab.cli;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Singular;
+import org.ltimothy.fclab.data.CharsetDetector;
+import org.ltimothy.fclab.data.ColumnRule;
+import org.ltimothy.fclab.data.DuplicatePolicy;
+import org.ltimothy.fclab.data.ExportOrder;
+import org.ltimothy.fclab.data.MergedInput;
+import org.ltimothy.fclab.data.MetricsFormat;
+import org.ltimothy.fclab.data.PairingStrategy;
+import org.ltimothy.fclab.data.ParserType;
+import org.ltimothy.fclab.data.SurveyOptions;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+@Getter
+@Builder(access = AccessLevel.PRIVATE)
+public class CommandLineArguments {
+    public static final int DEFAULT_PORT = 8765;
+    public static final int DEFAULT_WORKERS = 2;
+    public static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java -jar DoubleEntry.jar --input <file|directory|glob> [--input ...] --id-column <column>",
+            "                                 --first-column <column> --prefix <prefix>|--pairing <strategy>",
+            "                                 [--entries <count>] [--output <file|directory>]",
+            "                                 [--charset <name>] [--default-charset <name>] [--charset-probe <bytes>]",
+            "                                 [--threads <count>] [--order input|id] [--parser opencsv|mapped]",
+            "                                 [--compare <pattern>=<comparator> ...] [--streaming] [--dictionary]",
+            "                                 [--incremental] [--gzip] [--mismatches] [--summary] [--quiet]",
+            "                                 [--events] [--metrics json|csv] [--merge <file> ...]",
+            "                                 [--double-entries <file> ...] [--memory-threshold <MB>]",
+            "                                 [--duplicates fail|skip|keep-last] [--issues] [--snapshot]",
+            "       java -jar DoubleEntry.jar --serve [--port <port>] [--watch <directory>] [--workers <count>]",
+            "                                 --id-column <column> --first-column <column> --prefix <prefix> ...",
+            "",
+            "  --input         A *.csv or *.tsv Qualtrics export, a directory of exports, or a glob (e.g. data/*.csv).",
+            "  --id-column     Participant ID column (e.g. AF).",
+            "  --first-column  First relevant column to compare (e.g. C).",
+            "  --prefix        Double-entry participant ID prefix (e.g. X_). Repeat it for further entries, e.g.",
+            "                  --prefix X_ --prefix Y_ for triple entry, to compare every entry of a participant in",
+            "                  one pass and export a consensus row holding the majority value of each column, or NO",
+            "                  MAJORITY. --streaming and --dictionary are ignored with several prefixes.",
+            "  --pairing       How entries are told apart instead of --prefix: suffix:<suffix>[,<suffix>...] like",
+            "                  --prefix for the end of the ID (e.g. suffix:_2), column:<column> for a column holding",
+            "                  the entry number of rows sharing one ID (1 or blank for the original, 2 for the double",
+            "                  entry, 3 onward for further entries), or pattern:<regex> with an id and an entry group",
+            "                  holding such a number, e.g. 'pattern:(?<id>.+?)(-(?<entry>\\d+))?'. --streaming and",
+            "                  --dictionary are ignored with --pairing.",
+            "  --entries       Entries per participant with --pairing column: or pattern: (default " +
+                    PairingStrategy.DEFAULT_ENTRIES + ", at most " + PairingStrategy.MAX_ENTRIES + "), e.g. 3 for",
+            "                  triple entry to compare every entry for a consensus. Higher entry numbers fail the",
+            "                  analysis.",
+            "  --merge         Another export analyzed together with a single input, e.g. a later wave. Columns are",
+            "                  matched by header name. May be repeated.",
+            "  --double-entries",
+            "                  Like --merge for an export holding only double entries, e.g. a separate double-entry",
+            "                  survey. Participant IDs without the prefix are given it, or the suffix or entry",
+            "                  number 2 with --pairing. May be repeated.",
+            "  --output        Output file for a single input, or output directory for several inputs.",
+            "                  Defaults to <input>_validated.<ext> next to each input. Outputs ending in .gz are",
+            "                  compressed with gzip.",
+            "  --charset       Charset of the inputs, detected per file when omitted.",
+            "  --default-charset",
+            "                  Charset used when detection is inconclusive (default UTF-8).",
+            "  --charset-probe Number of bytes read from the start of each input to detect its charset",
+            "                  (default " + CharsetDetector.DEFAULT_PROBE_BYTES + ").",
+            "  --threads       Number of threads used to compare pairs (default 1). Ignored with --streaming",
+            "                  and --dictionary.",
+            "  --memory-threshold",
+            "                  Size in MB of the loaded export above which its rows are moved to a temporary",
+            "                  memory-mapped file (default half of the maximum heap). Ignored with --streaming and",
+            "                  --dictionary.",
+            "  --order         Export rows in input file order (default) or sorted by participant ID.",
+            "  --compare       Comparator for columns whose header matches a pattern, e.g.",
+            "                  'StartDate|IPAddress=ignore' or 'DV Item_*=numeric:0.5'. Comparators are exact, text",
+            "                  (default, ignores case and surrounding whitespace), numeric[:tolerance], date and",
+            "                  ignore. May be repeated, the first matching rule applies.",
+            "  --parser        Read inputs with OpenCSV (default) or with a memory-mapped reader that only decodes the",
+            "                  fields it needs. Both produce identical results.",
+            "  --streaming     Index the input and stream rows to the output instead of loading the whole export,",
+            "                  so memory grows with the number of participants rather than the file size.",
+            "  --dictionary    Keep the loaded export as codes into a table of distinct values, which needs far less",
+            "                  memory for categorical answers and compares unchanged cells as integers.",
+            "  --incremental   Keep a <input>.doubleentry-cache sidecar and only recompare pairs that changed since",
+            "                  the previous run.",
+            "  --snapshot      Keep a <input>.doubleentry-snapshot sidecar with the parsed rows, so later runs over",
+            "                  the unchanged input skip parsing. Ignored with --streaming and --dictionary.",
+            "  --gzip          Compress every output with gzip, appending .gz to its name.",
+            "  --mismatches    Also write <output>_mismatches.<ext> with one row per mismatching cell.",
+            "  --summary       Also write <output>_summary.<ext> with mismatch rates overall, per column and per",
+            "                  participant.",
+            "  --duplicates    Fail once every row was read if any participant ID repeats or a row has no participant",
+            "                  ID column (default), skip the later rows, or keep the last row of each participant.",
+            "  --issues        Also write <output>_issues.<ext> listing every duplicate, blank participant ID, double",
+            "                  entry without an original and row with an unexpected number of fields, also when the",
+            "                  analysis fails.",
+            "  --quiet         Only print a summary per file instead of every mismatch.",
+            "  --events        Also write every comparison event to <output>_events.jsonl.",
+            "  --metrics       Print the wall time and throughput of each stage, the pairs compared, mismatches and",
+            "                  peak heap, and write them to <output>_metrics.json or <output>_metrics.csv.",
+            "  --serve         Keep running as a validation daemon instead of exiting. Exports are queued with a POST",
+            "                  of their path to http://localhost:<port>/jobs, dropped into the --watch directory, or",
+            "                  given with --input, and validated with the other options into <input>_validated.<ext>",
+            "                  next to each export. GET /status lists the jobs with their timings.",
+            "  --port          Port of the daemon, only reachable from this machine (default " + DEFAULT_PORT + ").",
+            "  --watch         Directory whose new *.csv and *.tsv exports the daemon validates.",
+            "  --workers       Number of exports the daemon validates at the same time (default " + DEFAULT_WORKERS +
+                    ").",
+            "  --help          Print this message.");
+
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+    private static final int MAX_PORT = 65535;
+
+    @Singular
+    private final List<String> inputs;
+    @Singular
+    private final List<MergedInput> mergedInputs;
+    private final String participantIdColumn;
+    private final String firstRelevantColumn;
+    @NonNull
+    @Builder.Default
+    private final String doubleEntryIdPrefix = "";
+    @Singular
+    private final List<String> additionalEntryIdPrefixes;
+    @NonNull
+    @Builder.Default
+    private final Optional<PairingStrategy> pairingStrategy = Optional.empty();
+    @NonNull
+    @Builder.Default
+    private final Optional<String> output = Optional.empty();
+    @NonNull
+    @Builder.Default
+    private final Optional<String> charset = Optional.empty();
+    @NonNull
+    @Builder.Default
+    private final Charset defaultCharset = StandardCharsets.UTF_8;
+    @Builder.Default
+    private final int charsetProbeBytes = CharsetDetector.DEFAULT_PROBE_BYTES;
+    @Builder.Default
+    private final int comparisonThreads = SurveyOptions.SEQUENTIAL;
+    @Builder.Default
+    private final long memoryThresholdBytes = SurveyOptions.DEFAULT_MEMORY_THRESHOLD_BYTES;
+    @NonNull
+    @Builder.Default
+    private final ExportOrder exportOrder = ExportOrder.INPUT;
+    @NonNull
+    @Builder.Default
+    private final ParserType parserType = ParserType.OPENCSV;
+    @Singular
+    private final List<ColumnRule> columnRules;
+    @NonNull
+    @Builder.Default
+    private final DuplicatePolicy duplicatePolicy = DuplicatePolicy.FAIL;
+    @NonNull
+    @Builder.Default
+    private final Optional<MetricsFormat> metricsFormat = Optional.empty();
+    @NonNull
+    @Builder.Default
+    private final Optional<String> watchDirectory = Optional.empty();
+    @Builder.Default
+    private final int port = DEFAULT_PORT;
+    @Builder.Default
+    private final int workers = DEFAULT_WORKERS;
+    private final boolean streaming;
+    private final boolean dictionary;
+    private final boolean incremental;
+    private final boolean snapshot;
+    private final boolean gzip;
+    private final boolean mismatches;
+    private final boolean summary;
+    private final boolean issues;
+    private final boolean quiet;
+    private final boolean events;
+    private final boolean serve;
+    private final boolean help;
+
+    public static CommandLineArguments parse(@NonNull final String[] args) throws IllegalArgumentException {
+        final CommandLineArgumentsBuilder builder = builder();
+        boolean prefixSeen = false;
+        Optional<String> pairing = Optional.empty();
+        Optional<Integer> entries = Optional.empty();
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            switch (arg) {
+                case "--input":
+                    builder.input(requireValue(args, ++i, arg));
+                    break;
+                case "--merge":
+                    builder.mergedInput(MergedInput.wave(new File(requireValue(args, ++i, arg))));
+                    break;
+                case "--double-entries":
+                    builder.mergedInput(MergedInput.doubleEntries(new File(requireValue(args, ++i, arg))));
+                    break;
+                case "--id-column":
+                    builder.participantIdColumn(requireValue(args, ++i, arg));
+                    break;
+                case "--first-column":
+                    builder.firstRelevantColumn(requireValue(args, ++i, arg));
+                    break;
+                case "--prefix":
+                    if (prefixSeen) {
+                        builder.additionalEntryIdPrefix(requireValue(args, ++i, arg));
+                    } else {
+                        builder.doubleEntryIdPrefix(requireValue(args, ++i, arg));
+                        prefixSeen = true;
+                    }
+                    break;
+                case "--pairing":
+                    pairing = Optional.of(requireValue(args, ++i, arg));
+                    break;
+                case "--entries":
+                    entries = Optional.of(parsePositiveInt(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--output":
+                    builder.output(Optional.of(requireValue(args, ++i, arg)));
+                    break;
+                case "--charset":
+                    builder.charset(Optional.of(requireValue(args, ++i, arg)));
+                    break;
+                case "--default-charset":
+                    builder.defaultCharset(parseCharset(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--charset-probe":
+                    builder.charsetProbeBytes(parsePositiveInt(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--threads":
+                    builder.comparisonThreads(parsePositiveInt(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--memory-threshold":
+                    builder.memoryThresholdBytes(
+                            parsePositiveInt(requireValue(args, ++i, arg), arg) * BYTES_PER_MEGABYTE);
+                    break;
+                case "--order":
+                    final String order = requireValue(args, ++i, arg);
+                    builder.exportOrder(ExportOrder.fromArgument(order).orElseThrow(() ->
+                            new IllegalArgumentException("Expected input or id for " + arg + " but was " + order)));
+                    break;
+                case "--parser":
+                    final String parser = requireValue(args, ++i, arg);
+                    builder.parserType(ParserType.fromArgument(parser).orElseThrow(() ->
+                            new IllegalArgumentException("Expected opencsv or mapped for " + arg + " but was " +
+                                    parser)));
+                    break;
+                case "--compare":
+                    builder.columnRules(ColumnRule.parseAll(requireValue(args, ++i, arg)));
+                    break;
+                case "--duplicates":
+                    final String duplicates = requireValue(args, ++i, arg);
+                    builder.duplicatePolicy(DuplicatePolicy.fromArgument(duplicates).orElseThrow(() ->
+                            new IllegalArgumentException("Expected fail, skip or keep-last for " + arg + " but was " +
+                                    duplicates)));
+                    break;
+                case "--streaming":
+                    builder.streaming(true);
+                    break;
+                case "--dictionary":
+                    builder.dictionary(true);
+                    break;
+                case "--incremental":
+                    builder.incremental(true);
+                    break;
+                case "--snapshot":
+                    builder.snapshot(true);
+                    break;
+                case "--gzip":
+                    builder.gzip(true);
+                    break;
+                case "--mismatches":
+                    builder.mismatches(true);
+                    break;
+                case "--summary":
+                    builder.summary(true);
+                    break;
+                case "--issues":
+                    builder.issues(true);
+                    break;
+                case "--quiet":
+                    builder.quiet(true);
+                    break;
+                case "--events":
+                    builder.events(true);
+                    break;
+                case "--metrics":
+                    final String metrics = requireValue(args, ++i, arg);
+                    builder.metricsFormat(Optional.of(MetricsFormat.fromArgument(metrics).orElseThrow(() ->
+                            new IllegalArgumentException("Expected json or csv for " + arg + " but was " +
+                                    metrics))));
+                    break;
+                case "--serve":
+                    builder.serve(true);
+                    break;
+                case "--port":
+                    builder.port(parsePort(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--watch":
+                    builder.watchDirectory(Optional.of(requireValue(args, ++i, arg)));
+                    break;
+                case "--workers":
+                    builder.workers(parsePositiveInt(requireValue(args, ++i, arg), arg));
+                    break;
+                case "--help":
+                    builder.help(true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        if (entries.isPresent() && pairing.isEmpty()) {
+            throw new IllegalArgumentException("--entries requires --pairing!");
+        }
+        if (pairing.isPresent()) {
+            builder.pairingStrategy(Optional.of(PairingStrategy.parse(pairing.get(),
+                    entries.orElse(PairingStrategy.DEFAULT_ENTRIES))));
+        }
+        final CommandLineArguments arguments = builder.build();
+        if (!arguments.help) {
+            if (arguments.inputs.isEmpty() && !arguments.serve) {
+                throw new IllegalArgumentException("Missing --input!");
+            }
+            if (arguments.serve && (arguments.output.isPresent() || !arguments.mergedInputs.isEmpty())) {
+                throw new IllegalArgumentException("--output, --merge and --double-entries are not supported with " +
+                        "--serve!");
+            }
+            if (!arguments.serve && arguments.watchDirectory.isPresent()) {
+                throw new IllegalArgumentException("--watch requires --serve!");
+            }
+            if (isBlank(arguments.participantIdColumn)) {
+                throw new IllegalArgumentException("Missing --id-column!");
+            }
+            if (isBlank(arguments.firstRelevantColumn)) {
+                throw new IllegalArgumentException("Missing --first-column!");
+            }
+            if (arguments.pairingStrategy.isPresent() && prefixSeen) {
+                throw new IllegalArgumentException("--prefix and --pairing cannot be combined!");
+            }
+            if (isBlank(arguments.doubleEntryIdPrefix) && arguments.pairingStrategy.isEmpty()) {
+                throw new IllegalArgumentException("Missing --prefix or --pairing!");
+            }
+            if (arguments.additionalEntryIdPrefixes.stream().anyMatch(CommandLineArguments::isBlank)) {
+                throw new IllegalArgumentException("Every --prefix must be non-blank!");
+            }
+        }
+        return arguments;
+    }
+
+    private static boolean isBlank(final String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static Charset parseCharset(@NonNull final String value, @NonNull final String arg) {
+        try {
+            return Charset.forName(value);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported charset " + value + " for " + arg);
+        }
+    }
+
+    private static int parsePositiveInt(@NonNull final String value, @NonNull final String arg) {
+        try {
+            final int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (final NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Expected a positive number for " + arg + " but was " + value);
+    }
+
+    private static int parsePort(@NonNull final String value, @NonNull final String arg) {
+        final int port = parsePositiveInt(value, arg);
+        if (port > MAX_PORT) {
+            throw new IllegalArgumentException("Expected a port up to " + MAX_PORT + " for " + arg + " but was " +
+                    value);
+        }
+        return port;
+    }
+
+    private static String requireValue(@NonNull final String[] args, final int index, @NonNull final String arg) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + arg);
+        }
+        return args[index];
+    }
+}
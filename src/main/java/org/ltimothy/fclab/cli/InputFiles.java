@@ -0,0 +1,89 @@
+package org.ltimothy.fclab.cli;
+
+import lombok.NonNull;
+import org.ltimothy.fclab.data.DelimitedFileType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public final class InputFiles {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private InputFiles() {
+    }
+
+    /**
+     * Expands each input (a file, a directory of exports, or a glob such as {@code data/*.csv}) into the sorted list
+     * of supported export files it refers to.
+     */
+    public static List<File> resolve(@NonNull final List<String> inputs) throws IOException {
+        final List<File> files = new ArrayList<>();
+        for (final String input : inputs) {
+            if (isGlob(input)) {
+                files.addAll(resolveGlob(input));
+            } else {
+                final File file = new File(input);
+                if (file.isDirectory()) {
+                    files.addAll(resolveDirectory(file.toPath()));
+                } else {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static boolean isGlob(@NonNull final String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(input.charAt(i)) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<File> resolveDirectory(@NonNull final Path directory) throws IOException {
+        try (final Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(Path::toFile)
+                    .filter(file -> DelimitedFileType.fromFile(file).isPresent())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<File> resolveGlob(@NonNull final String input) throws IOException {
+        final String normalizedInput = input.replace(File.separatorChar, '/');
+        int firstGlobCharacter = 0;
+        while (GLOB_CHARACTERS.indexOf(normalizedInput.charAt(firstGlobCharacter)) == -1) {
+            firstGlobCharacter++;
+        }
+        final int baseEnd = normalizedInput.lastIndexOf('/', firstGlobCharacter);
+        final Path baseDirectory = baseEnd == -1
+                ? Paths.get(".")
+                : Paths.get(normalizedInput.substring(0, baseEnd + 1));
+        final PathMatcher matcher = FileSystems.getDefault()
+                .getPathMatcher("glob:" + normalizedInput.substring(baseEnd + 1));
+
+        if (!Files.isDirectory(baseDirectory)) {
+            return List.of();
+        }
+        try (final Stream<Path> paths = Files.walk(baseDirectory, FileVisitOption.FOLLOW_LINKS)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(baseDirectory.relativize(path)))
+                    .map(Path::toFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.ltimothy.fclab.dagger;
+
+import dagger.Component;
+import org.ltimothy.fclab.handler.BatchHandler;
+
+import javax.inject.Singleton;
+
+@Singleton
+@Component(modules = CLIModule.class)
+public interface CLIComponent {
+    BatchHandler batchHandler();
+}
@@ -0,0 +1,31 @@
+package org.ltimothy.fclab.dagger;
+
+import dagger.Module;
+import dagger.Provides;
+import lombok.NonNull;
+import org.ltimothy.fclab.cli.CommandLineArguments;
+import org.ltimothy.fclab.data.CharsetDetector;
+
+import javax.inject.Singleton;
+import java.io.PrintStream;
+
+@Module
+public class CLIModule {
+    private final CommandLineArguments arguments;
+
+    public CLIModule(@NonNull final CommandLineArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    @Provides
+    @Singleton
+    public CharsetDetector providesCharsetDetector() {
+        return new CharsetDetector(arguments.getDefaultCharset(), arguments.getCharsetProbeBytes());
+    }
+
+    @Provides
+    @Singleton
+    public PrintStream providesConsole() {
+        return System.out;
+    }
+}
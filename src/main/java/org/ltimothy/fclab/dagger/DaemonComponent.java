@@ -0,0 +1,9 @@
+package org.ltimothy.fclab.dagger;
+
+import dagger.Subcomponent;
+import org.ltimothy.fclab.handler.ValidationDaemon;
+
+@Subcomponent(modules = DaemonModule.class)
+public interface DaemonComponent {
+    ValidationDaemon validationDaemon();
+}
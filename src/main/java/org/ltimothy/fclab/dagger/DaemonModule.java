@@ -0,0 +1,31 @@
+package org.ltimothy.fclab.dagger;
+
+import dagger.Module;
+import dagger.Provides;
+import lombok.NonNull;
+import org.ltimothy.fclab.cli.CommandLineArguments;
+import org.ltimothy.fclab.data.CharsetDetector;
+
+import java.io.PrintStream;
+
+/**
+ * Bindings of the validation daemon. Its subcomponent only lives as long as the daemon, so nothing here is scoped.
+ */
+@Module
+public class DaemonModule {
+    private final CommandLineArguments arguments;
+
+    public DaemonModule(@NonNull final CommandLineArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    @Provides
+    public CharsetDetector providesCharsetDetector() {
+        return new CharsetDetector(arguments.getDefaultCharset(), arguments.getCharsetProbeBytes());
+    }
+
+    @Provides
+    public PrintStream providesConsole() {
+        return System.out;
+    }
+}
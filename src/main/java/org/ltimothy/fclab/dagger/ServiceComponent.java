@@ -1,12 +1,14 @@
-package org.ltimothy.fclab.dagger;
-
-import dagger.Component;
-import org.ltimothy.fclab.handler.DoubleEntryHandler;
-
-import javax.inject.Singleton;
-
-@Singleton
-@Component(modules = GUIModule.class)
-public interface ServiceComponent {
-    DoubleEntryHandler launchGUI();
-}
+package org.ltimothy.fclab.dagger;
+
+import dagger.Component;
+import org.ltimothy.fclab.handler.DoubleEntryHandler;
+
+import javax.inject.Singleton;
+
+@Singleton
+@Component(modules = GUIModule.class)
+public interface ServiceComponent {
+    DoubleEntryHandler launchGUI();
+
+    DaemonComponent daemonComponent(DaemonModule daemonModule);
+}
@@ -0,0 +1,241 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.ICSVWriter;
+import lombok.NonNull;
+import org.ltimothy.fclab.listener.ComparisonSummary;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Wall time, item and byte counts per {@link AnalysisStage} of one analysis, with the pairs compared, mismatches found
+ * and peak heap usage. Stages are timed once around each pass rather than per row, so collecting metrics does not slow
+ * the analysis down. An analysis that writes its export while comparing records the writing as part of
+ * {@link AnalysisStage#COMPARING}.
+ */
+public class AnalysisMetrics {
+    /**
+     * Ignores everything recorded, the default of {@link SurveyOptions}.
+     */
+    public static final AnalysisMetrics NONE = new AnalysisMetrics(false, false);
+    private static final String[] CSV_HEADER = {"Scope", "Metric", "Value"};
+    private static final String RUN_SCOPE = "run";
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+    private static final double BYTES_PER_MEGABYTE = 1024d * 1024d;
+
+    private final boolean enabled;
+    /**
+     * Whether the peak heap usage is that of the whole process rather than of this analysis.
+     */
+    private final boolean processPeak;
+    private final Map<AnalysisStage, StageMetrics> stages;
+    private Optional<ComparisonSummary> comparisonSummary;
+
+    /**
+     * Resets the peak usage of the heap memory pools, so {@link #getPeakHeapBytes()} covers this analysis. Only for
+     * an analysis which runs on its own, see {@link #forConcurrentAnalysis()}.
+     */
+    public AnalysisMetrics() {
+        this(true, false);
+        ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+                .forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private AnalysisMetrics(final boolean enabled, final boolean processPeak) {
+        this.enabled = enabled;
+        this.processPeak = processPeak;
+        this.stages = new EnumMap<>(AnalysisStage.class);
+        this.comparisonSummary = Optional.empty();
+    }
+
+    /**
+     * Metrics of an analysis running alongside others in the same process, such as a job of the daemon. Resetting the
+     * peak heap usage would also reset it for the analyses already running, so it is left alone and reported as the
+     * peak of the process instead.
+     */
+    public static AnalysisMetrics forConcurrentAnalysis() {
+        return new AnalysisMetrics(true, true);
+    }
+
+    public StageTimer start(@NonNull final AnalysisStage stage) {
+        return new StageTimer(stage, System.nanoTime());
+    }
+
+    /**
+     * Adds a stage timed by the caller, e.g. charset detection done before the analysis was started.
+     */
+    public synchronized void record(@NonNull final AnalysisStage stage, final long nanos, final long items,
+                                    final long bytes) {
+        if (!enabled) {
+            return;
+        }
+        final StageMetrics metrics = stages.computeIfAbsent(stage, key -> new StageMetrics());
+        metrics.nanos += nanos;
+        metrics.items += items;
+        metrics.bytes += bytes;
+    }
+
+    synchronized void recordComparison(@NonNull final ComparisonSummary summary) {
+        if (enabled) {
+            this.comparisonSummary = Optional.of(summary);
+        }
+    }
+
+    public synchronized long getNanos(@NonNull final AnalysisStage stage) {
+        return stages.containsKey(stage) ? stages.get(stage).nanos : 0;
+    }
+
+    public synchronized long getItems(@NonNull final AnalysisStage stage) {
+        return stages.containsKey(stage) ? stages.get(stage).items : 0;
+    }
+
+    public synchronized long getPairsCompared() {
+        return comparisonSummary.map(ComparisonSummary::getPairsCompared).orElse(0);
+    }
+
+    public synchronized long getMismatches() {
+        return comparisonSummary.map(ComparisonSummary::getMismatches).orElse(0L);
+    }
+
+    /**
+     * Sum of the peak usage of every heap memory pool since this object was created, or since the process started for
+     * {@link #forConcurrentAnalysis()}. Pools peak at different times, so this is an upper bound of the heap actually
+     * in use at once.
+     */
+    public long getPeakHeapBytes() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    /**
+     * One line per recorded stage followed by the comparison totals, e.g. for the status panel.
+     */
+    public synchronized List<String> describe() {
+        final List<String> lines = new ArrayList<>();
+        long totalNanos = 0;
+        for (final Map.Entry<AnalysisStage, StageMetrics> stage : stages.entrySet()) {
+            lines.add(describe(stage.getKey(), stage.getValue()));
+            totalNanos += stage.getValue().nanos;
+        }
+        lines.add(String.format(Locale.ROOT, "Compared %d pairs and found %d mismatches in %.3f s, %s %.1f MB",
+                getPairsCompared(), getMismatches(), totalNanos / NANOS_PER_SECOND,
+                processPeak ? "process peak heap" : "peak heap", getPeakHeapBytes() / BYTES_PER_MEGABYTE));
+        return lines;
+    }
+
+    public synchronized Optional<String> describe(@NonNull final AnalysisStage stage) {
+        return Optional.ofNullable(stages.get(stage)).map(metrics -> describe(stage, metrics));
+    }
+
+    public synchronized void writeJson(@NonNull final Writer writer) throws IOException {
+        writer.write("{\"stages\":[");
+        String separator = "";
+        for (final Map.Entry<AnalysisStage, StageMetrics> stage : stages.entrySet()) {
+            final StageMetrics metrics = stage.getValue();
+            writer.write(separator + "{\"stage\":\"" + name(stage.getKey()) + "\"" +
+                    ",\"wallMillis\":" + format(metrics.nanos / NANOS_PER_MILLI) +
+                    ",\"items\":" + metrics.items +
+                    ",\"unit\":\"" + stage.getKey().getUnit() + "\"" +
+                    ",\"itemsPerSecond\":" + format(perSecond(metrics.items, metrics.nanos)) +
+                    ",\"bytes\":" + metrics.bytes +
+                    ",\"bytesPerSecond\":" + format(perSecond(metrics.bytes, metrics.nanos)) + "}");
+            separator = ",";
+        }
+        writer.write("],\"pairsCompared\":" + getPairsCompared() +
+                ",\"mismatches\":" + getMismatches() +
+                ",\"" + peakHeapName() + "\":" + getPeakHeapBytes() + "}");
+        writer.write(System.lineSeparator());
+    }
+
+    /**
+     * Writes one row per metric in long format, with the stage name or {@value #RUN_SCOPE} as the scope.
+     */
+    public synchronized void writeCsv(@NonNull final ICSVWriter writer) {
+        writer.writeNext(CSV_HEADER);
+        for (final Map.Entry<AnalysisStage, StageMetrics> stage : stages.entrySet()) {
+            final String scope = name(stage.getKey());
+            final StageMetrics metrics = stage.getValue();
+            writer.writeNext(new String[]{scope, "wallMillis", format(metrics.nanos / NANOS_PER_MILLI)});
+            writer.writeNext(new String[]{scope, stage.getKey().getUnit(), Long.toString(metrics.items)});
+            writer.writeNext(new String[]{scope, stage.getKey().getUnit() + "PerSecond",
+                    format(perSecond(metrics.items, metrics.nanos))});
+            writer.writeNext(new String[]{scope, "bytes", Long.toString(metrics.bytes)});
+            writer.writeNext(new String[]{scope, "bytesPerSecond", format(perSecond(metrics.bytes, metrics.nanos))});
+        }
+        writer.writeNext(new String[]{RUN_SCOPE, "pairsCompared", Long.toString(getPairsCompared())});
+        writer.writeNext(new String[]{RUN_SCOPE, "mismatches", Long.toString(getMismatches())});
+        writer.writeNext(new String[]{RUN_SCOPE, peakHeapName(), Long.toString(getPeakHeapBytes())});
+    }
+
+    private String peakHeapName() {
+        return processPeak ? "processPeakHeapBytes" : "peakHeapBytes";
+    }
+
+    private static String describe(@NonNull final AnalysisStage stage, @NonNull final StageMetrics metrics) {
+        final String rates = metrics.bytes > 0
+                ? String.format(Locale.ROOT, "%.0f %s/s, %.1f MB/s", perSecond(metrics.items, metrics.nanos),
+                        stage.getUnit(), perSecond(metrics.bytes, metrics.nanos) / BYTES_PER_MEGABYTE)
+                : String.format(Locale.ROOT, "%.0f %s/s", perSecond(metrics.items, metrics.nanos), stage.getUnit());
+        return String.format(Locale.ROOT, "%s %d %s in %.3f s (%s)", stage.getVerb(), metrics.items,
+                stage.getUnit(), metrics.nanos / NANOS_PER_SECOND, rates);
+    }
+
+    private static String name(@NonNull final AnalysisStage stage) {
+        return stage.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return nanos == 0 ? 0 : count * NANOS_PER_SECOND / nanos;
+    }
+
+    private static String format(final double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Times one pass of a stage, adding its items and bytes when closed.
+     */
+    public final class StageTimer implements AutoCloseable {
+        private final AnalysisStage stage;
+        private final long startNanos;
+        private long items;
+        private long bytes;
+
+        private StageTimer(@NonNull final AnalysisStage stage, final long startNanos) {
+            this.stage = stage;
+            this.startNanos = startNanos;
+        }
+
+        public void addItems(final long count) {
+            items += count;
+        }
+
+        public void addBytes(final long count) {
+            bytes += count;
+        }
+
+        @Override
+        public void close() {
+            record(stage, System.nanoTime() - startNanos, items, bytes);
+        }
+    }
+
+    private static final class StageMetrics {
+        private long nanos;
+        private long items;
+        private long bytes;
+    }
+}
@@ -0,0 +1,21 @@
+package org.ltimothy.fclab.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+@Getter
+public enum AnalysisStage {
+    CHARSET_DETECTION("Detected the charset of", "files"),
+    PARSING("Parsed", "rows"),
+    INDEXING("Indexed", "participants"),
+    COMPARING("Compared", "participants"),
+    EXPORTING("Exported", "rows");
+
+    private final String verb;
+    private final String unit;
+
+    AnalysisStage(@NonNull final String verb, @NonNull final String unit) {
+        this.verb = verb;
+        this.unit = unit;
+    }
+}
@@ -0,0 +1,165 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.mozilla.universalchardet.UniversalDetector;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects the charset of an export from a byte order mark or, failing that, from at most the first
+ * {@link #getProbeBytes()} bytes of the file. Results are cached by path, size and modification time, so selecting the
+ * same unchanged file again skips detection.
+ */
+@Slf4j
+public class CharsetDetector {
+    public static final int DEFAULT_PROBE_BYTES = 1 << 20;
+    private static final int BUFFER_SIZE = 4096;
+    private static final Charset UTF_32LE = Charset.forName("UTF-32LE");
+    private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+
+    private final Charset defaultCharset;
+    private final int probeBytes;
+    private final Map<FileIdentity, Charset> detectedCharsets;
+
+    public CharsetDetector() {
+        this(StandardCharsets.UTF_8);
+    }
+
+    public CharsetDetector(@NonNull final Charset defaultCharset) {
+        this(defaultCharset, DEFAULT_PROBE_BYTES);
+    }
+
+    /**
+     * @param defaultCharset charset used when the file has no byte order mark and detection is inconclusive.
+     * @param probeBytes maximum number of bytes read from the start of the file.
+     */
+    public CharsetDetector(@NonNull final Charset defaultCharset, final int probeBytes) {
+        if (probeBytes <= 0) {
+            throw new IllegalArgumentException("The number of bytes to probe must be positive but was " + probeBytes);
+        }
+        this.defaultCharset = defaultCharset;
+        this.probeBytes = probeBytes;
+        this.detectedCharsets = new ConcurrentHashMap<>();
+    }
+
+    public int getProbeBytes() {
+        return probeBytes;
+    }
+
+    public Charset detectCharset(@NonNull final File f) {
+        final Optional<FileIdentity> identity = FileIdentity.of(f);
+        if (identity.isPresent()) {
+            final Charset cachedCharset = detectedCharsets.get(identity.get());
+            if (cachedCharset != null) {
+                log.debug("Using cached charset {} for {}", cachedCharset, f);
+                return cachedCharset;
+            }
+        }
+
+        final Optional<Charset> detectedCharset = probe(f);
+        if (detectedCharset.isEmpty()) {
+            log.info("No charset detected for {}, defaulting to {}", f, defaultCharset);
+        }
+        final Charset charset = detectedCharset.orElse(defaultCharset);
+        identity.ifPresent(fileIdentity -> detectedCharsets.put(fileIdentity, charset));
+        return charset;
+    }
+
+    private Optional<Charset> probe(@NonNull final File f) {
+        final byte[] buf = new byte[BUFFER_SIZE];
+        final UniversalDetector detector = new UniversalDetector(null);
+        try (final FileInputStream fileInputStream = new FileInputStream(f)) {
+            int total = 0;
+            int nread;
+            while (total < probeBytes && !detector.isDone()
+                    && (nread = fileInputStream.read(buf, 0, Math.min(buf.length, probeBytes - total))) > 0) {
+                if (total == 0) {
+                    final Optional<Charset> byteOrderMarkCharset = fromByteOrderMark(buf, nread);
+                    if (byteOrderMarkCharset.isPresent()) {
+                        return byteOrderMarkCharset;
+                    }
+                }
+                detector.handleData(buf, 0, nread);
+                total += nread;
+            }
+            detector.dataEnd();
+        } catch (final IOException e) {
+            log.warn("Could not detect charset of {}", f, e);
+            return Optional.empty();
+        }
+        return forName(detector.getDetectedCharset());
+    }
+
+    private static Optional<Charset> fromByteOrderMark(@NonNull final byte[] bytes, final int length) {
+        if (startsWith(bytes, length, 0xEF, 0xBB, 0xBF)) {
+            return Optional.of(StandardCharsets.UTF_8);
+        } else if (startsWith(bytes, length, 0x00, 0x00, 0xFE, 0xFF)) {
+            return Optional.of(UTF_32BE);
+        } else if (startsWith(bytes, length, 0xFF, 0xFE, 0x00, 0x00)) {
+            return Optional.of(UTF_32LE);
+        } else if (startsWith(bytes, length, 0xFE, 0xFF)) {
+            return Optional.of(StandardCharsets.UTF_16BE);
+        } else if (startsWith(bytes, length, 0xFF, 0xFE)) {
+            return Optional.of(StandardCharsets.UTF_16LE);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean startsWith(@NonNull final byte[] bytes, final int length, final int... prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Optional<Charset> forName(final String charsetName) {
+        if (charsetName == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Charset.forName(charsetName));
+        } catch (final IllegalCharsetNameException | UnsupportedCharsetException e) {
+            log.warn("Detected charset {} is not supported by this JVM", charsetName);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Identifies a file by its path, size and modification time, so that a rewritten export is detected again.
+     */
+    @Value
+    private static class FileIdentity {
+        String path;
+        long size;
+        FileTime lastModified;
+
+        private static Optional<FileIdentity> of(@NonNull final File f) {
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+                return Optional.of(new FileIdentity(f.getAbsolutePath(), attributes.size(),
+                        attributes.lastModifiedTime()));
+            } catch (final IOException e) {
+                return Optional.empty();
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+/**
+ * Decides whether the original and double-entry values of one column match. Implementations are stateless and do not
+ * allocate, since they run for every compared cell of every pair.
+ */
+public interface ColumnComparator {
+    /**
+     * Values must be identical.
+     */
+    ColumnComparator EXACT = new ExactComparator();
+    /**
+     * Values must be equal ignoring case and surrounding whitespace. This is the default for every compared column.
+     */
+    ColumnComparator TEXT = new TextComparator();
+    /**
+     * Values must denote the same calendar date and time, e.g. {@code 2023-02-19} and {@code 2/19/2023}.
+     */
+    ColumnComparator DATE = new DateComparator();
+    /**
+     * The column is not compared at all and keeps its double-entry value in the export.
+     */
+    ColumnComparator IGNORE = new IgnoreComparator();
+
+    boolean matches(@NonNull String originalValue, @NonNull String doubleEntryValue);
+
+    /**
+     * Numbers must differ by at most {@code tolerance}. Values which are not numbers are compared like {@link #TEXT}.
+     */
+    static ColumnComparator numeric(final double tolerance) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("The numeric tolerance must not be negative but was " + tolerance);
+        }
+        return new NumericComparator(tolerance);
+    }
+
+    /**
+     * Parses a comparator name as used on the command line: {@code exact}, {@code text}, {@code numeric},
+     * {@code numeric:<tolerance>}, {@code date} or {@code ignore}.
+     */
+    static ColumnComparator parse(@NonNull final String name) throws IllegalArgumentException {
+        final String normalizedName = name.trim().toLowerCase();
+        if (normalizedName.startsWith(NumericComparator.NAME)) {
+            final String tolerance = normalizedName.substring(NumericComparator.NAME.length());
+            if (tolerance.isEmpty()) {
+                return numeric(0);
+            } else if (tolerance.startsWith(":")) {
+                try {
+                    return numeric(Double.parseDouble(tolerance.substring(1)));
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid numeric tolerance in " + name);
+                }
+            }
+        }
+        for (final ColumnComparator comparator : new ColumnComparator[]{EXACT, TEXT, DATE, IGNORE}) {
+            if (comparator.toString().equals(normalizedName)) {
+                return comparator;
+            }
+        }
+        throw new IllegalArgumentException("Expected exact, text, numeric[:tolerance], date or ignore but was " +
+                name);
+    }
+
+    final class ExactComparator implements ColumnComparator {
+        private ExactComparator() {
+        }
+
+        @Override
+        public boolean matches(@NonNull final String originalValue, @NonNull final String doubleEntryValue) {
+            return originalValue.equals(doubleEntryValue);
+        }
+
+        @Override
+        public String toString() {
+            return "exact";
+        }
+    }
+
+    /**
+     * Equivalent to {@code originalValue.trim().equalsIgnoreCase(doubleEntryValue.trim())} without creating the
+     * trimmed strings.
+     */
+    final class TextComparator implements ColumnComparator {
+        private TextComparator() {
+        }
+
+        @Override
+        public boolean matches(@NonNull final String originalValue, @NonNull final String doubleEntryValue) {
+            final int originalStart = trimStart(originalValue);
+            final int originalLength = trimEnd(originalValue, originalStart) - originalStart;
+            final int doubleEntryStart = trimStart(doubleEntryValue);
+            final int doubleEntryLength = trimEnd(doubleEntryValue, doubleEntryStart) - doubleEntryStart;
+            return originalLength == doubleEntryLength && originalValue.regionMatches(true, originalStart,
+                    doubleEntryValue, doubleEntryStart, originalLength);
+        }
+
+        @Override
+        public String toString() {
+            return "text";
+        }
+
+        private static int trimStart(@NonNull final String value) {
+            int start = 0;
+            while (start < value.length() && value.charAt(start) <= ' ') {
+                start++;
+            }
+            return start;
+        }
+
+        private static int trimEnd(@NonNull final String value, final int start) {
+            int end = value.length();
+            while (end > start && value.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            return end;
+        }
+    }
+
+    /**
+     * Parses plain decimal numbers such as {@code -12}, {@code 3.50} or {@code .5} by hand, falling back to a text
+     * comparison for anything else, including exponents.
+     */
+    final class NumericComparator implements ColumnComparator {
+        private static final String NAME = "numeric";
+        private static final int MAX_DIGITS = 18;
+
+        private final double tolerance;
+
+        private NumericComparator(final double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        public boolean matches(@NonNull final String originalValue, @NonNull final String doubleEntryValue) {
+            final double original = parse(originalValue);
+            final double doubleEntry = parse(doubleEntryValue);
+            if (Double.isNaN(original) || Double.isNaN(doubleEntry)) {
+                return TEXT.matches(originalValue, doubleEntryValue);
+            }
+            return Math.abs(original - doubleEntry) <= tolerance;
+        }
+
+        @Override
+        public String toString() {
+            return tolerance == 0 ? NAME : NAME + ":" + tolerance;
+        }
+
+        private static double parse(@NonNull final String value) {
+            int index = 0;
+            int end = value.length();
+            while (index < end && value.charAt(index) <= ' ') {
+                index++;
+            }
+            while (end > index && value.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            boolean negative = false;
+            if (index < end && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+                negative = value.charAt(index) == '-';
+                index++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = 0;
+            boolean decimalPoint = false;
+            for (; index < end; index++) {
+                final char c = value.charAt(index);
+                if (c == '.' && !decimalPoint) {
+                    decimalPoint = true;
+                } else if (c >= '0' && c <= '9' && digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (decimalPoint) {
+                        fractionDigits++;
+                    }
+                } else {
+                    return Double.NaN;
+                }
+            }
+            if (digits == 0) {
+                return Double.NaN;
+            }
+            final double number = mantissa / Math.pow(10, fractionDigits);
+            return negative ? -number : number;
+        }
+    }
+
+    /**
+     * Reads up to six numbers (date followed by an optional time) separated by any non-digit characters, and an
+     * optional {@code AM} or {@code PM} after the time. A leading four-digit number is read as year-month-day,
+     * otherwise the numbers are read as month/day/year as in Qualtrics exports. Values which are not dates, including
+     * those with an hour, minute or second out of range, are compared like {@link #TEXT}.
+     */
+    final class DateComparator implements ColumnComparator {
+        private static final long NOT_A_DATE = Long.MIN_VALUE;
+        private static final int MAX_PARTS = 6;
+        private static final int YEAR_DIGITS = 4;
+        private static final int HOURS_PER_HALF_DAY = 12;
+        private static final int NO_MERIDIEM = 0;
+        private static final int ANTE_MERIDIEM = 1;
+        private static final int POST_MERIDIEM = 2;
+
+        private DateComparator() {
+        }
+
+        @Override
+        public boolean matches(@NonNull final String originalValue, @NonNull final String doubleEntryValue) {
+            final long original = normalize(originalValue);
+            final long doubleEntry = normalize(doubleEntryValue);
+            if (original == NOT_A_DATE || doubleEntry == NOT_A_DATE) {
+                return TEXT.matches(originalValue, doubleEntryValue);
+            }
+            return original == doubleEntry;
+        }
+
+        @Override
+        public String toString() {
+            return "date";
+        }
+
+        private static long normalize(@NonNull final String value) {
+            long year = 0;
+            long month = 0;
+            long day = 0;
+            long hour = 0;
+            long minute = 0;
+            long second = 0;
+            int parts = 0;
+            int firstPartDigits = 0;
+            int meridiem = NO_MERIDIEM;
+            int index = 0;
+            while (index < value.length()) {
+                if (!isDigit(value.charAt(index))) {
+                    final int marker = meridiemAt(value, index);
+                    if (marker != NO_MERIDIEM) {
+                        if (meridiem != NO_MERIDIEM || parts <= 3) {
+                            return NOT_A_DATE;
+                        }
+                        meridiem = marker;
+                        index += 2;
+                    } else {
+                        index++;
+                    }
+                    continue;
+                }
+                if (parts == MAX_PARTS || meridiem != NO_MERIDIEM) {
+                    return NOT_A_DATE;
+                }
+                long number = 0;
+                final int start = index;
+                while (index < value.length() && isDigit(value.charAt(index)) && index - start < YEAR_DIGITS) {
+                    number = number * 10 + (value.charAt(index) - '0');
+                    index++;
+                }
+                if (parts == 0) {
+                    firstPartDigits = index - start;
+                }
+                switch (parts) {
+                    case 0:
+                        year = number;
+                        break;
+                    case 1:
+                        month = number;
+                        break;
+                    case 2:
+                        day = number;
+                        break;
+                    case 3:
+                        hour = number;
+                        break;
+                    case 4:
+                        minute = number;
+                        break;
+                    default:
+                        second = number;
+                }
+                parts++;
+            }
+            if (parts < 3) {
+                return NOT_A_DATE;
+            }
+            if (meridiem != NO_MERIDIEM) {
+                if (hour < 1 || hour > HOURS_PER_HALF_DAY) {
+                    return NOT_A_DATE;
+                }
+                hour = hour % HOURS_PER_HALF_DAY + (meridiem == POST_MERIDIEM ? HOURS_PER_HALF_DAY : 0);
+            }
+            if (hour > 23 || minute > 59 || second > 59) {
+                return NOT_A_DATE;
+            }
+            if (firstPartDigits != YEAR_DIGITS) {
+                final long monthFirst = year;
+                year = day;
+                day = month;
+                month = monthFirst;
+            }
+            if (month < 1 || month > 12 || day < 1 || day > 31) {
+                return NOT_A_DATE;
+            }
+            return ((((year * 12 + month) * 31 + day) * 24 + hour) * 60 + minute) * 60 + second;
+        }
+
+        /**
+         * Returns whether {@code AM} or {@code PM}, in any case and not part of a longer word, starts at the index.
+         */
+        private static int meridiemAt(@NonNull final String value, final int index) {
+            if (index + 1 >= value.length() || Character.toUpperCase(value.charAt(index + 1)) != 'M' ||
+                    (index > 0 && Character.isLetter(value.charAt(index - 1))) ||
+                    (index + 2 < value.length() && Character.isLetter(value.charAt(index + 2)))) {
+                return NO_MERIDIEM;
+            }
+            switch (Character.toUpperCase(value.charAt(index))) {
+                case 'A':
+                    return ANTE_MERIDIEM;
+                case 'P':
+                    return POST_MERIDIEM;
+                default:
+                    return NO_MERIDIEM;
+            }
+        }
+
+        private static boolean isDigit(final char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+
+    final class IgnoreComparator implements ColumnComparator {
+        private IgnoreComparator() {
+        }
+
+        @Override
+        public boolean matches(@NonNull final String originalValue, @NonNull final String doubleEntryValue) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "ignore";
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Optional;
+
+@Slf4j
+public final class ColumnIdentifiers {
+    private ColumnIdentifiers() {
+    }
+
+    /**
+     * Converts a spreadsheet-style column identifier (e.g. "C" or "AF") into a zero-based column index.
+     */
+    public static Optional<Integer> toColumnIndex(@NonNull final String columnText) {
+        final String identifierText = columnText.trim().toLowerCase();
+        if (identifierText.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int columnNum = 0;
+        for (int i = 0; i < identifierText.length(); i++) {
+            char identifier = identifierText.charAt(i);
+            if (Character.isLetter(identifier)) {
+                columnNum += (identifier - 97) + (i * 26);
+            } else {
+                log.error("Invalid column input {}", columnText);
+                return Optional.empty();
+            }
+        }
+
+        return Optional.of(columnNum);
+    }
+
+    /**
+     * Converts a zero-based column index into a spreadsheet-style column identifier (e.g. 0 into "A", 26 into "AA").
+     */
+    public static String toColumnIdentifier(final int columnIndex) {
+        if (columnIndex < 0) {
+            throw new IllegalArgumentException("Column index must not be negative but was " + columnIndex);
+        }
+        final StringBuilder identifier = new StringBuilder();
+        for (int remaining = columnIndex + 1; remaining > 0; remaining = (remaining - 1) / 26) {
+            identifier.append((char) ('A' + (remaining - 1) % 26));
+        }
+        return identifier.reverse().toString();
+    }
+}
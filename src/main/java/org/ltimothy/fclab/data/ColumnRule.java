@@ -0,0 +1,83 @@
+package org.ltimothy.fclab.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * Assigns a {@link ColumnComparator} to every column whose header matches a pattern. Patterns match the whole header
+ * name ignoring case, with {@code *} matching any text and {@code ?} any single character, e.g.
+ * {@code StartDate|EndDate|IPAddress=ignore} or {@code DV Item_*=numeric:0.5}. Alternatives are separated by {@code |}.
+ */
+@Getter
+public class ColumnRule {
+    private static final String SEPARATOR = "=";
+    private static final String ALTERNATIVE_SEPARATOR = "|";
+    private static final String RULE_SEPARATOR = ";";
+
+    private final String headerPattern;
+    private final ColumnComparator comparator;
+    private final Pattern pattern;
+
+    public ColumnRule(@NonNull final String headerPattern, @NonNull final ColumnComparator comparator) {
+        this.headerPattern = headerPattern;
+        this.comparator = comparator;
+        this.pattern = compile(headerPattern);
+    }
+
+    /**
+     * Parses a rule of the form {@code <header pattern>=<comparator>}, see {@link ColumnComparator#parse(String)}.
+     */
+    public static ColumnRule parse(@NonNull final String rule) throws IllegalArgumentException {
+        final int separator = rule.lastIndexOf(SEPARATOR);
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Expected <header pattern>=<comparator> but was " + rule);
+        }
+        return new ColumnRule(rule.substring(0, separator).trim(),
+                ColumnComparator.parse(rule.substring(separator + 1)));
+    }
+
+    /**
+     * Parses rules separated by {@code ;}, ignoring blank entries.
+     */
+    public static List<ColumnRule> parseAll(@NonNull final String rules) throws IllegalArgumentException {
+        final List<ColumnRule> parsedRules = new ArrayList<>();
+        for (final String rule : rules.split(RULE_SEPARATOR)) {
+            if (!rule.isBlank()) {
+                parsedRules.add(parse(rule));
+            }
+        }
+        return parsedRules;
+    }
+
+    public boolean appliesTo(@NonNull final String header) {
+        return pattern.matcher(header.trim()).matches();
+    }
+
+    @Override
+    public String toString() {
+        return headerPattern + SEPARATOR + comparator;
+    }
+
+    private static Pattern compile(@NonNull final String headerPattern) {
+        final StringJoiner regex = new StringJoiner("|");
+        for (final String alternative : headerPattern.split(Pattern.quote(ALTERNATIVE_SEPARATOR))) {
+            final StringBuilder alternativeRegex = new StringBuilder();
+            final StringBuilder literal = new StringBuilder();
+            for (final char c : alternative.trim().toCharArray()) {
+                if (c == '*' || c == '?') {
+                    alternativeRegex.append(Pattern.quote(literal.toString())).append(c == '*' ? ".*" : ".");
+                    literal.setLength(0);
+                } else {
+                    literal.append(c);
+                }
+            }
+            regex.add(alternativeRegex.append(Pattern.quote(literal.toString())));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
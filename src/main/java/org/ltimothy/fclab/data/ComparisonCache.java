@@ -0,0 +1,202 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sidecar file holding, per compared pair, a fingerprint of the relevant columns of both entries and the columns that
+ * mismatched. A later run over a grown or edited export only recompares pairs whose fingerprints changed and rebuilds
+ * the export rows of unchanged pairs from the cached mismatch columns.
+ */
+@Slf4j
+public class ComparisonCache {
+    private static final String CACHE_FILE_SUFFIX = ".doubleentry-cache";
+    private static final int MAGIC = 0x44454343;
+    private static final int VERSION = 2;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long FIELD_SEPARATOR = 0x1f;
+
+    private final File file;
+    private final long signature;
+    private final Map<EntryKey, CachedPair> previousPairs;
+    private final Map<EntryKey, CachedPair> currentPairs;
+    private final AtomicInteger hits;
+    private final AtomicInteger misses;
+
+    private ComparisonCache(@NonNull final File file, final long signature,
+                            @NonNull final Map<EntryKey, CachedPair> previousPairs) {
+        this.file = file;
+        this.signature = signature;
+        this.previousPairs = previousPairs;
+        this.currentPairs = new ConcurrentHashMap<>();
+        this.hits = new AtomicInteger();
+        this.misses = new AtomicInteger();
+    }
+
+    public static File defaultFileFor(@NonNull final File inputFile) {
+        return new File(inputFile.getAbsoluteFile().getParentFile(), inputFile.getName() + CACHE_FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the cache written by a previous run, or starts an empty one if there is none or it was written for
+     * different analysis parameters or headers.
+     */
+    static ComparisonCache load(@NonNull final File file, @NonNull final SurveyOptions options,
+                                @NonNull final String[] primaryHeader) {
+        final long signature = signature(options, primaryHeader);
+        final Map<EntryKey, CachedPair> previousPairs = new HashMap<>();
+        if (file.isFile()) {
+            try (final DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                if (input.readInt() == MAGIC && input.readInt() == VERSION && input.readLong() == signature) {
+                    final int pairCount = input.readInt();
+                    for (int i = 0; i < pairCount; i++) {
+                        final EntryKey entryKey = new EntryKey(input.readUTF(), input.readInt());
+                        final long originalFingerprint = input.readLong();
+                        final long doubleEntryFingerprint = input.readLong();
+                        final int[] mismatchColumns = new int[input.readInt()];
+                        for (int j = 0; j < mismatchColumns.length; j++) {
+                            mismatchColumns[j] = input.readInt();
+                        }
+                        previousPairs.put(entryKey,
+                                new CachedPair(originalFingerprint, doubleEntryFingerprint, mismatchColumns));
+                    }
+                    log.info("Loaded {} cached comparisons from {}", pairCount, file);
+                } else {
+                    log.info("Ignoring comparison cache {} written for different parameters", file);
+                }
+            } catch (final IOException | IllegalArgumentException e) {
+                log.warn("Could not read comparison cache {}, recomparing every pair", file, e);
+                previousPairs.clear();
+            }
+        }
+        return new ComparisonCache(file, signature, previousPairs);
+    }
+
+    /**
+     * Returns the cached mismatch columns of a pair if neither entry changed since the cache was written. Pairs are
+     * keyed by the entry compared with the original, so each further entry of a participant has its own. Safe to call
+     * from multiple threads.
+     */
+    Optional<int[]> lookup(@NonNull final EntryKey entryKey, final long originalFingerprint,
+                           final long doubleEntryFingerprint) {
+        final CachedPair cachedPair = previousPairs.get(entryKey);
+        if (cachedPair != null && cachedPair.originalFingerprint == originalFingerprint &&
+                cachedPair.doubleEntryFingerprint == doubleEntryFingerprint) {
+            hits.incrementAndGet();
+            currentPairs.put(entryKey, cachedPair);
+            return Optional.of(cachedPair.mismatchColumns);
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    void record(@NonNull final EntryKey entryKey, final long originalFingerprint,
+                final long doubleEntryFingerprint, @NonNull final int[] mismatchColumns) {
+        currentPairs.put(entryKey, new CachedPair(originalFingerprint, doubleEntryFingerprint, mismatchColumns));
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Replaces the cache file with the pairs seen in this run, dropping pairs that no longer exist.
+     */
+    void save() throws IOException {
+        final File temporaryFile = new File(file.getPath() + ".tmp");
+        try (final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(signature);
+            output.writeInt(currentPairs.size());
+            for (final Map.Entry<EntryKey, CachedPair> entry : currentPairs.entrySet()) {
+                final CachedPair cachedPair = entry.getValue();
+                output.writeUTF(entry.getKey().getBaseParticipantId());
+                output.writeInt(entry.getKey().getEntryRole());
+                output.writeLong(cachedPair.originalFingerprint);
+                output.writeLong(cachedPair.doubleEntryFingerprint);
+                output.writeInt(cachedPair.mismatchColumns.length);
+                for (final int column : cachedPair.mismatchColumns) {
+                    output.writeInt(column);
+                }
+            }
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        log.info("Saved {} comparisons to {} ({} reused, {} recompared)", currentPairs.size(), file, hits.get(),
+                misses.get());
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the row length and every field from {@code fromColumn} onward.
+     */
+    static long fingerprint(@NonNull final String[] row, final int fromColumn) {
+        return fingerprint(row, fromColumn, new int[0]);
+    }
+
+    /**
+     * Like {@link #fingerprint(String[], int)}, leaving out {@code skippedColumns} such as an entry number column.
+     */
+    static long fingerprint(@NonNull final String[] row, final int fromColumn, @NonNull final int[] skippedColumns) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ row.length) * FNV_PRIME;
+        for (int i = fromColumn; i < row.length; i++) {
+            if (ComparisonPlan.contains(skippedColumns, i)) {
+                continue;
+            }
+            final String field = row[i];
+            if (field != null) {
+                for (int j = 0; j < field.length(); j++) {
+                    hash = (hash ^ field.charAt(j)) * FNV_PRIME;
+                }
+            }
+            hash = (hash ^ FIELD_SEPARATOR) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long signature(@NonNull final SurveyOptions options, @NonNull final String[] primaryHeader) {
+        final String[] parameters = {
+                String.valueOf(options.getParticipantIdColumn()),
+                String.valueOf(options.getFirstRelevantColumn()),
+                options.getPairing().toString(),
+                options.getColumnRules().toString()
+        };
+        return fingerprint(parameters, 0) * 31 + fingerprint(primaryHeader, 0, options.getPairing().pairingColumns());
+    }
+
+    private static final class CachedPair {
+        private final long originalFingerprint;
+        private final long doubleEntryFingerprint;
+        private final int[] mismatchColumns;
+
+        private CachedPair(final long originalFingerprint, final long doubleEntryFingerprint,
+                           @NonNull final int[] mismatchColumns) {
+            this.originalFingerprint = originalFingerprint;
+            this.doubleEntryFingerprint = doubleEntryFingerprint;
+            this.mismatchColumns = mismatchColumns;
+        }
+    }
+}
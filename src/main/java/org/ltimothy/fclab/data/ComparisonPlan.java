@@ -0,0 +1,96 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The columns compared for every pair and the comparator of each, compiled once from the primary header. Columns
+ * before the first relevant column, the participant ID column, the columns of the {@link PairingStrategy} and columns
+ * whose rule is {@link ColumnComparator#IGNORE} are left out, so the comparison loop only visits the columns it needs.
+ */
+@Slf4j
+final class ComparisonPlan {
+    private final int[] columns;
+    private final ColumnComparator[] comparators;
+
+    private ComparisonPlan(@NonNull final int[] columns, @NonNull final ColumnComparator[] comparators) {
+        this.columns = columns;
+        this.comparators = comparators;
+    }
+
+    /**
+     * Assigns each relevant column the comparator of the first rule matching its header, or
+     * {@link ColumnComparator#TEXT} when no rule matches.
+     */
+    static ComparisonPlan compile(@NonNull final String[] primaryHeader, final int participantIdColumn,
+                                  @NonNull final int[] pairingColumns, final int firstRelevantColumn,
+                                  @NonNull final List<ColumnRule> rules) {
+        final int[] columns = new int[Math.max(0, primaryHeader.length - firstRelevantColumn)];
+        final ColumnComparator[] comparators = new ColumnComparator[columns.length];
+        final Map<String, Integer> columnsPerComparator = new TreeMap<>();
+        int size = 0;
+        for (int column = firstRelevantColumn; column < primaryHeader.length; column++) {
+            if (column == participantIdColumn || contains(pairingColumns, column)) {
+                continue;
+            }
+            final ColumnComparator comparator = comparatorFor(primaryHeader[column], rules);
+            columnsPerComparator.merge(comparator.toString(), 1, Integer::sum);
+            if (comparator != ColumnComparator.IGNORE) {
+                columns[size] = column;
+                comparators[size] = comparator;
+                size++;
+            }
+        }
+        if (!rules.isEmpty()) {
+            log.info("Comparison plan for {} column(s): {}", primaryHeader.length, columnsPerComparator);
+        }
+        return new ComparisonPlan(Arrays.copyOf(columns, size), Arrays.copyOf(comparators, size));
+    }
+
+    /**
+     * Whether a column is one of a few columns, e.g. of {@link PairingStrategy#pairingColumns()}.
+     */
+    static boolean contains(@NonNull final int[] columns, final int column) {
+        for (final int candidate : columns) {
+            if (candidate == column) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return columns.length;
+    }
+
+    int column(final int index) {
+        return columns[index];
+    }
+
+    /**
+     * Returns the index of an export column in the plan, or a negative number if it is not compared.
+     */
+    int indexOf(final int column) {
+        return Arrays.binarySearch(columns, column);
+    }
+
+    boolean matches(final int index, @NonNull final String originalValue, @NonNull final String doubleEntryValue) {
+        return comparators[index].matches(originalValue, doubleEntryValue);
+    }
+
+    private static ColumnComparator comparatorFor(final String header, @NonNull final List<ColumnRule> rules) {
+        if (header != null) {
+            for (final ColumnRule rule : rules) {
+                if (rule.appliesTo(header)) {
+                    return rule.getComparator();
+                }
+            }
+        }
+        return ColumnComparator.TEXT;
+    }
+}
@@ -0,0 +1,50 @@
+package org.ltimothy.fclab.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.File;
+import java.util.Optional;
+
+@Getter
+public enum DelimitedFileType {
+    TSV("tsv", '\t'),
+    CSV("csv", ',');
+
+    private final String extension;
+    private final char delimiter;
+
+    DelimitedFileType(@NonNull final String extension, final char delimiter) {
+        this.extension = extension;
+        this.delimiter = delimiter;
+    }
+
+    public static Optional<DelimitedFileType> fromFile(@NonNull final File file) {
+        return fromFileName(file.getName());
+    }
+
+    /**
+     * Like {@link #fromFile(File)}, but also accepts exports compressed by {@link SurveyExporter}, e.g.
+     * {@code out.csv.gz}.
+     */
+    public static Optional<DelimitedFileType> fromExportFile(@NonNull final File file) {
+        final String fileName = file.getName();
+        return fromFileName(SurveyExporter.isCompressed(file)
+                ? fileName.substring(0, fileName.length() - SurveyExporter.GZIP_EXTENSION.length())
+                : fileName);
+    }
+
+    private static Optional<DelimitedFileType> fromFileName(@NonNull final String fileName) {
+        final int lastDot = fileName.lastIndexOf(".");
+        if (lastDot == -1) {
+            return Optional.empty();
+        }
+        final String fileExtension = fileName.substring(lastDot + 1);
+        for (final DelimitedFileType fileType : values()) {
+            if (fileType.extension.equalsIgnoreCase(fileExtension)) {
+                return Optional.of(fileType);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,34 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+/**
+ * The fields of one record of a delimited file. Implementations may decode a field only when it is requested, so
+ * callers that need a handful of columns should prefer {@link #get(int)} over {@link #toArray()}.
+ */
+public interface DelimitedRecord {
+    int size();
+
+    String get(int index) throws IndexOutOfBoundsException;
+
+    String[] toArray();
+
+    static DelimitedRecord of(@NonNull final String[] fields) {
+        return new DelimitedRecord() {
+            @Override
+            public int size() {
+                return fields.length;
+            }
+
+            @Override
+            public String get(final int index) throws IndexOutOfBoundsException {
+                return fields[index];
+            }
+
+            @Override
+            public String[] toArray() {
+                return fields;
+            }
+        };
+    }
+}
@@ -0,0 +1,257 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.ICSVWriter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.listener.ComparisonListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Variant of {@link QualtricsSurvey} that keeps the loaded export dictionary-encoded: every cell is an {@code int} code
+ * into a {@link ValueDictionary} shared by all columns. Categorical answers repeat across rows, so the export takes a
+ * fraction of the memory of one {@link String} per cell, and unchanged cells of a pair are matched by comparing codes.
+ * Export rows are decoded only while they are written.
+ */
+@Slf4j
+public class DictionaryEncodedSurvey implements SurveyAnalysis {
+    private static final int QUALTRICS_PRIMARY_HEADER_INDEX = 0;
+    private static final int QUALTRICS_HEADERS_TOTAL_LENGTH = 3;
+
+    private final SurveyOptions options;
+    private final int participantIdColumn;
+    private final String doubleEntryIdPrefix;
+    private final Charset charset;
+    private final EntryComparator entryComparator;
+    private final ProgressListener progressListener;
+    private final ValueDictionary dictionary;
+    private final Map<String, int[]> participantIdToCodes;
+    private final List<String[]> rawDataHeaders;
+    private final List<String> exportedParticipantIds;
+    private final Map<String, int[]> mismatchColumnsByParticipantId;
+
+    /**
+     * Comparison threads in the options are ignored, comparing codes is cheap enough to run on the calling thread.
+     */
+    public DictionaryEncodedSurvey(@NonNull final File file, @NonNull final SurveyOptions options,
+                                   @NonNull final ComparisonListener listener,
+                                   @NonNull final ProgressListener progressListener)
+            throws IllegalStateException, CancellationException {
+        if (!supports(options.getCharset())) {
+            throw new IllegalStateException("Dictionary encoding does not support the charset " +
+                    options.getCharset());
+        }
+        if (!options.getMergedInputs().isEmpty()) {
+            throw new IllegalStateException("Dictionary encoding does not support merged inputs");
+        }
+        if (!options.isPairedByPrefix()) {
+            throw new IllegalStateException("Dictionary encoding only pairs entries by prefix");
+        }
+
+        this.options = options;
+        this.participantIdColumn = options.getParticipantIdColumn();
+        this.doubleEntryIdPrefix = options.getDoubleEntryIdPrefix().toLowerCase();
+        this.charset = options.getCharset();
+        this.entryComparator = new EntryComparator(participantIdColumn, options.getFirstRelevantColumn(), listener);
+        this.progressListener = progressListener;
+        this.dictionary = new ValueDictionary();
+        this.participantIdToCodes = new LinkedHashMap<>();
+        this.rawDataHeaders = new ArrayList<>();
+        this.exportedParticipantIds = new ArrayList<>();
+        this.mismatchColumnsByParticipantId = new HashMap<>();
+        try (final AnalysisMetrics.StageTimer timer = options.getMetrics().start(AnalysisStage.PARSING)) {
+            timer.addItems(loadFile(file));
+            timer.addBytes(file.length());
+        }
+        entryComparator.checkRows(options.getDuplicatePolicy());
+        processFile();
+    }
+
+    /**
+     * Rows are read with a {@link RecordReader}, which requires the quote, delimiter and line terminator characters to
+     * be single ASCII bytes.
+     */
+    public static boolean supports(@NonNull final Charset charset) {
+        return IndexedRecordReader.supports(charset);
+    }
+
+    public int getParticipantCount() {
+        return participantIdToCodes.size();
+    }
+
+    /**
+     * Number of distinct values in the export, across all columns.
+     */
+    public int getDistinctValueCount() {
+        return dictionary.size();
+    }
+
+    public List<String[]> getExportData() {
+        final List<String[]> exportData = new ArrayList<>(rawDataHeaders);
+        forEachExportRow(exportData::add);
+        return exportData;
+    }
+
+    @Override
+    public void writeTo(@NonNull final ICSVWriter writer) throws CancellationException {
+        try (final AnalysisMetrics.StageTimer timer = options.getMetrics().start(AnalysisStage.EXPORTING)) {
+            rawDataHeaders.forEach(writer::writeNext);
+            forEachExportRow(row -> {
+                writer.writeNext(row);
+                timer.addItems(1);
+            });
+        }
+    }
+
+    private void forEachExportRow(@NonNull final Consumer<String[]> consumer) throws CancellationException {
+        final String[] primaryHeader = rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX);
+        for (final String participantId : exportedParticipantIds) {
+            ProgressListener.checkCancelled();
+            final int[] mismatchColumns = mismatchColumnsByParticipantId.get(participantId);
+            if (mismatchColumns != null) {
+                consumer.accept(dictionary.decode(participantIdToCodes.get(participantId), primaryHeader.length));
+                consumer.accept(entryComparator.exportDoubleEntry(primaryHeader,
+                        dictionary.decode(participantIdToCodes.get(doubleEntryIdPrefix.concat(participantId))),
+                        mismatchColumns));
+            } else {
+                consumer.accept(dictionary.decode(participantIdToCodes.get(participantId)));
+            }
+        }
+    }
+
+    private void processFile() throws IllegalStateException, CancellationException {
+        try {
+            final String[] primaryHeader = rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX);
+            final Optional<ComparisonCache> comparisonCache = options.getComparisonCacheFile()
+                    .map(cacheFile -> ComparisonCache.load(cacheFile, options, primaryHeader));
+            entryComparator.usePlan(primaryHeader, options.getColumnRules(),
+                    options.getPairing().pairingColumns());
+            comparisonCache.ifPresent(entryComparator::useCache);
+            final AnalysisMetrics metrics = options.getMetrics();
+            final List<String> participantIds;
+            try (final AnalysisMetrics.StageTimer timer = metrics.start(AnalysisStage.INDEXING)) {
+                participantIds = new ArrayList<>(participantIdToCodes.keySet());
+                options.getExportOrder().sort(participantIds, doubleEntryIdPrefix);
+                timer.addItems(participantIds.size());
+            }
+            final int participantCount = participantIds.size();
+            final AnalysisMetrics.StageTimer comparing = metrics.start(AnalysisStage.COMPARING);
+
+            for (int index = 0; index < participantCount; index++) {
+                ProgressListener.checkCancelled();
+                if ((index + 1) % ProgressListener.REPORTING_INTERVAL == 0) {
+                    progressListener.onProgress(AnalysisStage.COMPARING, index + 1, participantCount);
+                }
+                final String participantId = participantIds.get(index);
+                if (!participantId.startsWith(doubleEntryIdPrefix)) {
+                    final int[] doubleEntry = participantIdToCodes.get(doubleEntryIdPrefix.concat(participantId));
+                    if (doubleEntry != null) {
+                        comparePair(participantId, primaryHeader, participantIdToCodes.get(participantId),
+                                doubleEntry);
+                    }
+                    exportedParticipantIds.add(participantId);
+                } else {
+                    final String originalEntryParticipantId = participantId.substring(doubleEntryIdPrefix.length());
+                    if (!participantIdToCodes.containsKey(originalEntryParticipantId)) {
+                        entryComparator.reportMissingOriginal(participantId, originalEntryParticipantId);
+                        exportedParticipantIds.add(participantId);
+                    }
+                }
+            }
+            progressListener.onProgress(AnalysisStage.COMPARING, participantCount, participantCount);
+            metrics.recordComparison(entryComparator.finish());
+            comparing.addItems(participantCount);
+            comparing.close();
+            comparisonCache.ifPresent(this::saveComparisonCache);
+        } catch (final IndexOutOfBoundsException e) {
+            log.error("Column identifiers are invalid!");
+            throw new IllegalStateException("Column identifiers are invalid!");
+        }
+    }
+
+    private void comparePair(@NonNull final String participantId, @NonNull final String[] primaryHeader,
+                             @NonNull final int[] originalEntry, @NonNull final int[] doubleEntry)
+            throws IndexOutOfBoundsException {
+        final int[] mismatchColumns = entryComparator.compare(participantId, dictionary, originalEntry, doubleEntry);
+        entryComparator.reportPair(participantId, primaryHeader, mismatchColumns,
+                column -> dictionary.value(ValueDictionary.code(originalEntry, column)),
+                column -> dictionary.value(ValueDictionary.code(doubleEntry, column)));
+        mismatchColumnsByParticipantId.put(participantId, mismatchColumns);
+    }
+
+    private void saveComparisonCache(@NonNull final ComparisonCache comparisonCache) {
+        try {
+            comparisonCache.save();
+        } catch (final IOException e) {
+            log.warn("Could not save the comparison cache, the next run will recompare every pair", e);
+        }
+    }
+
+    /**
+     * Returns the number of rows parsed, including the headers.
+     */
+    private long loadFile(@NonNull final File file) throws IllegalStateException, CancellationException {
+        final Optional<DelimitedFileType> fileType = DelimitedFileType.fromFile(file);
+        if (fileType.isEmpty()) {
+            throw new IllegalStateException("The file selected was of an unsupported file type " + file);
+        }
+
+        try (final RecordReader reader = options.getParserType().open(file, charset, fileType.get().getDelimiter())) {
+            final long[] rowsParsed = {0};
+            reader.scan((record, offset, length) -> {
+                ProgressListener.checkCancelled();
+                if (++rowsParsed[0] % ProgressListener.REPORTING_INTERVAL == 0) {
+                    progressListener.onProgress(AnalysisStage.PARSING, rowsParsed[0], ProgressListener.UNKNOWN_TOTAL);
+                }
+                if (rawDataHeaders.size() < QUALTRICS_HEADERS_TOTAL_LENGTH) {
+                    rawDataHeaders.add(record.toArray());
+                    return;
+                }
+                processRecord(record);
+            });
+            log.info("Loaded {} participants from {} with {} distinct values", participantIdToCodes.size(), file,
+                    dictionary.size());
+            return rowsParsed[0];
+        } catch (final IOException e) {
+            log.error("Exception in processing the file {}", file, e);
+            throw new IllegalStateException("Could not read the file " + file.getName());
+        } catch (final IndexOutOfBoundsException e) {
+            log.error("Column identifiers are invalid!");
+            throw new IllegalStateException("Column identifiers are invalid!");
+        }
+    }
+
+    /**
+     * Duplicates are handled by {@link SurveyOptions#getDuplicatePolicy()}, a replaced row keeps the position of the
+     * first.
+     */
+    private void processRecord(@NonNull final DelimitedRecord record) throws IndexOutOfBoundsException {
+        final long row = entryComparator.rowRead(record.size(),
+                rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX).length);
+        if (!entryComparator.hasParticipantId(row, record.size())) {
+            return;
+        }
+        final String participantId = record.get(participantIdColumn);
+        final String participantIdLower = participantId.toLowerCase();
+        if (participantIdToCodes.containsKey(participantIdLower)) {
+            if (entryComparator.reportDuplicateParticipantId(participantId, row, options.getDuplicatePolicy())) {
+                participantIdToCodes.put(participantIdLower, dictionary.encode(record));
+            }
+        } else if (!participantIdLower.isBlank()) {
+            participantIdToCodes.put(participantIdLower, dictionary.encode(record));
+            entryComparator.participantIndexed();
+        } else {
+            entryComparator.reportBlankParticipantId(row, record.toArray());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.ltimothy.fclab.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Optional;
+
+/**
+ * What to do with a row whose participant ID was already read, and with a row too short to have a participant ID
+ * column. Every such row is reported either way, and the analysis never stops at the first one.
+ */
+@Getter
+public enum DuplicatePolicy {
+    /**
+     * Reads every row, then fails the analysis if any row was a duplicate or had no participant ID.
+     */
+    FAIL("fail"),
+    /**
+     * Keeps the first row of each participant ID and skips the rest.
+     */
+    SKIP("skip"),
+    /**
+     * Keeps the last row of each participant ID in place of the earlier ones, at the position of the first.
+     */
+    KEEP_LAST("keep-last");
+
+    private final String argument;
+
+    DuplicatePolicy(@NonNull final String argument) {
+        this.argument = argument;
+    }
+
+    public static Optional<DuplicatePolicy> fromArgument(@NonNull final String argument) {
+        for (final DuplicatePolicy duplicatePolicy : values()) {
+            if (duplicatePolicy.argument.equalsIgnoreCase(argument)) {
+                return Optional.of(duplicatePolicy);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,515 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.listener.ComparisonListener;
+import org.ltimothy.fclab.listener.ComparisonSummary;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Compares an original entry with its double entry and reports the outcome, shared by the in-memory and streaming
+ * survey implementations so both produce the same export rows. {@link #compare} has no side effects and may run on any
+ * thread; {@link #report} raises listener events and must be called from a single thread, in output order.
+ */
+@Slf4j
+class EntryComparator {
+    private static final String NO_MISMATCH_TEXT = "OK";
+    private static final String MISMATCH_PREFIX = "!= ";
+    private static final String NO_MAJORITY_TEXT = "NO MAJORITY";
+    private static final String CONSENSUS_ID_PREFIX = "CONSENSUS_";
+    private static final int[] NO_MISMATCHES = new int[0];
+
+    private final int participantIdColumn;
+    private final int firstRelevantColumn;
+    private final ComparisonListener listener;
+
+    private Optional<ComparisonCache> cache;
+    private ComparisonPlan plan;
+    private int[] pairingColumns;
+    private int participants;
+    private int pairsCompared;
+    private long mismatches;
+    private long noMajorityCells;
+    private int orphanDoubleEntries;
+    private int blankParticipantIds;
+    private long rowsRead;
+    private int duplicateParticipantIds;
+    private int raggedRows;
+    private int rowsWithoutParticipantId;
+    private Optional<String> firstDuplicate;
+
+    EntryComparator(int participantIdColumn, int firstRelevantColumn, @NonNull final ComparisonListener listener) {
+        this.participantIdColumn = participantIdColumn;
+        this.firstRelevantColumn = firstRelevantColumn;
+        this.listener = listener;
+        this.cache = Optional.empty();
+        this.pairingColumns = new int[0];
+        this.firstDuplicate = Optional.empty();
+    }
+
+    /**
+     * Sets the columns to compare and their comparators, which must be done once the primary header is known and
+     * before the first pair is compared.
+     */
+    void usePlan(@NonNull final ComparisonPlan comparisonPlan) {
+        this.plan = comparisonPlan;
+    }
+
+    /**
+     * Compiles the plan from the header, the rules of the options and the columns of the pairing strategy, see
+     * {@link #usePlan(ComparisonPlan)}. The pairing columns are also left out of the cached fingerprints.
+     */
+    void usePlan(@NonNull final String[] primaryHeader, @NonNull final List<ColumnRule> columnRules,
+                 @NonNull final int[] pairingColumns) {
+        this.pairingColumns = pairingColumns;
+        usePlan(ComparisonPlan.compile(primaryHeader, participantIdColumn, pairingColumns, firstRelevantColumn,
+                columnRules));
+    }
+
+    /**
+     * Reuses cached results for pairs whose entries are unchanged, and records every comparison into the cache.
+     */
+    void useCache(@NonNull final ComparisonCache comparisonCache) {
+        this.cache = Optional.of(comparisonCache);
+    }
+
+    /**
+     * Returns the export rows for a pair: the original entry followed by the double entry, where each relevant column
+     * of the double entry is replaced by {@code OK} or {@code != value}.
+     */
+    String[][] comparePair(@NonNull final String participantId, @NonNull final String[] primaryHeader,
+                           @NonNull final String[] originalEntry, @NonNull final String[] doubleEntry)
+            throws IndexOutOfBoundsException {
+        return report(compare(new EntryKey(participantId, PairingStrategy.DOUBLE_ENTRY), participantId, primaryHeader,
+                originalEntry, doubleEntry));
+    }
+
+    /**
+     * Compares an original entry with the entry of {@code entryKey}, under which the result is cached.
+     */
+    PairComparison compare(@NonNull final EntryKey entryKey, @NonNull final String participantId,
+                           @NonNull final String[] primaryHeader, @NonNull final String[] originalEntry,
+                           @NonNull final String[] doubleEntry)
+            throws IndexOutOfBoundsException, IllegalStateException {
+        if (plan == null) {
+            throw new IllegalStateException("No comparison plan was set before comparing pairs");
+        }
+        if (cache.isEmpty()) {
+            return compareEntries(participantId, primaryHeader, originalEntry, doubleEntry);
+        }
+
+        final long originalFingerprint =
+                ComparisonCache.fingerprint(originalEntry, firstRelevantColumn, pairingColumns);
+        final long doubleEntryFingerprint =
+                ComparisonCache.fingerprint(doubleEntry, firstRelevantColumn, pairingColumns);
+        final Optional<int[]> cachedMismatchColumns =
+                cache.get().lookup(entryKey, originalFingerprint, doubleEntryFingerprint);
+        if (cachedMismatchColumns.isPresent()) {
+            return fromMismatchColumns(participantId, primaryHeader, originalEntry, doubleEntry,
+                    cachedMismatchColumns.get());
+        }
+
+        final PairComparison comparison = compareEntries(participantId, primaryHeader, originalEntry, doubleEntry);
+        cache.get().record(entryKey, originalFingerprint, doubleEntryFingerprint, comparison.mismatchColumns);
+        return comparison;
+    }
+
+    private PairComparison compareEntries(@NonNull final String participantId, @NonNull final String[] primaryHeader,
+                                          @NonNull final String[] originalEntry, @NonNull final String[] doubleEntry)
+            throws IndexOutOfBoundsException {
+        final String[] originalEntryData = padRow(originalEntry, primaryHeader.length);
+        final String[] rawDoubleEntryData = padRow(doubleEntry, primaryHeader.length);
+        final String[] doubleEntryData = rawDoubleEntryData.clone();
+
+        int[] mismatchColumns = NO_MISMATCHES;
+        int mismatchCount = 0;
+        for (int index = 0; index < plan.size(); index++) {
+            final int i = plan.column(index);
+            if (!plan.matches(index, originalEntryData[i], doubleEntryData[i])) {
+                if (mismatchCount == mismatchColumns.length) {
+                    mismatchColumns = Arrays.copyOf(mismatchColumns, Math.max(4, mismatchCount * 2));
+                }
+                mismatchColumns[mismatchCount++] = i;
+                doubleEntryData[i] = MISMATCH_PREFIX.concat(doubleEntryData[i]);
+            } else {
+                doubleEntryData[i] = NO_MISMATCH_TEXT;
+            }
+        }
+
+        return new PairComparison(participantId, primaryHeader, originalEntryData, rawDoubleEntryData,
+                doubleEntryData, Arrays.copyOf(mismatchColumns, mismatchCount));
+    }
+
+    /**
+     * Rebuilds the export rows of an unchanged pair from its cached mismatch columns without comparing values.
+     */
+    private PairComparison fromMismatchColumns(@NonNull final String participantId,
+                                               @NonNull final String[] primaryHeader,
+                                               @NonNull final String[] originalEntry,
+                                               @NonNull final String[] doubleEntry,
+                                               @NonNull final int[] mismatchColumns) {
+        return new PairComparison(participantId, primaryHeader, padRow(originalEntry, primaryHeader.length),
+                padRow(doubleEntry, primaryHeader.length),
+                exportDoubleEntry(primaryHeader, doubleEntry, mismatchColumns), mismatchColumns);
+    }
+
+    /**
+     * Returns the export row of a double entry whose mismatching columns are already known: each column of the plan
+     * is replaced by {@code OK}, or by {@code != value} if it is one of {@code mismatchColumns}.
+     */
+    String[] exportDoubleEntry(@NonNull final String[] primaryHeader, @NonNull final String[] doubleEntry,
+                               @NonNull final int[] mismatchColumns) {
+        final String[] rawDoubleEntryData = padRow(doubleEntry, primaryHeader.length);
+        final String[] doubleEntryData = rawDoubleEntryData.clone();
+        for (int index = 0; index < plan.size(); index++) {
+            doubleEntryData[plan.column(index)] = NO_MISMATCH_TEXT;
+        }
+        for (final int column : mismatchColumns) {
+            doubleEntryData[column] = MISMATCH_PREFIX.concat(rawDoubleEntryData[column]);
+        }
+        return doubleEntryData;
+    }
+
+    /**
+     * Copies a row to the length of the primary header. Cells missing from a row shorter than the header are empty,
+     * like the missing cells of a {@link ValueDictionary}.
+     */
+    static String[] padRow(@NonNull final String[] row, final int length) {
+        final String[] paddedRow = Arrays.copyOf(row, length);
+        if (row.length < length) {
+            Arrays.fill(paddedRow, row.length, length, "");
+        }
+        return paddedRow;
+    }
+
+    /**
+     * Compares each further entry of a participant with the original entry like {@link #compare}, then resolves every
+     * column in which any entry differs from the original by majority across all entries. Has no side effects and may
+     * run on any thread.
+     */
+    GroupComparison compareGroup(@NonNull final String participantId, @NonNull final String[] primaryHeader,
+                                 @NonNull final String[] originalEntry, @NonNull final EntryKey[] entryKeys,
+                                 @NonNull final String[] entryParticipantIds, @NonNull final String[][] entries)
+            throws IndexOutOfBoundsException, IllegalStateException {
+        final PairComparison[] pairs = new PairComparison[entries.length];
+        final int[][] mismatchColumns = new int[entries.length][];
+        for (int entry = 0; entry < entries.length; entry++) {
+            pairs[entry] = compare(entryKeys[entry], entryParticipantIds[entry], primaryHeader, originalEntry,
+                    entries[entry]);
+            mismatchColumns[entry] = pairs[entry].mismatchColumns;
+        }
+        final IntStream.Builder noMajorityColumns = IntStream.builder();
+        final String[] consensusEntry = resolveConsensus(primaryHeader, originalEntry, entries, mismatchColumns,
+                noMajorityColumns);
+        return new GroupComparison(participantId, primaryHeader, pairs, consensusEntry,
+                noMajorityColumns.build().toArray());
+    }
+
+    /**
+     * Returns the consensus row of a participant whose entries were already compared, see {@link #compareGroup}.
+     */
+    String[] exportConsensusEntry(@NonNull final String[] primaryHeader, @NonNull final String[] originalEntry,
+                                  @NonNull final String[][] entries, @NonNull final int[][] mismatchColumns) {
+        return resolveConsensus(primaryHeader, originalEntry, entries, mismatchColumns, column -> { });
+    }
+
+    /**
+     * The consensus row is the original entry with the participant ID prefixed by {@value #CONSENSUS_ID_PREFIX}.
+     * Columns where every entry matches the original keep its value, so only the columns where an entry differs are
+     * voted on: a value wins if more than half of all entries, the original included, match it under the column's
+     * comparator, otherwise the column is {@value #NO_MAJORITY_TEXT}.
+     */
+    private String[] resolveConsensus(@NonNull final String[] primaryHeader, @NonNull final String[] originalEntry,
+                                      @NonNull final String[][] entries, @NonNull final int[][] mismatchColumns,
+                                      @NonNull final IntConsumer noMajorityColumns) {
+        final String[] consensusEntry = padRow(originalEntry, primaryHeader.length);
+        consensusEntry[participantIdColumn] = CONSENSUS_ID_PREFIX.concat(originalEntry[participantIdColumn]);
+        final int[] disputedColumns = Arrays.stream(mismatchColumns)
+                .flatMapToInt(Arrays::stream)
+                .sorted()
+                .distinct()
+                .toArray();
+        final String[] values = new String[entries.length + 1];
+        for (final int column : disputedColumns) {
+            values[0] = consensusEntry[column];
+            for (int entry = 0; entry < entries.length; entry++) {
+                values[entry + 1] = column < entries[entry].length ? entries[entry][column] : "";
+            }
+            final Optional<String> majority = majority(plan.indexOf(column), values);
+            if (majority.isEmpty()) {
+                noMajorityColumns.accept(column);
+            }
+            consensusEntry[column] = majority.orElse(NO_MAJORITY_TEXT);
+        }
+        return consensusEntry;
+    }
+
+    private Optional<String> majority(final int index, @NonNull final String[] values) {
+        for (final String candidate : values) {
+            int agreeing = 0;
+            for (final String value : values) {
+                if (plan.matches(index, candidate, value)) {
+                    agreeing++;
+                }
+            }
+            if (agreeing * 2 > values.length) {
+                return Optional.of(candidate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the columns of the plan in which a pair of dictionary-encoded rows differ. Cells with the same code hold
+     * the same value and match under every comparator, so only cells with different codes are decoded and compared.
+     */
+    int[] compare(@NonNull final String participantId, @NonNull final ValueDictionary dictionary,
+                  @NonNull final int[] originalEntry, @NonNull final int[] doubleEntry) throws IllegalStateException {
+        if (plan == null) {
+            throw new IllegalStateException("No comparison plan was set before comparing pairs");
+        }
+        if (cache.isEmpty()) {
+            return findMismatches(dictionary, originalEntry, doubleEntry);
+        }
+
+        final long originalFingerprint =
+                ComparisonCache.fingerprint(dictionary.decode(originalEntry), firstRelevantColumn, pairingColumns);
+        final long doubleEntryFingerprint =
+                ComparisonCache.fingerprint(dictionary.decode(doubleEntry), firstRelevantColumn, pairingColumns);
+        final Optional<int[]> cachedMismatchColumns =
+                cache.get().lookup(new EntryKey(participantId, PairingStrategy.DOUBLE_ENTRY), originalFingerprint,
+                        doubleEntryFingerprint);
+        if (cachedMismatchColumns.isPresent()) {
+            return cachedMismatchColumns.get();
+        }
+
+        final int[] mismatchColumns = findMismatches(dictionary, originalEntry, doubleEntry);
+        cache.get().record(new EntryKey(participantId, PairingStrategy.DOUBLE_ENTRY), originalFingerprint,
+                doubleEntryFingerprint, mismatchColumns);
+        return mismatchColumns;
+    }
+
+    private int[] findMismatches(@NonNull final ValueDictionary dictionary, @NonNull final int[] originalEntry,
+                                 @NonNull final int[] doubleEntry) {
+        int[] mismatchColumns = NO_MISMATCHES;
+        int mismatchCount = 0;
+        for (int index = 0; index < plan.size(); index++) {
+            final int i = plan.column(index);
+            final int originalCode = ValueDictionary.code(originalEntry, i);
+            final int doubleEntryCode = ValueDictionary.code(doubleEntry, i);
+            if (originalCode != doubleEntryCode && !plan.matches(index, dictionary.value(originalCode),
+                    dictionary.value(doubleEntryCode))) {
+                if (mismatchCount == mismatchColumns.length) {
+                    mismatchColumns = Arrays.copyOf(mismatchColumns, Math.max(4, mismatchCount * 2));
+                }
+                mismatchColumns[mismatchCount++] = i;
+            }
+        }
+        return Arrays.copyOf(mismatchColumns, mismatchCount);
+    }
+
+    String[][] report(@NonNull final PairComparison comparison) {
+        reportPair(comparison.participantId, comparison.primaryHeader, comparison.mismatchColumns,
+                column -> comparison.originalEntry[column], column -> comparison.rawDoubleEntry[column]);
+        return new String[][]{comparison.originalEntry, comparison.doubleEntry};
+    }
+
+    /**
+     * Reports every entry of a participant as a pair and each column without a majority. Returns the export rows: the
+     * original entry, each further entry as in {@link #exportDoubleEntry} and the consensus row.
+     */
+    String[][] report(@NonNull final GroupComparison comparison) {
+        final PairComparison[] pairs = comparison.pairs;
+        final String[][] exportRows = new String[pairs.length + 2][];
+        exportRows[0] = pairs[0].originalEntry;
+        for (int entry = 0; entry < pairs.length; entry++) {
+            exportRows[entry + 1] = report(pairs[entry])[1];
+        }
+        for (final int column : comparison.noMajorityColumns) {
+            noMajorityCells++;
+            listener.noMajority(comparison.participantId, column, comparison.primaryHeader[column]);
+        }
+        exportRows[pairs.length + 1] = comparison.consensusEntry;
+        return exportRows;
+    }
+
+    /**
+     * Raises the listener events of a compared pair, reading the values of its mismatching columns on demand.
+     */
+    void reportPair(@NonNull final String participantId, @NonNull final String[] primaryHeader,
+                    @NonNull final int[] mismatchColumns, @NonNull final IntFunction<String> originalValue,
+                    @NonNull final IntFunction<String> doubleEntryValue) {
+        pairsCompared++;
+        mismatches += mismatchColumns.length;
+        listener.pairStarted(participantId);
+        for (final int column : mismatchColumns) {
+            listener.mismatchFound(participantId, column, primaryHeader[column], originalValue.apply(column),
+                    doubleEntryValue.apply(column));
+        }
+    }
+
+    void participantIndexed() {
+        participants++;
+    }
+
+    void reportMissingOriginal(@NonNull final String doubleEntryParticipantId,
+                               @NonNull final String originalEntryParticipantId) {
+        orphanDoubleEntries++;
+        log.debug("There was no entry {} for double-entry {}", originalEntryParticipantId, doubleEntryParticipantId);
+        listener.orphanDoubleEntry(doubleEntryParticipantId, originalEntryParticipantId);
+    }
+
+    /**
+     * Forgets the rows read so far, so that they can be read again. Issues already passed to the listener are not
+     * taken back.
+     */
+    void discardRows() {
+        participants = 0;
+        blankParticipantIds = 0;
+        rowsRead = 0;
+        duplicateParticipantIds = 0;
+        raggedRows = 0;
+        rowsWithoutParticipantId = 0;
+        firstDuplicate = Optional.empty();
+    }
+
+    /**
+     * Numbers the next data row from 1, continuing across merged inputs, and reports it if its number of fields
+     * differs from the primary header.
+     */
+    long rowRead(final int fields, final int expectedFields) {
+        final long row = ++rowsRead;
+        if (fields != expectedFields) {
+            raggedRows++;
+            log.debug("Row {} has {} fields instead of {}", row, fields, expectedFields);
+            listener.raggedRow(row, fields, expectedFields);
+        }
+        return row;
+    }
+
+    /**
+     * Returns whether a row is long enough to have a participant ID, counting it for {@link #checkRows} otherwise.
+     */
+    boolean hasParticipantId(final long row, final int fields) {
+        if (fields > participantIdColumn) {
+            return true;
+        }
+        rowsWithoutParticipantId++;
+        log.debug("Row {} has no participant ID column and was removed", row);
+        return false;
+    }
+
+    void reportBlankParticipantId(final long row, @NonNull final String[] fields) {
+        blankParticipantIds++;
+        if (log.isDebugEnabled()) {
+            log.debug("Blank participant ID was removed for row {} with fields {}", row, Arrays.toString(fields));
+        }
+        listener.blankParticipantIdDropped(row, fields);
+    }
+
+    /**
+     * Reports a row whose participant ID was already read and returns whether it replaces the earlier row.
+     */
+    boolean reportDuplicateParticipantId(@NonNull final String participantId, final long row,
+                                         @NonNull final DuplicatePolicy duplicatePolicy) {
+        duplicateParticipantIds++;
+        if (firstDuplicate.isEmpty()) {
+            firstDuplicate = Optional.of(participantId + " in row " + row);
+        }
+        final boolean replacedEarlierRow = duplicatePolicy == DuplicatePolicy.KEEP_LAST;
+        log.debug("Row {} repeats participant ID {}", row, participantId);
+        listener.duplicateParticipantId(participantId, row, replacedEarlierRow);
+        return replacedEarlierRow;
+    }
+
+    /**
+     * Fails with {@link DuplicatePolicy#FAIL} once every row was read, if any was a duplicate or had no participant ID.
+     */
+    void checkRows(@NonNull final DuplicatePolicy duplicatePolicy) throws IllegalStateException {
+        if (duplicatePolicy != DuplicatePolicy.FAIL ||
+                (duplicateParticipantIds == 0 && rowsWithoutParticipantId == 0)) {
+            return;
+        }
+        final String message = duplicateParticipantIds > 0
+                ? "Participant ID must be unique! Found " + duplicateParticipantIds + " duplicate(s), the first was " +
+                        firstDuplicate.get() + ", and " + rowsWithoutParticipantId +
+                        " row(s) without a participant ID."
+                : "Found " + rowsWithoutParticipantId +
+                        " row(s) without a participant ID, check the column identifiers!";
+        log.error(message);
+        throw new IllegalStateException(message);
+    }
+
+    ComparisonSummary finish() {
+        final ComparisonSummary summary = new ComparisonSummary(participants, pairsCompared, mismatches,
+                orphanDoubleEntries, blankParticipantIds, duplicateParticipantIds, raggedRows,
+                plan == null ? 0 : plan.size(), noMajorityCells);
+        listener.finished(summary);
+        return summary;
+    }
+
+    /**
+     * Result of comparing one pair, kept until it is reported in output order.
+     */
+    static final class PairComparison {
+        private final String participantId;
+        private final String[] primaryHeader;
+        private final String[] originalEntry;
+        private final String[] rawDoubleEntry;
+        private final String[] doubleEntry;
+        private final int[] mismatchColumns;
+
+        private PairComparison(@NonNull final String participantId, @NonNull final String[] primaryHeader,
+                               @NonNull final String[] originalEntry, @NonNull final String[] rawDoubleEntry,
+                               @NonNull final String[] doubleEntry, @NonNull final int[] mismatchColumns) {
+            this.participantId = participantId;
+            this.primaryHeader = primaryHeader;
+            this.originalEntry = originalEntry;
+            this.rawDoubleEntry = rawDoubleEntry;
+            this.doubleEntry = doubleEntry;
+            this.mismatchColumns = mismatchColumns;
+        }
+
+        int[] getMismatchColumns() {
+            return mismatchColumns;
+        }
+    }
+
+    /**
+     * Result of comparing all entries of one participant, kept until it is reported in output order.
+     */
+    static final class GroupComparison {
+        private final String participantId;
+        private final String[] primaryHeader;
+        private final PairComparison[] pairs;
+        private final String[] consensusEntry;
+        private final int[] noMajorityColumns;
+
+        private GroupComparison(@NonNull final String participantId, @NonNull final String[] primaryHeader,
+                                @NonNull final PairComparison[] pairs, @NonNull final String[] consensusEntry,
+                                @NonNull final int[] noMajorityColumns) {
+            this.participantId = participantId;
+            this.primaryHeader = primaryHeader;
+            this.pairs = pairs;
+            this.consensusEntry = consensusEntry;
+            this.noMajorityColumns = noMajorityColumns;
+        }
+
+        /**
+         * Returns the mismatch columns of each further entry against the original entry.
+         */
+        int[][] getMismatchColumns() {
+            final int[][] mismatchColumns = new int[pairs.length][];
+            for (int entry = 0; entry < pairs.length; entry++) {
+                mismatchColumns[entry] = pairs[entry].mismatchColumns;
+            }
+            return mismatchColumns;
+        }
+    }
+}
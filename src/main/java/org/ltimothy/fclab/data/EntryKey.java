@@ -0,0 +1,30 @@
+package org.ltimothy.fclab.data;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The base participant ID shared by every entry of a participant and the role of one entry, as normalized by a
+ * {@link PairingStrategy}: {@link PairingStrategy#ORIGINAL_ENTRY}, {@link PairingStrategy#DOUBLE_ENTRY} or a further
+ * entry numbered after it. Keys are equal when both the base participant ID and the entry role are.
+ */
+@Getter
+@EqualsAndHashCode
+public final class EntryKey {
+    private final String baseParticipantId;
+    private final int entryRole;
+
+    public EntryKey(@NonNull final String baseParticipantId, final int entryRole) {
+        if (entryRole < PairingStrategy.ORIGINAL_ENTRY) {
+            throw new IllegalArgumentException("The entry role must not be negative but was " + entryRole);
+        }
+        this.baseParticipantId = baseParticipantId;
+        this.entryRole = entryRole;
+    }
+
+    @Override
+    public String toString() {
+        return baseParticipantId + "#" + entryRole;
+    }
+}
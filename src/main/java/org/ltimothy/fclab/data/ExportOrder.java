@@ -0,0 +1,87 @@
+package org.ltimothy.fclab.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Row order of the export and of comparison events. Both orders are stable across runs, so repeated runs over the same
+ * input produce byte-identical output.
+ */
+@Getter
+public enum ExportOrder {
+    /**
+     * Participants appear in the order of their rows in the input file, with each double entry directly after its
+     * original entry.
+     */
+    INPUT("input", "Input File Order"),
+    /**
+     * Participants are sorted by participant ID (ignoring the double-entry prefix), with each double entry directly
+     * after its original entry.
+     */
+    PARTICIPANT_ID("id", "Participant ID Order");
+
+    private final String argument;
+    private final String description;
+
+    ExportOrder(@NonNull final String argument, @NonNull final String description) {
+        this.argument = argument;
+        this.description = description;
+    }
+
+    public static Optional<ExportOrder> fromArgument(@NonNull final String argument) {
+        for (final ExportOrder exportOrder : values()) {
+            if (exportOrder.argument.equalsIgnoreCase(argument)) {
+                return Optional.of(exportOrder);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Sorts lowercased participant IDs in place. Only the ID list is reordered, the rows themselves are not copied.
+     */
+    void sort(@NonNull final List<String> participantIds, @NonNull final String doubleEntryIdPrefix) {
+        if (this == PARTICIPANT_ID) {
+            participantIds.sort(Comparator
+                    .comparing((String participantId) -> baseParticipantId(participantId, doubleEntryIdPrefix))
+                    .thenComparing(participantId -> participantId.startsWith(doubleEntryIdPrefix)));
+        }
+    }
+
+    /**
+     * Returns the records {@code 0} to {@code recordCount - 1} in this order, sorted by the base participant ID and
+     * then the entry role of each record.
+     */
+    int[] order(final int recordCount, @NonNull final IntFunction<String> baseParticipantId,
+                @NonNull final IntUnaryOperator entryRole) {
+        if (this != PARTICIPANT_ID) {
+            return IntStream.range(0, recordCount).toArray();
+        }
+        return IntStream.range(0, recordCount)
+                .boxed()
+                .sorted(Comparator
+                        .comparing((Integer record) -> baseParticipantId.apply(record))
+                        .thenComparingInt(entryRole::applyAsInt))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private static String baseParticipantId(@NonNull final String participantId,
+                                            @NonNull final String doubleEntryIdPrefix) {
+        return participantId.startsWith(doubleEntryIdPrefix)
+                ? participantId.substring(doubleEntryIdPrefix.length())
+                : participantId;
+    }
+}
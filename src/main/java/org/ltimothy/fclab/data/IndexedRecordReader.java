@@ -0,0 +1,149 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.ICSVParser;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Splits a delimited file into records while tracking the byte offset of each record, so that a record can later be
+ * re-read on its own without keeping the parsed rows in memory. Record boundaries are found on the raw bytes, which is
+ * only valid for charsets where the quote and line terminator characters are single ASCII bytes.
+ */
+public class IndexedRecordReader implements RecordReader {
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String ASCII_PROBE = "\"\\\r\n\t,";
+
+    private final File file;
+    private final Charset charset;
+    private final CSVParser parser;
+    private final FileChannel channel;
+
+    public IndexedRecordReader(@NonNull final File file, @NonNull final Charset charset, final char delimiter)
+            throws IOException {
+        this.file = file;
+        this.charset = charset;
+        this.parser = new CSVParserBuilder()
+                .withQuoteChar(ICSVParser.DEFAULT_QUOTE_CHARACTER)
+                .withSeparator(delimiter)
+                .build();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    public static boolean supports(@NonNull final Charset charset) {
+        return Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void scan(@NonNull final RecordVisitor visitor) throws IOException {
+        try (final InputStream inputStream = new FileInputStream(file)) {
+            final byte[] chunk = new byte[BUFFER_SIZE];
+            final RecordBuffer record = new RecordBuffer();
+            long position = 0;
+            long recordStart = 0;
+            boolean inQuotes = false;
+            boolean escaped = false;
+            int read;
+            while ((read = inputStream.read(chunk)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    final byte b = chunk[i];
+                    position++;
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == ESCAPE && inQuotes) {
+                        escaped = true;
+                    } else if (b == QUOTE) {
+                        inQuotes = !inQuotes;
+                    } else if (b == LINE_FEED && !inQuotes) {
+                        visitor.visit(DelimitedRecord.of(parse(record.bytes, record.length)), recordStart,
+                                (int) (position - recordStart));
+                        record.length = 0;
+                        recordStart = position;
+                        continue;
+                    }
+                    record.append(b);
+                }
+            }
+            if (record.length > 0) {
+                visitor.visit(DelimitedRecord.of(parse(record.bytes, record.length)), recordStart,
+                        (int) (position - recordStart));
+            }
+        }
+    }
+
+    @Override
+    public String[] read(final long offset, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) == -1) {
+                break;
+            }
+        }
+
+        final byte[] bytes = buffer.array();
+        int end = buffer.position();
+        if (end > 0 && bytes[end - 1] == LINE_FEED) {
+            end--;
+        }
+        final RecordBuffer record = new RecordBuffer(end);
+        for (int i = 0; i < end; i++) {
+            record.append(bytes[i]);
+        }
+        return parse(record.bytes, record.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String[] parse(@NonNull final byte[] bytes, final int length) throws IOException {
+        int end = length;
+        if (end > 0 && bytes[end - 1] == CARRIAGE_RETURN) {
+            end--;
+        }
+        return parser.parseLine(new String(bytes, 0, end, charset));
+    }
+
+    /**
+     * Growable byte buffer which, like a line reader, folds CRLF line breaks inside quoted fields into LF.
+     */
+    private static final class RecordBuffer {
+        private byte[] bytes;
+        private int length;
+
+        private RecordBuffer() {
+            this(BUFFER_SIZE);
+        }
+
+        private RecordBuffer(final int capacity) {
+            this.bytes = new byte[Math.max(capacity, 1)];
+        }
+
+        private void append(final byte b) {
+            if (b == LINE_FEED && length > 0 && bytes[length - 1] == CARRIAGE_RETURN) {
+                bytes[length - 1] = LINE_FEED;
+                return;
+            }
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = b;
+        }
+    }
+}
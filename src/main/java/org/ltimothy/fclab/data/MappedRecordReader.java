@@ -0,0 +1,313 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.ICSVParser;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * {@link RecordReader} which memory-maps the file and tokenizes records directly on the mapped bytes. Scanning a record
+ * only records where its fields start and end; a field is decoded into a {@link String} when it is requested, so
+ * columns that are never read cost nothing beyond the scan itself.
+ * <p>
+ * Unquoted fields and fully quoted fields (with {@code ""} escapes) are handled here. A record containing anything
+ * else, such as backslash escapes, stray quotes or carriage returns inside quotes, is decoded and parsed with OpenCSV
+ * instead, which keeps the results identical to {@link ParserType#OPENCSV}. Like {@link IndexedRecordReader}, this is
+ * only valid for charsets where the quote, delimiter and line terminator characters are single ASCII bytes.
+ */
+public class MappedRecordReader implements RecordReader {
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+    private static final int INITIAL_FIELD_CAPACITY = 64;
+    private static final int NEEDS_MORE_INPUT = -1;
+
+    private final Charset charset;
+    private final byte delimiter;
+    private final CSVParser parser;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long windowSize;
+    private final Window scanWindow;
+    private final Window readWindow;
+
+    public MappedRecordReader(@NonNull final File file, @NonNull final Charset charset, final char delimiter)
+            throws IOException {
+        this(file, charset, delimiter, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedRecordReader(@NonNull final File file, @NonNull final Charset charset, final char delimiter,
+                       final long windowSize) throws IOException {
+        this.charset = charset;
+        this.delimiter = (byte) delimiter;
+        this.parser = new CSVParserBuilder()
+                .withQuoteChar(ICSVParser.DEFAULT_QUOTE_CHARACTER)
+                .withSeparator(delimiter)
+                .build();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        this.scanWindow = new Window();
+        this.readWindow = new Window();
+    }
+
+    public static boolean supports(@NonNull final Charset charset) {
+        return IndexedRecordReader.supports(charset);
+    }
+
+    @Override
+    public void scan(@NonNull final RecordVisitor visitor) throws IOException {
+        final MappedRecord record = new MappedRecord();
+        long recordStart = 0;
+        while (recordStart < fileSize) {
+            if (!scanWindow.covers(recordStart, 1)) {
+                scanWindow.map(recordStart);
+            }
+            int start = (int) (recordStart - scanWindow.start);
+            int end = record.tokenize(scanWindow, start, scanWindow.length, scanWindow.reachesEndOfFile());
+            if (end == NEEDS_MORE_INPUT && start > 0) {
+                scanWindow.map(recordStart);
+                start = 0;
+                end = record.tokenize(scanWindow, start, scanWindow.length, scanWindow.reachesEndOfFile());
+            }
+            if (end == NEEDS_MORE_INPUT) {
+                throw new IOException("The record at byte " + recordStart + " is larger than the mapping window");
+            }
+            visitor.visit(record, recordStart, end - start);
+            recordStart += end - start;
+        }
+    }
+
+    @Override
+    public String[] read(final long offset, final int length) throws IOException {
+        if (!readWindow.covers(offset, length)) {
+            readWindow.map(offset);
+        }
+        final int start = (int) (offset - readWindow.start);
+        final MappedRecord record = new MappedRecord();
+        record.tokenize(readWindow, start, start + length, true);
+        return record.toArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A read-only mapping of part of the file.
+     */
+    private final class Window {
+        private MappedByteBuffer buffer;
+        private long start;
+        private int length;
+
+        private boolean covers(final long position, final int size) {
+            return buffer != null && position >= start && position + size <= start + length;
+        }
+
+        private boolean reachesEndOfFile() {
+            return start + length == fileSize;
+        }
+
+        private void map(final long position) throws IOException {
+            start = position;
+            length = (int) Math.min(windowSize, fileSize - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+
+        private byte get(final int index) {
+            return buffer.get(index);
+        }
+    }
+
+    /**
+     * Field boundaries of one record within a {@link Window}. Quoted fields are stored without their surrounding
+     * quotes, together with whether they contain {@code ""} escapes that have to be collapsed when decoded.
+     */
+    private final class MappedRecord implements DelimitedRecord {
+        private MappedByteBuffer buffer;
+        private int[] fieldStarts = new int[INITIAL_FIELD_CAPACITY];
+        private int[] fieldEnds = new int[INITIAL_FIELD_CAPACITY];
+        private boolean[] fieldEscaped = new boolean[INITIAL_FIELD_CAPACITY];
+        private int fieldCount;
+        private byte[] scratch = new byte[INITIAL_FIELD_CAPACITY];
+        private String[] parsedFields;
+
+        /**
+         * Splits the record starting at {@code start}, returning the index just past its line feed, or
+         * {@link #NEEDS_MORE_INPUT} if the record does not end before {@code limit} and more of the file follows.
+         */
+        private int tokenize(@NonNull final Window window, final int start, final int limit, final boolean endOfInput)
+                throws IOException {
+            buffer = window.buffer;
+            fieldCount = 0;
+            parsedFields = null;
+
+            int fieldStart = start;
+            boolean quoted = false;
+            boolean escaped = false;
+            boolean inQuotes = false;
+            boolean plain = true;
+            int i = start;
+            while (i < limit) {
+                final byte b = window.get(i);
+                if (inQuotes) {
+                    if (b == QUOTE) {
+                        if (i + 1 == limit && !endOfInput) {
+                            return NEEDS_MORE_INPUT;
+                        }
+                        if (i + 1 < limit && window.get(i + 1) == QUOTE) {
+                            escaped = true;
+                            i += 2;
+                            continue;
+                        }
+                        inQuotes = false;
+                    } else if (b == ESCAPE) {
+                        plain = false;
+                        i += 2;
+                        continue;
+                    } else if (b == CARRIAGE_RETURN) {
+                        plain = false;
+                    }
+                    i++;
+                    continue;
+                }
+
+                if (b == delimiter || b == LINE_FEED) {
+                    int fieldEnd = i;
+                    if (b == LINE_FEED && fieldEnd > fieldStart && window.get(fieldEnd - 1) == CARRIAGE_RETURN) {
+                        fieldEnd--;
+                    }
+                    plain &= addField(fieldStart, fieldEnd, quoted, escaped);
+                    if (b == LINE_FEED) {
+                        if (!plain) {
+                            parseWithOpenCsv(window, start, i);
+                        }
+                        return i + 1;
+                    }
+                    fieldStart = i + 1;
+                    quoted = false;
+                    escaped = false;
+                } else if (b == QUOTE) {
+                    quoted = i == fieldStart;
+                    plain &= quoted;
+                    inQuotes = true;
+                } else if (b == CARRIAGE_RETURN) {
+                    if (i + 1 == limit && !endOfInput) {
+                        return NEEDS_MORE_INPUT;
+                    }
+                    plain &= i + 1 < limit && window.get(i + 1) == LINE_FEED;
+                } else if (b == ESCAPE || quoted) {
+                    plain = false;
+                }
+                i++;
+            }
+
+            if (!endOfInput) {
+                return NEEDS_MORE_INPUT;
+            }
+            plain &= !inQuotes && addField(fieldStart, Math.min(i, limit), quoted, escaped);
+            if (!plain) {
+                parseWithOpenCsv(window, start, Math.min(i, limit));
+            }
+            return limit;
+        }
+
+        private boolean addField(final int start, final int end, final boolean quoted, final boolean escaped) {
+            if (fieldCount == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+                fieldEscaped = Arrays.copyOf(fieldEscaped, fieldCount * 2);
+            }
+            final boolean wellFormed = !quoted || (end - start >= 2 && buffer.get(end - 1) == QUOTE);
+            fieldStarts[fieldCount] = quoted ? start + 1 : start;
+            fieldEnds[fieldCount] = quoted ? Math.max(start + 1, end - 1) : end;
+            fieldEscaped[fieldCount] = escaped;
+            fieldCount++;
+            return wellFormed;
+        }
+
+        /**
+         * Decodes the whole record like {@link IndexedRecordReader}, folding CRLF line breaks into LF, and parses it
+         * with OpenCSV.
+         */
+        private void parseWithOpenCsv(@NonNull final Window window, final int start, final int end)
+                throws IOException {
+            final byte[] bytes = ensureScratch(end - start);
+            int length = 0;
+            for (int i = start; i < end; i++) {
+                final byte b = window.get(i);
+                if (b == LINE_FEED && length > 0 && bytes[length - 1] == CARRIAGE_RETURN) {
+                    bytes[length - 1] = LINE_FEED;
+                } else {
+                    bytes[length++] = b;
+                }
+            }
+            if (length > 0 && bytes[length - 1] == CARRIAGE_RETURN) {
+                length--;
+            }
+            parsedFields = parser.parseLine(new String(bytes, 0, length, charset));
+        }
+
+        @Override
+        public int size() {
+            return parsedFields != null ? parsedFields.length : fieldCount;
+        }
+
+        @Override
+        public String get(final int index) throws IndexOutOfBoundsException {
+            if (parsedFields != null) {
+                return parsedFields[index];
+            }
+            Objects.checkIndex(index, fieldCount);
+
+            final int start = fieldStarts[index];
+            final int length = fieldEnds[index] - start;
+            final byte[] bytes = ensureScratch(length);
+            buffer.get(start, bytes, 0, length);
+            if (!fieldEscaped[index]) {
+                return new String(bytes, 0, length, charset);
+            }
+
+            int unescapedLength = 0;
+            for (int i = 0; i < length; i++) {
+                bytes[unescapedLength++] = bytes[i];
+                if (bytes[i] == QUOTE) {
+                    i++;
+                }
+            }
+            return new String(bytes, 0, unescapedLength, charset);
+        }
+
+        @Override
+        public String[] toArray() {
+            if (parsedFields != null) {
+                return parsedFields;
+            }
+            final String[] fields = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                fields[i] = get(i);
+            }
+            return fields;
+        }
+
+        private byte[] ensureScratch(final int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            return scratch;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.File;
+
+/**
+ * Another export whose rows are analyzed together with the main input, such as a separate double-entry survey or a
+ * later wave. Its columns are matched to the main input by header name, so both exports may order or omit columns
+ * differently.
+ */
+@Value
+public class MergedInput {
+    @NonNull
+    File file;
+    /**
+     * Every row is a double entry. Participant IDs without the double-entry prefix are given it.
+     */
+    boolean doubleEntries;
+
+    public static MergedInput wave(@NonNull final File file) {
+        return new MergedInput(file, false);
+    }
+
+    public static MergedInput doubleEntries(@NonNull final File file) {
+        return new MergedInput(file, true);
+    }
+}
@@ -0,0 +1,54 @@
+package org.ltimothy.fclab.data;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+
+/**
+ * File format of the {@link AnalysisMetrics} written after an analysis.
+ */
+@Slf4j
+@Getter
+public enum MetricsFormat {
+    /**
+     * A single object with one entry per stage, see {@link AnalysisMetrics#writeJson}.
+     */
+    JSON("json"),
+    /**
+     * One row per metric, see {@link AnalysisMetrics#writeCsv}.
+     */
+    CSV("csv");
+
+    private final String extension;
+
+    MetricsFormat(@NonNull final String extension) {
+        this.extension = extension;
+    }
+
+    public static Optional<MetricsFormat> fromArgument(@NonNull final String argument) {
+        for (final MetricsFormat metricsFormat : values()) {
+            if (metricsFormat.extension.equalsIgnoreCase(argument)) {
+                return Optional.of(metricsFormat);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void write(@NonNull final AnalysisMetrics metrics, @NonNull final File file) throws IOException {
+        if (this == JSON) {
+            try (final Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                metrics.writeJson(writer);
+            }
+            log.info("Wrote metrics {}", file);
+        } else {
+            SurveyExporter.writeReport(file, DelimitedFileType.CSV, StandardCharsets.UTF_8, metrics::writeCsv);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Entries by base participant ID and entry role, built while the export is read so that the entries of a participant
+ * are found through its participant number instead of hashing their participant IDs again. Records are numbered in
+ * insertion order from zero like in {@link ParticipantIndex}, which here numbers the base participant IDs.
+ */
+final class PairIndex {
+    static final int MISSING = ParticipantIndex.MISSING;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_ENTRY_ROLES = PairingStrategy.DOUBLE_ENTRY + 1;
+
+    private final ParticipantIndex baseParticipantIds;
+    /**
+     * The record of each entry role of a participant, or {@link #MISSING}. Roles are bounded by the pairing strategy,
+     * see {@link PairingStrategy#MAX_ENTRIES}.
+     */
+    private int[][] participantRecords;
+    private String[] participantIds;
+    private int[] recordParticipants;
+    private int[] recordEntryRoles;
+    private int size;
+
+    PairIndex() {
+        this.baseParticipantIds = new ParticipantIndex();
+        this.participantRecords = new int[INITIAL_CAPACITY][];
+        this.participantIds = new String[INITIAL_CAPACITY];
+        this.recordParticipants = new int[INITIAL_CAPACITY];
+        this.recordEntryRoles = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the participant number of a base participant ID, adding it if it is new.
+     */
+    int participant(@NonNull final String baseParticipantId) {
+        final int participant = baseParticipantIds.find(baseParticipantId);
+        if (participant != MISSING) {
+            return participant;
+        }
+        final int newParticipant = baseParticipantIds.add(baseParticipantId);
+        if (newParticipant == participantRecords.length) {
+            participantRecords = Arrays.copyOf(participantRecords, newParticipant * 2);
+        }
+        final int[] records = new int[INITIAL_ENTRY_ROLES];
+        Arrays.fill(records, MISSING);
+        participantRecords[newParticipant] = records;
+        return newParticipant;
+    }
+
+    /**
+     * Returns the record of an entry of a participant, or {@link #MISSING} if it was not read.
+     */
+    int record(final int participant, final int entryRole) {
+        final int[] records = participantRecords[participant];
+        return entryRole < records.length ? records[entryRole] : MISSING;
+    }
+
+    /**
+     * Adds an entry which is not in the index yet and returns its record number.
+     */
+    int add(final int participant, final int entryRole, @NonNull final String participantId) {
+        if (size == participantIds.length) {
+            participantIds = Arrays.copyOf(participantIds, size * 2);
+            recordParticipants = Arrays.copyOf(recordParticipants, size * 2);
+            recordEntryRoles = Arrays.copyOf(recordEntryRoles, size * 2);
+        }
+        int[] records = participantRecords[participant];
+        if (entryRole >= records.length) {
+            final int previousLength = records.length;
+            records = Arrays.copyOf(records, entryRole + 1);
+            Arrays.fill(records, previousLength, records.length, MISSING);
+            participantRecords[participant] = records;
+        }
+        records[entryRole] = size;
+        participantIds[size] = participantId;
+        recordParticipants[size] = participant;
+        recordEntryRoles[size] = entryRole;
+        return size++;
+    }
+
+    /**
+     * Returns the records of the double and further entries of a participant in the order of their roles.
+     */
+    int[] entryRecords(final int participant) {
+        final int[] records = participantRecords[participant];
+        int count = 0;
+        for (int entryRole = PairingStrategy.DOUBLE_ENTRY; entryRole < records.length; entryRole++) {
+            if (records[entryRole] != MISSING) {
+                count++;
+            }
+        }
+        final int[] entryRecords = new int[count];
+        count = 0;
+        for (int entryRole = PairingStrategy.DOUBLE_ENTRY; entryRole < records.length; entryRole++) {
+            if (records[entryRole] != MISSING) {
+                entryRecords[count++] = records[entryRole];
+            }
+        }
+        return entryRecords;
+    }
+
+    /**
+     * Returns the lowercased participant ID of a record as it was read.
+     */
+    String participantId(final int record) {
+        return participantIds[record];
+    }
+
+    String baseParticipantId(final int participant) {
+        return baseParticipantIds.participantId(participant);
+    }
+
+    int participantOf(final int record) {
+        return recordParticipants[record];
+    }
+
+    int entryRole(final int record) {
+        return recordEntryRoles[record];
+    }
+
+    /**
+     * Returns the base participant ID and entry role of a record, which tell its entry apart from the other entries
+     * of the participant even when they were read with the same participant ID.
+     */
+    EntryKey entryKey(final int record) {
+        return new EntryKey(baseParticipantId(participantOf(record)), entryRole(record));
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,318 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Tells the entries of one participant apart. {@link QualtricsSurvey} normalizes each participant ID once while the
+ * export is read into an {@link EntryKey}, so the entries of a participant are paired by their base participant ID
+ * alone and a new ID convention needs no change to the comparison.
+ */
+public interface PairingStrategy {
+    int ORIGINAL_ENTRY = 0;
+    int DOUBLE_ENTRY = 1;
+    /**
+     * Entries per participant of a numbered strategy unless told otherwise: the original and the double entry.
+     */
+    int DEFAULT_ENTRIES = 2;
+    /**
+     * Upper bound on the entries per participant, so that a mistyped entry number cannot make a survey reserve room
+     * for millions of entries.
+     */
+    int MAX_ENTRIES = 10;
+
+    /**
+     * Returns the key of a row given its lowercased participant ID. The base participant ID is lowercased as well.
+     */
+    EntryKey keyOf(@NonNull String participantId, @NonNull String[] fields) throws IllegalStateException;
+
+    /**
+     * Marks a row of an export holding only double entries as a double entry, unless it already is one.
+     */
+    void markDoubleEntry(@NonNull String[] fields, int participantIdColumn) throws IllegalStateException;
+
+    /**
+     * Whether further entries beyond the double entry are expected, so that every entry of a participant is compared
+     * for a consensus even if none of them was read.
+     */
+    boolean expectsFurtherEntries();
+
+    /**
+     * Returns the columns holding how entries are told apart rather than answers, e.g. an entry number column. They
+     * are left out of the comparison and the comparison cache like the participant ID column.
+     */
+    default int[] pairingColumns() {
+        return new int[0];
+    }
+
+    /**
+     * Entries are told apart by a prefix of their participant ID, e.g. {@code X_}. The first prefix marks the double
+     * entry and any further ones further entries, the longest matching prefix applies.
+     */
+    static PairingStrategy prefixes(@NonNull final List<String> prefixes) {
+        return new AffixPairing(prefixes, false);
+    }
+
+    /**
+     * Like {@link #prefixes(List)} for a suffix of the participant ID, e.g. {@code _2}.
+     */
+    static PairingStrategy suffixes(@NonNull final List<String> suffixes) {
+        return new AffixPairing(suffixes, true);
+    }
+
+    /**
+     * Every entry keeps the same participant ID and a separate column holds its entry number: {@code 1} or blank for
+     * the original entry, {@code 2} for the double entry and {@code 3} up to {@code entries} for further entries.
+     */
+    static PairingStrategy entryColumn(final int entryColumn, final int entries) throws IllegalArgumentException {
+        return new EntryColumnPairing(entryColumn, checkEntries(entries));
+    }
+
+    /**
+     * The participant ID matches a pattern with an {@code id} group holding the base participant ID and an
+     * {@code entry} group holding the entry number as in {@link #entryColumn(int, int)}, e.g.
+     * {@code (?<id>.+?)(-(?<entry>\d+))?}. Participant IDs which do not match are original entries.
+     */
+    static PairingStrategy pattern(@NonNull final String pattern, final int entries) throws IllegalArgumentException {
+        return new PatternPairing(pattern, checkEntries(entries));
+    }
+
+    /**
+     * Whether the text names a strategy as accepted by {@link #parse(String, int)}, rather than listing prefixes.
+     */
+    static boolean isNamed(@NonNull final String text) {
+        final String normalizedText = text.trim().toLowerCase();
+        return normalizedText.startsWith(AffixPairing.SUFFIX_NAME + ":") ||
+                normalizedText.startsWith(EntryColumnPairing.NAME + ":") ||
+                normalizedText.startsWith(PatternPairing.NAME + ":");
+    }
+
+    /**
+     * Parses a strategy as used on the command line: {@code suffix:<suffix>[,<suffix>...]}, {@code column:<column>}
+     * or {@code pattern:<regex>}. The entries per participant only apply to the numbered strategies, suffix pairing
+     * takes one suffix per further entry instead.
+     */
+    static PairingStrategy parse(@NonNull final String text, final int entries) throws IllegalArgumentException {
+        final int separator = text.indexOf(':');
+        final String name = separator < 0 ? "" : text.substring(0, separator).trim().toLowerCase();
+        final String value = separator < 0 ? "" : text.substring(separator + 1);
+        switch (name) {
+            case AffixPairing.SUFFIX_NAME:
+                if (entries != DEFAULT_ENTRIES) {
+                    throw new IllegalArgumentException("Suffix pairing takes one suffix per further entry instead " +
+                            "of a number of entries");
+                }
+                final List<String> suffixes = new ArrayList<>();
+                for (final String suffix : value.split(",")) {
+                    if (suffix.isBlank()) {
+                        throw new IllegalArgumentException("Every suffix must be non-blank in " + text);
+                    }
+                    suffixes.add(suffix.trim());
+                }
+                return suffixes(suffixes);
+            case EntryColumnPairing.NAME:
+                return entryColumn(ColumnIdentifiers.toColumnIndex(value.trim()).orElseThrow(() ->
+                        new IllegalArgumentException("Invalid entry number column in " + text)), entries);
+            case PatternPairing.NAME:
+                return pattern(value, entries);
+            default:
+                throw new IllegalArgumentException("Expected suffix:<suffix>, column:<column> or pattern:<regex> " +
+                        "but was " + text);
+        }
+    }
+
+    static int checkEntries(final int entries) throws IllegalArgumentException {
+        if (entries < DEFAULT_ENTRIES || entries > MAX_ENTRIES) {
+            throw new IllegalArgumentException("Expected " + DEFAULT_ENTRIES + " to " + MAX_ENTRIES +
+                    " entries per participant but was " + entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the entry role of an entry number from {@code 1} to {@code entries}, where a blank number is the
+     * original entry.
+     */
+    static int entryRole(@NonNull final String entryNumber, @NonNull final String participantId, final int entries)
+            throws IllegalStateException {
+        if (entryNumber.isBlank()) {
+            return ORIGINAL_ENTRY;
+        }
+        try {
+            final int number = Integer.parseInt(entryNumber.trim());
+            if (number > ORIGINAL_ENTRY && number <= entries) {
+                return number - 1;
+            }
+        } catch (final NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalStateException("Expected an entry number from 1 to " + entries + " for participant " +
+                participantId + " but was " + entryNumber);
+    }
+
+    final class AffixPairing implements PairingStrategy {
+        private static final String PREFIX_NAME = "prefix";
+        private static final String SUFFIX_NAME = "suffix";
+
+        private final List<String> affixes;
+        private final List<String> lowercaseAffixes;
+        private final boolean suffix;
+
+        private AffixPairing(@NonNull final List<String> affixes, final boolean suffix) {
+            if (affixes.isEmpty()) {
+                throw new IllegalArgumentException("Expected at least one " + (suffix ? SUFFIX_NAME : PREFIX_NAME));
+            }
+            this.affixes = List.copyOf(affixes);
+            this.lowercaseAffixes = affixes.stream().map(String::toLowerCase).collect(Collectors.toList());
+            this.suffix = suffix;
+        }
+
+        /**
+         * The longest matching affix applies, so that overlapping affixes such as {@code X_} and {@code X_2_} are
+         * told apart.
+         */
+        @Override
+        public EntryKey keyOf(@NonNull final String participantId, @NonNull final String[] fields) {
+            int longestAffix = -1;
+            for (int affix = 0; affix < lowercaseAffixes.size(); affix++) {
+                final String lowercaseAffix = lowercaseAffixes.get(affix);
+                if ((suffix ? participantId.endsWith(lowercaseAffix) : participantId.startsWith(lowercaseAffix)) &&
+                        (longestAffix < 0 ||
+                                lowercaseAffix.length() > lowercaseAffixes.get(longestAffix).length())) {
+                    longestAffix = affix;
+                }
+            }
+            if (longestAffix < 0) {
+                return new EntryKey(participantId, ORIGINAL_ENTRY);
+            }
+            final int affixLength = lowercaseAffixes.get(longestAffix).length();
+            return new EntryKey(suffix
+                    ? participantId.substring(0, participantId.length() - affixLength)
+                    : participantId.substring(affixLength), longestAffix + 1);
+        }
+
+        @Override
+        public void markDoubleEntry(@NonNull final String[] fields, final int participantIdColumn) {
+            final String participantId = fields[participantIdColumn];
+            if (keyOf(participantId.toLowerCase(), fields).getEntryRole() == ORIGINAL_ENTRY) {
+                fields[participantIdColumn] = suffix
+                        ? participantId.concat(affixes.get(0))
+                        : affixes.get(0).concat(participantId);
+            }
+        }
+
+        @Override
+        public boolean expectsFurtherEntries() {
+            return affixes.size() > 1;
+        }
+
+        /**
+         * A single prefix is described by itself, as in comparison caches written before strategies existed.
+         */
+        @Override
+        public String toString() {
+            final String affixList = String.join(",", lowercaseAffixes);
+            return suffix ? SUFFIX_NAME + ":" + affixList : affixList;
+        }
+    }
+
+    final class EntryColumnPairing implements PairingStrategy {
+        private static final String NAME = "column";
+
+        private final int entryColumn;
+        private final int entries;
+
+        private EntryColumnPairing(final int entryColumn, final int entries) {
+            this.entryColumn = entryColumn;
+            this.entries = entries;
+        }
+
+        @Override
+        public EntryKey keyOf(@NonNull final String participantId, @NonNull final String[] fields)
+                throws IllegalStateException {
+            return new EntryKey(participantId,
+                    entryRole(entryColumn < fields.length ? fields[entryColumn] : "", participantId, entries));
+        }
+
+        @Override
+        public void markDoubleEntry(@NonNull final String[] fields, final int participantIdColumn)
+                throws IllegalStateException {
+            if (entryColumn >= fields.length) {
+                throw new IllegalStateException("Double entries need the entry number column " +
+                        ColumnIdentifiers.toColumnIdentifier(entryColumn));
+            }
+            if (entryRole(fields[entryColumn], fields[participantIdColumn], entries) == ORIGINAL_ENTRY) {
+                fields[entryColumn] = String.valueOf(DOUBLE_ENTRY + 1);
+            }
+        }
+
+        @Override
+        public boolean expectsFurtherEntries() {
+            return entries > DEFAULT_ENTRIES;
+        }
+
+        @Override
+        public int[] pairingColumns() {
+            return new int[]{entryColumn};
+        }
+
+        @Override
+        public String toString() {
+            return NAME + ":" + ColumnIdentifiers.toColumnIdentifier(entryColumn) + ", " + entries + " entries";
+        }
+    }
+
+    final class PatternPairing implements PairingStrategy {
+        private static final String NAME = "pattern";
+        private static final String ID_GROUP = "id";
+        private static final String ENTRY_GROUP = "entry";
+
+        private final Pattern pattern;
+        private final int entries;
+
+        private PatternPairing(@NonNull final String pattern, final int entries) throws IllegalArgumentException {
+            if (!pattern.contains("(?<" + ID_GROUP + ">") || !pattern.contains("(?<" + ENTRY_GROUP + ">")) {
+                throw new IllegalArgumentException("Expected an " + ID_GROUP + " and an " + ENTRY_GROUP +
+                        " group, e.g. (?<id>.+?)(-(?<entry>\\d+))?, but was " + pattern);
+            }
+            this.pattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            this.entries = entries;
+        }
+
+        @Override
+        public EntryKey keyOf(@NonNull final String participantId, @NonNull final String[] fields)
+                throws IllegalStateException {
+            final Matcher matcher = pattern.matcher(participantId);
+            if (!matcher.matches() || matcher.group(ID_GROUP) == null) {
+                return new EntryKey(participantId, ORIGINAL_ENTRY);
+            }
+            final String entryNumber = Optional.ofNullable(matcher.group(ENTRY_GROUP)).orElse("");
+            return new EntryKey(matcher.group(ID_GROUP), entryRole(entryNumber, participantId, entries));
+        }
+
+        @Override
+        public void markDoubleEntry(@NonNull final String[] fields, final int participantIdColumn)
+                throws IllegalStateException {
+            if (keyOf(fields[participantIdColumn].toLowerCase(), fields).getEntryRole() == ORIGINAL_ENTRY) {
+                throw new IllegalStateException("Participant " + fields[participantIdColumn] + " is not marked as " +
+                        "a double entry, which a pattern cannot do on its own");
+            }
+        }
+
+        @Override
+        public boolean expectsFurtherEntries() {
+            return entries > DEFAULT_ENTRIES;
+        }
+
+        @Override
+        public String toString() {
+            return NAME + ":" + pattern.pattern() + ", " + entries + " entries";
+        }
+    }
+}
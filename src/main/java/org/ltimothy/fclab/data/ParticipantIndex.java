@@ -0,0 +1,86 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from lowercased participant ID to record number, where records are numbered in insertion
+ * order from zero. Each participant costs a reference to its ID and two {@code int} slots instead of a map entry and
+ * a boxed value.
+ */
+final class ParticipantIndex {
+    static final int MISSING = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EMPTY_SLOT = 0;
+
+    private String[] participantIds;
+    private int[] slotRecords;
+    private int[] slotHashes;
+    private int size;
+
+    ParticipantIndex() {
+        this.participantIds = new String[INITIAL_CAPACITY];
+        this.slotRecords = new int[INITIAL_CAPACITY * 2];
+        this.slotHashes = new int[INITIAL_CAPACITY * 2];
+    }
+
+    int find(@NonNull final String participantId) {
+        final int hash = hash(participantId);
+        final int mask = slotRecords.length - 1;
+        for (int slot = hash & mask; slotRecords[slot] != EMPTY_SLOT; slot = (slot + 1) & mask) {
+            final int record = slotRecords[slot] - 1;
+            if (slotHashes[slot] == hash && participantIds[record].equals(participantId)) {
+                return record;
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Adds a participant ID which is not in the index yet and returns its record number.
+     */
+    int add(@NonNull final String participantId) {
+        if (size == participantIds.length) {
+            participantIds = Arrays.copyOf(participantIds, size * 2);
+            rehash(slotRecords.length * 2);
+        }
+        participantIds[size] = participantId;
+        insert(hash(participantId), size);
+        return size++;
+    }
+
+    String participantId(final int record) {
+        return participantIds[record];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(final int capacity) {
+        slotRecords = new int[capacity];
+        slotHashes = new int[capacity];
+        for (int record = 0; record < size; record++) {
+            insert(hash(participantIds[record]), record);
+        }
+    }
+
+    private void insert(final int hash, final int record) {
+        final int mask = slotRecords.length - 1;
+        int slot = hash & mask;
+        while (slotRecords[slot] != EMPTY_SLOT) {
+            slot = (slot + 1) & mask;
+        }
+        slotRecords[slot] = record + 1;
+        slotHashes[slot] = hash;
+    }
+
+    /**
+     * Spreads the high bits of {@link String#hashCode()}, since linear probing only uses the low bits.
+     */
+    private static int hash(@NonNull final String participantId) {
+        final int hash = participantId.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
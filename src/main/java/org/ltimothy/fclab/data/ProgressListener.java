@@ -0,0 +1,27 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives periodic progress updates from a running analysis. A total of {@link #UNKNOWN_TOTAL} means the amount of
+ * remaining work is not known yet (e.g. rows still being parsed).
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    long UNKNOWN_TOTAL = -1;
+    int REPORTING_INTERVAL = 500;
+    ProgressListener NONE = (stage, completed, total) -> { };
+
+    void onProgress(@NonNull AnalysisStage stage, long completed, long total);
+
+    /**
+     * Aborts the calling analysis if its thread was interrupted, e.g. by a cancelled background task.
+     */
+    static void checkCancelled() throws CancellationException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Analysis was cancelled");
+        }
+    }
+}
@@ -1,177 +1,805 @@
-package org.ltimothy.fclab.data;
-
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
-import com.opencsv.ICSVParser;
-import com.opencsv.exceptions.CsvValidationException;
-import lombok.NonNull;
-import lombok.extern.slf4j.Slf4j;
-import org.ltimothy.fclab.gui.DefaultGUI;
-
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-@Slf4j
-public class QualtricsSurvey {
-    private static final int QUALTRICS_PRIMARY_HEADER_INDEX = 0;
-    private static final int QUALTRICS_HEADERS_TOTAL_LENGTH = 3;
-    private static final String NO_MISMATCH_TEXT = "OK";
-    private static final String MISMATCH_PREFIX = "!= ";
-
-    private final int participantIdColumn;
-    private final int firstRelevantColumn;
-    private final String doubleEntryIdPrefix;
-    private final Map<String, String[]> participantIdToRawData;
-    private final Charset charset;
-
-    private List<String[]> rawDataHeaders;
-    private List<String[]> processedData;
-
-    public QualtricsSurvey(@NonNull final File file, int participantIdColumn, int firstRelevantColumn,
-                           @NonNull final String doubleEntryIdPrefix, @NonNull Charset charset) {
-        this.participantIdToRawData = new HashMap<>();
-        this.rawDataHeaders = new ArrayList<>();
-        this.processedData = new ArrayList<>();
-        this.participantIdColumn = participantIdColumn;
-        this.firstRelevantColumn = firstRelevantColumn;
-        this.doubleEntryIdPrefix = doubleEntryIdPrefix.toLowerCase();
-        this.charset = charset;
-        processFile(file);
-    }
-
-    public List<String[]> getExportData() {
-        final List<String[]> exportData = new ArrayList<>();
-        exportData.addAll(rawDataHeaders);
-        exportData.addAll(processedData);
-        return exportData;
-    }
-
-    private void processFile(@NonNull File file) throws IllegalStateException {
-        loadFile(file);
-
-        try {
-            for (final String participantId : participantIdToRawData.keySet()) {
-                final String doubleEntryParticipantId = doubleEntryIdPrefix.concat(participantId);
-                final String originalEntryParticipantId = participantId.substring(doubleEntryIdPrefix.length());
-                if (!participantId.startsWith(doubleEntryIdPrefix)) {
-                    if (participantIdToRawData.containsKey(doubleEntryParticipantId)){
-                        final int rawDataLength = rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX).length;
-                        final String[] originalEntryData =
-                                Arrays.copyOf(participantIdToRawData.get(participantId), rawDataLength);
-                        final String[] doubleEntryData =
-                                Arrays.copyOf(participantIdToRawData.get(doubleEntryParticipantId), rawDataLength);
-
-                        printAnalysisHeader(participantId);
-                        for (int i = firstRelevantColumn; i < originalEntryData.length; i++) {
-                            if (i == participantIdColumn) {
-                                continue;
-                            }
-                            final String originalValue = originalEntryData[i];
-                            final String doubleEntryValue = doubleEntryData[i];
-                            if (!originalValue.trim().equalsIgnoreCase(doubleEntryValue.trim())) {
-                                printMismatch(rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX)[i], originalValue,
-                                        doubleEntryValue);
-                                doubleEntryData[i] = MISMATCH_PREFIX.concat(doubleEntryData[i]);
-                            } else {
-                                doubleEntryData[i] = NO_MISMATCH_TEXT;
-                            }
-                        }
-
-                        processedData.add(originalEntryData);
-                        processedData.add(doubleEntryData);
-                    } else {
-                        processedData.add(participantIdToRawData.get(participantId));
-                    }
-                } else if (participantId.startsWith(doubleEntryIdPrefix) &&
-                        !participantIdToRawData.containsKey(originalEntryParticipantId)){
-                    printAnalysisHeader(participantId);
-                    log.warn("There was no entry {} for double-entry {}", originalEntryParticipantId, participantId);
-                    DefaultGUI.appendStatusTextArea("[Warning] There was no entry " +
-                            originalEntryParticipantId + " for double-entry " + participantId);
-                    processedData.add(participantIdToRawData.get(participantId));
-                }
-            }
-        } catch (final IndexOutOfBoundsException e) {
-            log.error("Column identifiers are invalid!");
-            throw new IllegalStateException("Column identifiers are invalid!");
-        }
-    }
-
-    private void printAnalysisHeader(@NonNull final String participantId) {
-        int boxWidth = 50;
-        int padding = (boxWidth - participantId.length()) / 2;
-        boolean isOdd = participantId.length() % 2 == 1;
-
-        DefaultGUI.appendStatusTextArea("+" + "-".repeat(boxWidth - 2) + "+");
-        DefaultGUI.appendStatusTextArea("|" + " ".repeat(boxWidth - 2) + "|");
-        DefaultGUI.appendStatusTextArea(String.format("|%" + padding + "s%s%" + (isOdd ? padding - 1 : padding) +
-                "s|\n", "", participantId, ""));
-        DefaultGUI.appendStatusTextArea("|" + " ".repeat(boxWidth - 2) + "|");
-        DefaultGUI.appendStatusTextArea("+" + "-".repeat(boxWidth - 2) + "+");
-    }
-
-    private void printMismatch(@NonNull final String columnHeader, @NonNull final String originalValue,
-                               @NonNull final String doubleEntryValue) {
-        DefaultGUI.appendStatusTextArea("[Mismatch] " + columnHeader + " originally was \"" +
-                originalValue.trim() + "\" but was \"" + doubleEntryValue.trim() + "\" in the double entry.");
-    }
-
-    private void loadFile(@NonNull File file) throws IllegalStateException {
-        final String filePath = file.getPath();
-        final String fileExtension = filePath.substring(filePath.lastIndexOf(".") + 1).toLowerCase();
-        int headersRemaining = QUALTRICS_HEADERS_TOTAL_LENGTH;
-
-        final char delimiter;
-        if (fileExtension.equals("tsv")) {
-            delimiter = '\t';
-        } else if (fileExtension.equals("csv")) {
-            delimiter = ',';
-        } else {
-            log.info("The file selected was of an unsupported file type {}", file);
-            return;
-        }
-
-        try (final CSVReader reader = new CSVReaderBuilder(new FileReader(filePath, charset))
-                .withCSVParser(new CSVParserBuilder()
-                        .withQuoteChar(ICSVParser.DEFAULT_QUOTE_CHARACTER)
-                        .withSeparator(delimiter)
-                        .build())
-                .build()) {
-            String[] nextLine;
-            while ((nextLine = reader.readNext()) != null) {
-                if (headersRemaining > 0) {
-                    rawDataHeaders.add(nextLine);
-                    headersRemaining--;
-                    continue;
-                }
-                processNonHeaderLine(nextLine);
-            }
-        } catch (final IOException | CsvValidationException | IndexOutOfBoundsException e) {
-            log.error("Exception in processing the file {}", file, e);
-        }
-    }
-
-    private void processNonHeaderLine(@NonNull String[] fields) throws IndexOutOfBoundsException,
-            IllegalStateException {
-        final String participantId = fields[participantIdColumn];
-        final String participantIdLower = fields[participantIdColumn].toLowerCase();
-        if (participantIdToRawData.containsKey(participantIdLower)) {
-            log.error("Participant ID must be unique! At least one duplicate with ID {} was found.", participantId);
-            throw new IllegalStateException("Participant ID must be unique! At least one duplicate with ID" +
-                    participantId + " was found.");
-        } else if (!participantIdLower.isBlank()){
-            participantIdToRawData.put(participantIdLower, fields);
-        } else {
-            log.info("Blank participant ID was removed for row with fields {}", Arrays.toString(fields));
-            DefaultGUI.appendStatusTextArea("A row with a blank participant id was removed!");
-        }
-    }
-}
+package org.ltimothy.fclab.data;
+
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.ICSVParser;
+import com.opencsv.ICSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.listener.ComparisonListener;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+@Slf4j
+public class QualtricsSurvey implements SurveyAnalysis {
+    private static final int QUALTRICS_PRIMARY_HEADER_INDEX = 0;
+    private static final int QUALTRICS_HEADERS_TOTAL_LENGTH = 3;
+    private static final long PROGRESS_POLL_MILLIS = 100;
+    private static final int MISSING_COLUMN = -1;
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+    private static final int INITIAL_EXPORT_CAPACITY = 1024;
+    private static final long MERGED_INPUT_SHUTDOWN_SECONDS = 10;
+
+    private final SurveyOptions options;
+    private final int participantIdColumn;
+    private final PairingStrategy pairing;
+    private PairIndex pairIndex;
+    private RowStore rows;
+    private final Charset charset;
+    private final EntryComparator entryComparator;
+    private final ProgressListener progressListener;
+    private final Optional<ICSVWriter> writeThrough;
+
+    private List<String[]> rawDataHeaders;
+    private int[] exportedRecords;
+    private int exportedRecordCount;
+    private final Map<Integer, int[]> mismatchColumnsByRecord;
+    private final Map<Integer, int[][]> entryMismatchColumnsByRecord;
+
+    public QualtricsSurvey(@NonNull final File file, int participantIdColumn, int firstRelevantColumn,
+                           @NonNull final String doubleEntryIdPrefix, @NonNull Charset charset) {
+        this(file, participantIdColumn, firstRelevantColumn, doubleEntryIdPrefix, charset, ComparisonListener.NONE);
+    }
+
+    public QualtricsSurvey(@NonNull final File file, int participantIdColumn, int firstRelevantColumn,
+                           @NonNull final String doubleEntryIdPrefix, @NonNull Charset charset,
+                           @NonNull final ComparisonListener listener) {
+        this(file, participantIdColumn, firstRelevantColumn, doubleEntryIdPrefix, charset, listener,
+                ProgressListener.NONE);
+    }
+
+    public QualtricsSurvey(@NonNull final File file, int participantIdColumn, int firstRelevantColumn,
+                           @NonNull final String doubleEntryIdPrefix, @NonNull Charset charset,
+                           @NonNull final ComparisonListener listener,
+                           @NonNull final ProgressListener progressListener) throws CancellationException {
+        this(file, SurveyOptions.builder()
+                .participantIdColumn(participantIdColumn)
+                .firstRelevantColumn(firstRelevantColumn)
+                .doubleEntryIdPrefix(doubleEntryIdPrefix)
+                .charset(charset)
+                .build(), listener, progressListener);
+    }
+
+    public QualtricsSurvey(@NonNull final File file, @NonNull final SurveyOptions options,
+                           @NonNull final ComparisonListener listener,
+                           @NonNull final ProgressListener progressListener) throws CancellationException {
+        this(options, listener, progressListener, Optional.empty());
+        try {
+            processFile(file);
+        } catch (final RuntimeException | Error e) {
+            closeRows(rows);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the export rows to {@code writer} as the pairs are compared instead of keeping them, so the survey
+     * cannot be written again afterwards. See {@link SurveyExporter#exportWhileAnalyzing}.
+     */
+    public QualtricsSurvey(@NonNull final File file, @NonNull final SurveyOptions options,
+                           @NonNull final ComparisonListener listener,
+                           @NonNull final ProgressListener progressListener,
+                           @NonNull final ICSVWriter writer) throws CancellationException {
+        this(options, listener, progressListener, Optional.of(writer));
+        try {
+            processFile(file);
+        } finally {
+            closeRows(rows);
+        }
+    }
+
+    /**
+     * Creates a survey without reading any file, so that the benchmarks can time {@link #loadFile(File)} on its own.
+     */
+    QualtricsSurvey(@NonNull final SurveyOptions options, @NonNull final ComparisonListener listener,
+                    @NonNull final ProgressListener progressListener) {
+        this(options, listener, progressListener, Optional.empty());
+    }
+
+    private QualtricsSurvey(@NonNull final SurveyOptions options, @NonNull final ComparisonListener listener,
+                            @NonNull final ProgressListener progressListener,
+                            @NonNull final Optional<ICSVWriter> writeThrough) {
+        this.writeThrough = writeThrough;
+        this.pairIndex = new PairIndex();
+        this.rows = new RowStore(options.getMemoryThresholdBytes());
+        this.rawDataHeaders = new ArrayList<>();
+        this.exportedRecords = new int[INITIAL_EXPORT_CAPACITY];
+        this.mismatchColumnsByRecord = new HashMap<>();
+        this.entryMismatchColumnsByRecord = new HashMap<>();
+        this.options = options;
+        this.participantIdColumn = options.getParticipantIdColumn();
+        this.pairing = options.getPairing();
+        this.charset = options.getCharset();
+        this.entryComparator = new EntryComparator(participantIdColumn, options.getFirstRelevantColumn(), listener);
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public void close() {
+        closeRows(rows);
+    }
+
+    public int getParticipantCount() {
+        return pairIndex.size();
+    }
+
+    public List<String[]> getExportData() throws IllegalStateException {
+        final List<String[]> exportData = new ArrayList<>(rawDataHeaders);
+        forEachExportRow(exportData::add);
+        return exportData;
+    }
+
+    @Override
+    public void writeTo(@NonNull final ICSVWriter writer) throws IllegalStateException, CancellationException {
+        try (final AnalysisMetrics.StageTimer timer = options.getMetrics().start(AnalysisStage.EXPORTING)) {
+            rawDataHeaders.forEach(writer::writeNext);
+            forEachExportRow(row -> {
+                writer.writeNext(row);
+                timer.addItems(1);
+            });
+        }
+    }
+
+    /**
+     * Rebuilds the export rows from the stored rows, the double entry of each compared pair from its mismatch columns
+     * and the further entries and consensus row of each compared participant from theirs.
+     */
+    private void forEachExportRow(@NonNull final Consumer<String[]> consumer) throws IllegalStateException,
+            CancellationException {
+        if (writeThrough.isPresent()) {
+            throw new IllegalStateException("The export was already written while the survey was analyzed");
+        }
+        final String[] primaryHeader = rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX);
+        for (int index = 0; index < exportedRecordCount; index++) {
+            ProgressListener.checkCancelled();
+            final int record = exportedRecords[index];
+            final int[] mismatchColumns = mismatchColumnsByRecord.get(record);
+            final int[][] entryMismatchColumns = entryMismatchColumnsByRecord.get(record);
+            if (entryMismatchColumns != null) {
+                final String[] originalEntry = rows.get(record);
+                final String[][] entries = Arrays.stream(pairIndex.entryRecords(pairIndex.participantOf(record)))
+                        .mapToObj(rows::get)
+                        .toArray(String[][]::new);
+                consumer.accept(Arrays.copyOf(originalEntry, primaryHeader.length));
+                for (int entry = 0; entry < entries.length; entry++) {
+                    consumer.accept(entryComparator.exportDoubleEntry(primaryHeader, entries[entry],
+                            entryMismatchColumns[entry]));
+                }
+                consumer.accept(entryComparator.exportConsensusEntry(primaryHeader, originalEntry, entries,
+                        entryMismatchColumns));
+            } else if (mismatchColumns != null) {
+                final int doubleEntryRecord =
+                        pairIndex.record(pairIndex.participantOf(record), PairingStrategy.DOUBLE_ENTRY);
+                consumer.accept(Arrays.copyOf(rows.get(record), primaryHeader.length));
+                consumer.accept(entryComparator.exportDoubleEntry(primaryHeader, rows.get(doubleEntryRecord),
+                        mismatchColumns));
+            } else {
+                consumer.accept(rows.get(record));
+            }
+        }
+    }
+
+    private void processFile(@NonNull File file) throws IllegalStateException, CancellationException {
+        final AnalysisMetrics metrics = options.getMetrics();
+        try (final AnalysisMetrics.StageTimer timer = metrics.start(AnalysisStage.PARSING)) {
+            timer.addItems(options.getMergedInputs().isEmpty() ? loadFile(file) : loadFiles(file));
+            timer.addBytes(file.length());
+            options.getMergedInputs().forEach(mergedInput -> timer.addBytes(mergedInput.getFile().length()));
+        }
+        entryComparator.checkRows(options.getDuplicatePolicy());
+
+        try {
+            final String[] primaryHeader = rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX);
+            writeThrough.ifPresent(writer -> rawDataHeaders.forEach(writer::writeNext));
+            final Optional<ComparisonCache> comparisonCache = options.getComparisonCacheFile()
+                    .map(cacheFile -> ComparisonCache.load(cacheFile, options, primaryHeader));
+            entryComparator.usePlan(primaryHeader, options.getColumnRules(),
+                    options.getPairing().pairingColumns());
+            comparisonCache.ifPresent(entryComparator::useCache);
+            final int[] records;
+            try (final AnalysisMetrics.StageTimer timer = metrics.start(AnalysisStage.INDEXING)) {
+                records = options.getExportOrder().order(pairIndex.size(),
+                        record -> pairIndex.baseParticipantId(pairIndex.participantOf(record)), pairIndex::entryRole);
+                timer.addItems(records.length);
+            }
+            final int participantCount = records.length;
+            final AnalysisMetrics.StageTimer comparing = metrics.start(AnalysisStage.COMPARING);
+            if (options.isConsensus()) {
+                compareGroups(records, primaryHeader);
+            } else {
+                comparePairs(records, primaryHeader);
+            }
+            progressListener.onProgress(AnalysisStage.COMPARING, participantCount, participantCount);
+            metrics.recordComparison(entryComparator.finish());
+            comparing.addItems(participantCount);
+            comparing.close();
+            comparisonCache.ifPresent(this::saveComparisonCache);
+        } catch (final IndexOutOfBoundsException e) {
+            log.error("Column identifiers are invalid!");
+            throw new IllegalStateException("Column identifiers are invalid!");
+        }
+    }
+
+    /**
+     * Each entry finds its counterpart through its participant number, without building or hashing another
+     * participant ID.
+     */
+    private void comparePairs(@NonNull final int[] records, @NonNull final String[] primaryHeader)
+            throws IndexOutOfBoundsException, CancellationException {
+        final int participantCount = records.length;
+        final EntryComparator.PairComparison[] comparisons = options.isParallel()
+                ? compareInParallel(records, EntryComparator.PairComparison[]::new,
+                        record -> comparePair(record, primaryHeader))
+                : null;
+
+        for (int index = 0; index < participantCount; index++) {
+            ProgressListener.checkCancelled();
+            if (comparisons == null && (index + 1) % ProgressListener.REPORTING_INTERVAL == 0) {
+                progressListener.onProgress(AnalysisStage.COMPARING, index + 1, participantCount);
+            }
+            final int record = records[index];
+            final int participant = pairIndex.participantOf(record);
+            if (pairIndex.entryRole(record) == PairingStrategy.ORIGINAL_ENTRY) {
+                if (pairIndex.record(participant, PairingStrategy.DOUBLE_ENTRY) != PairIndex.MISSING) {
+                    final EntryComparator.PairComparison comparison = comparisons != null
+                            ? comparisons[index]
+                            : comparePair(record, primaryHeader);
+                    exportPair(record, entryComparator.report(comparison), comparison.getMismatchColumns());
+                } else {
+                    exportParticipant(record);
+                }
+            } else if (pairIndex.record(participant, PairingStrategy.ORIGINAL_ENTRY) == PairIndex.MISSING) {
+                reportMissingOriginal(record);
+                exportParticipant(record);
+            }
+        }
+    }
+
+    /**
+     * Compares every entry of each participant in one pass when there are further entries. Each participant is
+     * exported with its further entries and consensus row, entries without an original are exported on their own.
+     */
+    private void compareGroups(@NonNull final int[] records, @NonNull final String[] primaryHeader)
+            throws IndexOutOfBoundsException, CancellationException {
+        final int participantCount = records.length;
+        final EntryComparator.GroupComparison[] comparisons = options.isParallel()
+                ? compareInParallel(records, EntryComparator.GroupComparison[]::new,
+                        record -> compareGroup(record, primaryHeader))
+                : null;
+
+        for (int index = 0; index < participantCount; index++) {
+            ProgressListener.checkCancelled();
+            if (comparisons == null && (index + 1) % ProgressListener.REPORTING_INTERVAL == 0) {
+                progressListener.onProgress(AnalysisStage.COMPARING, index + 1, participantCount);
+            }
+            final int record = records[index];
+            if (pairIndex.entryRole(record) == PairingStrategy.ORIGINAL_ENTRY) {
+                final EntryComparator.GroupComparison comparison = comparisons != null
+                        ? comparisons[index]
+                        : compareGroup(record, primaryHeader);
+                if (comparison != null) {
+                    exportGroup(record, entryComparator.report(comparison), comparison.getMismatchColumns());
+                } else {
+                    exportParticipant(record);
+                }
+            } else if (pairIndex.record(pairIndex.participantOf(record), PairingStrategy.ORIGINAL_ENTRY) ==
+                    PairIndex.MISSING) {
+                reportMissingOriginal(record);
+                exportParticipant(record);
+            }
+        }
+    }
+
+    private void reportMissingOriginal(final int record) {
+        entryComparator.reportMissingOriginal(pairIndex.participantId(record),
+                pairIndex.baseParticipantId(pairIndex.participantOf(record)));
+    }
+
+    /**
+     * Returns the comparison of an original entry with its double entry, or {@code null} if the record is a double
+     * entry or has none.
+     */
+    private EntryComparator.PairComparison comparePair(final int record, @NonNull final String[] primaryHeader)
+            throws IndexOutOfBoundsException {
+        if (pairIndex.entryRole(record) != PairingStrategy.ORIGINAL_ENTRY) {
+            return null;
+        }
+        final int doubleEntryRecord = pairIndex.record(pairIndex.participantOf(record), PairingStrategy.DOUBLE_ENTRY);
+        return doubleEntryRecord == PairIndex.MISSING
+                ? null
+                : entryComparator.compare(pairIndex.entryKey(doubleEntryRecord), pairIndex.participantId(record),
+                        primaryHeader, rows.get(record), rows.get(doubleEntryRecord));
+    }
+
+    /**
+     * Returns the comparison of an original entry with all of its further entries, or {@code null} if the record is
+     * itself a further entry or has none.
+     */
+    private EntryComparator.GroupComparison compareGroup(final int record, @NonNull final String[] primaryHeader)
+            throws IndexOutOfBoundsException {
+        if (pairIndex.entryRole(record) != PairingStrategy.ORIGINAL_ENTRY) {
+            return null;
+        }
+        final int[] entryRecords = pairIndex.entryRecords(pairIndex.participantOf(record));
+        if (entryRecords.length == 0) {
+            return null;
+        }
+        return entryComparator.compareGroup(pairIndex.participantId(record), primaryHeader, rows.get(record),
+                Arrays.stream(entryRecords).mapToObj(pairIndex::entryKey).toArray(EntryKey[]::new),
+                Arrays.stream(entryRecords).mapToObj(pairIndex::participantId).toArray(String[]::new),
+                Arrays.stream(entryRecords).mapToObj(rows::get).toArray(String[][]::new));
+    }
+
+    private void exportParticipant(final int record) {
+        if (writeThrough.isPresent()) {
+            writeThrough.get().writeNext(rows.get(record));
+        } else {
+            addExportedRecord(record);
+        }
+    }
+
+    /**
+     * Only the mismatch columns of a pair are kept when the export is not written through, its rows are rebuilt by
+     * {@link #forEachExportRow}.
+     */
+    private void exportPair(final int record, @NonNull final String[][] pair, @NonNull final int[] mismatchColumns) {
+        if (writeThrough.isPresent()) {
+            writeThrough.get().writeNext(pair[0]);
+            writeThrough.get().writeNext(pair[1]);
+        } else {
+            addExportedRecord(record);
+            mismatchColumnsByRecord.put(record, mismatchColumns);
+        }
+    }
+
+    /**
+     * Like {@link #exportPair}, for the original entry, its further entries and the consensus row of a participant.
+     */
+    private void exportGroup(final int record, @NonNull final String[][] group,
+                             @NonNull final int[][] entryMismatchColumns) {
+        if (writeThrough.isPresent()) {
+            for (final String[] row : group) {
+                writeThrough.get().writeNext(row);
+            }
+        } else {
+            addExportedRecord(record);
+            entryMismatchColumnsByRecord.put(record, entryMismatchColumns);
+        }
+    }
+
+    /**
+     * Forgets the rows of a snapshot which could not be replayed to the end, so that the export can be parsed again.
+     */
+    private void discardRows() {
+        closeRows(rows);
+        rows = new RowStore(options.getMemoryThresholdBytes());
+        pairIndex = new PairIndex();
+        rawDataHeaders = new ArrayList<>();
+        entryComparator.discardRows();
+    }
+
+    private void addExportedRecord(final int record) {
+        if (exportedRecordCount == exportedRecords.length) {
+            exportedRecords = Arrays.copyOf(exportedRecords, exportedRecordCount * 2);
+        }
+        exportedRecords[exportedRecordCount++] = record;
+    }
+
+    private static void closeRows(@NonNull final RowStore rowStore) {
+        try {
+            rowStore.close();
+        } catch (final IOException e) {
+            log.warn("Could not delete the rows moved to disk", e);
+        }
+    }
+
+    private void saveComparisonCache(@NonNull final ComparisonCache comparisonCache) {
+        try {
+            comparisonCache.save();
+        } catch (final IOException e) {
+            log.warn("Could not save the comparison cache, the next run will recompare every pair", e);
+        }
+    }
+
+    /**
+     * Compares every participant on a dedicated fork-join pool. Results are stored by position in {@code records} so
+     * they can be reported and exported in the same order as a sequential run.
+     */
+    private <T> T[] compareInParallel(@NonNull final int[] records, @NonNull final IntFunction<T[]> resultArray,
+                                      @NonNull final IntFunction<T> comparison)
+            throws IndexOutOfBoundsException, CancellationException {
+        final T[] comparisons = resultArray.apply(records.length);
+        final ComparisonTask<T> task = new ComparisonTask<>(records, comparison, comparisons, 0, records.length);
+        final ForkJoinPool pool = new ForkJoinPool(options.getComparisonThreads());
+        log.info("Comparing {} participants on {} threads", records.length, options.getComparisonThreads());
+        try {
+            final ForkJoinTask<Void> submittedTask = pool.submit(task);
+            while (true) {
+                try {
+                    submittedTask.get(PROGRESS_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    return comparisons;
+                } catch (final TimeoutException e) {
+                    progressListener.onProgress(AnalysisStage.COMPARING, task.compared.get(), records.length);
+                }
+            }
+        } catch (final InterruptedException e) {
+            task.cancelled.set(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Analysis was cancelled");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the number of rows parsed, including the headers.
+     */
+    long loadFile(@NonNull File file) throws IllegalStateException, CancellationException {
+        if (options.getSnapshotFile().isPresent()) {
+            return loadSnapshot(file, options.getSnapshotFile().get());
+        }
+        return readFile(file, rawDataHeaders, this::processNonHeaderLine);
+    }
+
+    /**
+     * Replays the snapshot of an unchanged export, or parses the export and writes its snapshot.
+     */
+    private long loadSnapshot(@NonNull final File file, @NonNull final File snapshotFile)
+            throws IllegalStateException, CancellationException {
+        final SurveySnapshot snapshot;
+        try {
+            snapshot = SurveySnapshot.of(snapshotFile, file, charset);
+        } catch (final IOException e) {
+            log.warn("Could not hash {}, parsing it without a snapshot", file, e);
+            return readFile(file, rawDataHeaders, this::processNonHeaderLine);
+        }
+        try {
+            final OptionalLong rowsReplayed = snapshot.replay(rawDataHeaders, this::processNonHeaderLine,
+                    progressListener);
+            if (rowsReplayed.isPresent()) {
+                return rowsReplayed.getAsLong();
+            }
+        } catch (final IOException e) {
+            log.warn("Could not replay the snapshot {}, parsing {} again", snapshotFile, file, e);
+            discardRows();
+        }
+
+        try (final SurveySnapshot.Recorder recorder = snapshot.record()) {
+            final long rowsParsed = readFile(file, rawDataHeaders, fields -> {
+                recorder.add(fields);
+                processNonHeaderLine(fields);
+            });
+            if (rowsParsed > 0) {
+                recorder.commit(rawDataHeaders);
+            }
+            return rowsParsed;
+        }
+    }
+
+    /**
+     * Reads the main input on the calling thread while the merged inputs are read on a dedicated pool, then indexes
+     * the rows of each merged input in order, aligned to the columns of the main input. Returns the number of rows
+     * parsed across all inputs. The rows of every merged input are closed before returning, also if any input failed.
+     */
+    private long loadFiles(@NonNull final File file) throws IllegalStateException, CancellationException {
+        final List<MergedInput> mergedInputs = options.getMergedInputs();
+        final ForkJoinPool pool = new ForkJoinPool(mergedInputs.size());
+        log.info("Reading {} and {} merged input(s) in parallel", file, mergedInputs.size());
+        final List<LoadedInput> loadedInputs = new ArrayList<>();
+        try {
+            final List<ForkJoinTask<LoadedInput>> loadTasks = new ArrayList<>();
+            for (final MergedInput mergedInput : mergedInputs) {
+                final LoadedInput loadedInput = new LoadedInput(mergedInput,
+                        new RowStore(options.getMemoryThresholdBytes()));
+                loadedInputs.add(loadedInput);
+                loadTasks.add(pool.submit(() -> readMergedInput(loadedInput)));
+            }
+            long rowsParsed = loadFile(file);
+            if (rawDataHeaders.isEmpty()) {
+                throw new IllegalStateException("Could not read the headers of " + file.getName());
+            }
+            final String[] primaryHeader = rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX);
+            for (final ForkJoinTask<LoadedInput> loadTask : loadTasks) {
+                final LoadedInput loadedInput = loadTask.get();
+                rowsParsed += loadedInput.rowsParsed;
+                mergeInput(loadedInput, primaryHeader);
+            }
+            return rowsParsed;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Analysis was cancelled");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (final IndexOutOfBoundsException e) {
+            log.error("Column identifiers are invalid!");
+            throw new IllegalStateException("Column identifiers are invalid!");
+        } finally {
+            pool.shutdownNow();
+            awaitMergedInputs(pool);
+            loadedInputs.forEach(loadedInput -> closeRows(loadedInput.rows));
+        }
+    }
+
+    /**
+     * Waits for the readers of abandoned merged inputs, which stop at their next row once interrupted, so that their
+     * rows are not moved to disk after they were closed.
+     */
+    private static void awaitMergedInputs(@NonNull final ForkJoinPool pool) {
+        try {
+            if (!pool.awaitTermination(MERGED_INPUT_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Merged inputs were still being read after {} seconds", MERGED_INPUT_SHUTDOWN_SECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private LoadedInput readMergedInput(@NonNull final LoadedInput loadedInput) throws IllegalStateException,
+            CancellationException {
+        final File file = loadedInput.mergedInput.getFile();
+        if (DelimitedFileType.fromFile(file).isEmpty()) {
+            throw new IllegalStateException("The merged file was of an unsupported file type " + file);
+        }
+        loadedInput.rowsParsed = readFile(file, loadedInput.headers, loadedInput.rows::add);
+        return loadedInput;
+    }
+
+    private void mergeInput(@NonNull final LoadedInput loadedInput, @NonNull final String[] primaryHeader)
+            throws IndexOutOfBoundsException, IllegalStateException {
+        final File file = loadedInput.mergedInput.getFile();
+        if (loadedInput.headers.isEmpty()) {
+            throw new IllegalStateException("Could not read the headers of " + file.getName());
+        }
+        final String[] mergedHeader = loadedInput.headers.get(QUALTRICS_PRIMARY_HEADER_INDEX);
+        final int[] sourceColumns = Arrays.equals(primaryHeader, mergedHeader)
+                ? null
+                : alignColumns(primaryHeader, mergedHeader);
+        if (sourceColumns != null && sourceColumns[participantIdColumn] == MISSING_COLUMN) {
+            throw new IllegalStateException(file.getName() + " has no column " + primaryHeader[participantIdColumn]);
+        }
+
+        for (int record = 0; record < loadedInput.rows.size(); record++) {
+            ProgressListener.checkCancelled();
+            final String[] fields = loadedInput.rows.get(record);
+            final String[] row = sourceColumns == null ? fields : alignRow(fields, sourceColumns);
+            if (loadedInput.mergedInput.isDoubleEntries() && row.length > participantIdColumn &&
+                    !row[participantIdColumn].isBlank()) {
+                pairing.markDoubleEntry(row, participantIdColumn);
+            }
+            processNonHeaderLine(row);
+        }
+        log.info("Merged {} rows from {}", loadedInput.rows.size(), file);
+        closeRows(loadedInput.rows);
+    }
+
+    /**
+     * Returns, for every column of the main input, the column of the merged input with the same header or
+     * {@link #MISSING_COLUMN}. A byte order mark and surrounding whitespace are ignored.
+     */
+    private static int[] alignColumns(@NonNull final String[] primaryHeader, @NonNull final String[] mergedHeader) {
+        final Map<String, Integer> mergedColumns = new HashMap<>();
+        for (int column = 0; column < mergedHeader.length; column++) {
+            mergedColumns.putIfAbsent(headerName(mergedHeader[column]), column);
+        }
+        final int[] sourceColumns = new int[primaryHeader.length];
+        for (int column = 0; column < primaryHeader.length; column++) {
+            sourceColumns[column] = mergedColumns.getOrDefault(headerName(primaryHeader[column]), MISSING_COLUMN);
+        }
+        return sourceColumns;
+    }
+
+    private static String headerName(@NonNull final String header) {
+        return (header.startsWith(BYTE_ORDER_MARK) ? header.substring(BYTE_ORDER_MARK.length()) : header).trim();
+    }
+
+    /**
+     * Columns missing from the merged input, or beyond the end of a short row, are left empty.
+     */
+    private static String[] alignRow(@NonNull final String[] fields, @NonNull final int[] sourceColumns) {
+        final String[] row = new String[sourceColumns.length];
+        for (int column = 0; column < sourceColumns.length; column++) {
+            final int sourceColumn = sourceColumns[column];
+            row[column] = sourceColumn != MISSING_COLUMN && sourceColumn < fields.length ? fields[sourceColumn] : "";
+        }
+        return row;
+    }
+
+    /**
+     * Adds the first {@value #QUALTRICS_HEADERS_TOTAL_LENGTH} rows to {@code headers} and passes every later row to
+     * {@code rows}. Returns the number of rows parsed, including the headers.
+     */
+    private long readFile(@NonNull final File file, @NonNull final List<String[]> headers,
+                          @NonNull final Consumer<String[]> rows) throws IllegalStateException,
+            CancellationException {
+        final String filePath = file.getPath();
+        int headersRemaining = QUALTRICS_HEADERS_TOTAL_LENGTH;
+
+        final Optional<DelimitedFileType> fileType = DelimitedFileType.fromFile(file);
+        if (fileType.isEmpty()) {
+            log.info("The file selected was of an unsupported file type {}", file);
+            return 0;
+        }
+        final char delimiter = fileType.get().getDelimiter();
+        if (options.getParserType() == ParserType.MAPPED) {
+            if (MappedRecordReader.supports(charset)) {
+                return readMappedFile(file, delimiter, headers, rows);
+            }
+            log.info("The memory-mapped reader does not support {}, reading {} with OpenCSV", charset, file);
+        }
+
+        try (final CSVReader reader = new CSVReaderBuilder(new FileReader(filePath, charset))
+                .withCSVParser(new CSVParserBuilder()
+                        .withQuoteChar(ICSVParser.DEFAULT_QUOTE_CHARACTER)
+                        .withSeparator(delimiter)
+                        .build())
+                .build()) {
+            String[] nextLine;
+            long rowsParsed = 0;
+            while ((nextLine = reader.readNext()) != null) {
+                ProgressListener.checkCancelled();
+                if (++rowsParsed % ProgressListener.REPORTING_INTERVAL == 0) {
+                    progressListener.onProgress(AnalysisStage.PARSING, rowsParsed, ProgressListener.UNKNOWN_TOTAL);
+                }
+                if (headersRemaining > 0) {
+                    headers.add(nextLine);
+                    headersRemaining--;
+                    continue;
+                }
+                rows.accept(nextLine);
+            }
+            return rowsParsed;
+        } catch (final IOException | CsvValidationException | IndexOutOfBoundsException e) {
+            log.error("Exception in processing the file {}", file, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Every row is kept for the export, so all fields are decoded here. Rows are still split on the mapped bytes,
+     * which avoids OpenCSV's per-character parsing.
+     */
+    private long readMappedFile(@NonNull final File file, final char delimiter, @NonNull final List<String[]> headers,
+                                @NonNull final Consumer<String[]> rows) throws IllegalStateException,
+            CancellationException {
+        try (final RecordReader reader = ParserType.MAPPED.open(file, charset, delimiter)) {
+            final long[] rowsParsed = {0};
+            reader.scan((record, offset, length) -> {
+                ProgressListener.checkCancelled();
+                if (++rowsParsed[0] % ProgressListener.REPORTING_INTERVAL == 0) {
+                    progressListener.onProgress(AnalysisStage.PARSING, rowsParsed[0], ProgressListener.UNKNOWN_TOTAL);
+                }
+                if (headers.size() < QUALTRICS_HEADERS_TOTAL_LENGTH) {
+                    headers.add(record.toArray());
+                    return;
+                }
+                rows.accept(record.toArray());
+            });
+            return rowsParsed[0];
+        } catch (final IOException | IndexOutOfBoundsException e) {
+            log.error("Exception in processing the file {}", file, e);
+            return 0;
+        }
+    }
+
+    /**
+     * The participant ID is normalized into its entry key here, once per row. Duplicates are entries whose key was
+     * already read, handled by {@link SurveyOptions#getDuplicatePolicy()}, a replaced row keeps the record of the
+     * first.
+     */
+    private void processNonHeaderLine(@NonNull String[] fields) throws IndexOutOfBoundsException {
+        final long row = entryComparator.rowRead(fields.length,
+                rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX).length);
+        if (!entryComparator.hasParticipantId(row, fields.length)) {
+            return;
+        }
+        final String participantId = fields[participantIdColumn];
+        final String participantIdLower = fields[participantIdColumn].toLowerCase();
+        if (participantIdLower.isBlank()) {
+            entryComparator.reportBlankParticipantId(row, fields);
+            return;
+        }
+        final EntryKey entryKey = pairing.keyOf(participantIdLower, fields);
+        final int participant = pairIndex.participant(entryKey.getBaseParticipantId());
+        final int record = pairIndex.record(participant, entryKey.getEntryRole());
+        if (record != PairIndex.MISSING) {
+            if (entryComparator.reportDuplicateParticipantId(participantId, row, options.getDuplicatePolicy())) {
+                rows.replace(record, fields);
+            }
+        } else {
+            pairIndex.add(participant, entryKey.getEntryRole(), participantIdLower);
+            rows.add(fields);
+            entryComparator.participantIndexed();
+        }
+    }
+
+    /**
+     * Rows of a merged input, read on a pool thread and indexed afterwards on the analysis thread.
+     */
+    private static final class LoadedInput {
+        private final MergedInput mergedInput;
+        private final List<String[]> headers;
+        private final RowStore rows;
+        private long rowsParsed;
+
+        private LoadedInput(@NonNull final MergedInput mergedInput, @NonNull final RowStore rows) {
+            this.mergedInput = mergedInput;
+            this.headers = new ArrayList<>();
+            this.rows = rows;
+        }
+    }
+
+    private static final class ComparisonTask<T> extends RecursiveAction {
+        private static final int SEQUENTIAL_THRESHOLD = 64;
+
+        private final int[] records;
+        private final IntFunction<T> comparison;
+        private final T[] comparisons;
+        private final int start;
+        private final int end;
+        private final AtomicInteger compared;
+        private final AtomicBoolean cancelled;
+
+        private ComparisonTask(@NonNull final int[] records, @NonNull final IntFunction<T> comparison,
+                               @NonNull final T[] comparisons, final int start, final int end) {
+            this(records, comparison, comparisons, start, end, new AtomicInteger(), new AtomicBoolean());
+        }
+
+        private ComparisonTask(@NonNull final int[] records, @NonNull final IntFunction<T> comparison,
+                               @NonNull final T[] comparisons, final int start, final int end,
+                               @NonNull final AtomicInteger compared, @NonNull final AtomicBoolean cancelled) {
+            this.records = records;
+            this.comparison = comparison;
+            this.comparisons = comparisons;
+            this.start = start;
+            this.end = end;
+            this.compared = compared;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= SEQUENTIAL_THRESHOLD) {
+                for (int index = start; index < end && !cancelled.get(); index++) {
+                    comparisons[index] = comparison.apply(records[index]);
+                    compared.incrementAndGet();
+                }
+                return;
+            }
+
+            final int middle = (start + end) >>> 1;
+            invokeAll(new ComparisonTask<>(records, comparison, comparisons, start, middle, compared, cancelled),
+                    new ComparisonTask<>(records, comparison, comparisons, middle, end, compared, cancelled));
+        }
+    }
+}
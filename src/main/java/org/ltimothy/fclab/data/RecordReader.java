@@ -0,0 +1,27 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the records of a delimited file while tracking the byte offset and length of each one, so that a record can
+ * be re-read later on its own. See {@link ParserType} for the available implementations.
+ */
+public interface RecordReader extends Closeable {
+    /**
+     * Visits every record of the file in order. The record passed to the visitor is only valid during the call.
+     */
+    void scan(@NonNull RecordVisitor visitor) throws IOException;
+
+    /**
+     * Re-reads a single record previously reported by {@link #scan(RecordVisitor)}.
+     */
+    String[] read(long offset, int length) throws IOException;
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(DelimitedRecord record, long offset, int length) throws IOException;
+    }
+}
@@ -0,0 +1,281 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rows of an export numbered in insertion order. Rows are kept on the heap until their estimated size passes a
+ * threshold, then all rows are moved to a temporary file which is memory-mapped for reading, so an export larger than
+ * the heap is analyzed more slowly instead of failing with an {@link OutOfMemoryError}.
+ * <p>
+ * Rows must all be added or replaced before any is read. Reads of a spilled store are positional and may run on any
+ * thread.
+ */
+@Slf4j
+final class RowStore implements Closeable {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Approximate heap cost of a row array and of each {@link String} field beyond its characters.
+     */
+    private static final int ROW_OVERHEAD_BYTES = 24;
+    private static final int FIELD_OVERHEAD_BYTES = 64;
+
+    private final long thresholdBytes;
+    private List<String[]> heapRows;
+    private long estimatedBytes;
+    private int size;
+
+    private File spillFile;
+    private boolean closed;
+    private DataOutputStream output;
+    private long[] offsets;
+    private int writtenRows;
+    private long writtenBytes;
+    private int maxRowBytes;
+    private volatile MappedByteBuffer[] segments;
+    private volatile long mappedBytes;
+
+    RowStore(final long thresholdBytes) {
+        this.thresholdBytes = thresholdBytes;
+        this.heapRows = new ArrayList<>();
+    }
+
+    int add(@NonNull final String[] row) throws UncheckedIOException {
+        try {
+            if (heapRows != null) {
+                heapRows.add(row);
+                estimatedBytes += estimateBytes(row);
+                if (estimatedBytes > thresholdBytes) {
+                    spill();
+                }
+            } else {
+                append(row);
+            }
+            return size++;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces a row, appending it to the file of a spilled store and leaving the earlier bytes unused. The replaced
+     * row of a store on the heap no longer counts towards the threshold.
+     */
+    void replace(final int record, @NonNull final String[] row) throws UncheckedIOException {
+        try {
+            if (heapRows != null) {
+                estimatedBytes += estimateBytes(row) - estimateBytes(heapRows.set(record, row));
+                if (estimatedBytes > thresholdBytes) {
+                    spill();
+                }
+            } else {
+                offsets[record] = write(row);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    String[] get(final int record) throws UncheckedIOException {
+        if (heapRows != null) {
+            return heapRows.get(record);
+        }
+
+        if (offsets[record] >= mappedBytes) {
+            map();
+        }
+        return readRow(segments[(int) (offsets[record] / SEGMENT_BYTES)], (int) (offsets[record] % SEGMENT_BYTES));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Deletes the temporary file of a spilled store, and keeps a store which has not spilled yet from doing so later.
+     * Rows read before remain valid. Closing again does nothing.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } finally {
+            Files.deleteIfExists(spillFile.toPath());
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Synchronized with {@link #close()}, which may run on another thread when a merged input is abandoned.
+     */
+    private synchronized void spill() throws IOException {
+        if (closed) {
+            throw new IOException("The rows were closed before they were moved to disk");
+        }
+        spillFile = File.createTempFile("doubleentry-rows", ".bin");
+        log.info("Moving {} rows of about {} MB to {}", heapRows.size(), estimatedBytes / (1024 * 1024), spillFile);
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile.toPath()),
+                BUFFER_SIZE));
+        offsets = new long[Math.max(INITIAL_CAPACITY, heapRows.size() * 2)];
+        final List<String[]> rows = heapRows;
+        heapRows = null;
+        for (final String[] row : rows) {
+            append(row);
+        }
+    }
+
+    /**
+     * Returns the offset of the row.
+     */
+    private long write(@NonNull final String[] row) throws IOException {
+        final long start = writtenBytes;
+        final int rowBytes = writeRow(output, row);
+        writtenBytes += rowBytes;
+        maxRowBytes = Math.max(maxRowBytes, rowBytes);
+        return start;
+    }
+
+    /**
+     * Writes the field count followed by the length and UTF-8 bytes of each field, and returns the number of bytes
+     * written. Shared with {@link SurveySnapshot}.
+     */
+    static int writeRow(@NonNull final DataOutputStream output, @NonNull final String[] row) throws IOException {
+        int rowBytes = Integer.BYTES;
+        output.writeInt(row.length);
+        for (final String field : row) {
+            final byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            rowBytes += Integer.BYTES + bytes.length;
+        }
+        return rowBytes;
+    }
+
+    /**
+     * Reads a row written by {@link #writeRow} with absolute gets, so the buffer may be shared between threads.
+     */
+    static String[] readRow(@NonNull final ByteBuffer buffer, final int offset) {
+        int position = offset;
+        final String[] row = new String[buffer.getInt(position)];
+        position += Integer.BYTES;
+        for (int field = 0; field < row.length; field++) {
+            final byte[] bytes = new byte[buffer.getInt(position)];
+            position += Integer.BYTES;
+            buffer.get(position, bytes);
+            position += bytes.length;
+            row[field] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return row;
+    }
+
+    /**
+     * Reads a row written by {@link #writeRow} from a heap copy of its bytes, which decodes each field without
+     * allocating an intermediate array.
+     */
+    static String[] readRow(@NonNull final byte[] bytes) {
+        int position = 0;
+        final String[] row = new String[readInt(bytes, position)];
+        position += Integer.BYTES;
+        for (int field = 0; field < row.length; field++) {
+            final int length = readInt(bytes, position);
+            position += Integer.BYTES;
+            row[field] = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+        }
+        return row;
+    }
+
+    /**
+     * Returns whether the bytes hold exactly one row as written by {@link #writeRow}, so that {@link #readRow(byte[])}
+     * can decode them.
+     */
+    static boolean isRow(@NonNull final byte[] bytes) {
+        if (bytes.length < Integer.BYTES || readInt(bytes, 0) < 0) {
+            return false;
+        }
+        final int fields = readInt(bytes, 0);
+        int position = Integer.BYTES;
+        for (int field = 0; field < fields; field++) {
+            if (position > bytes.length - Integer.BYTES) {
+                return false;
+            }
+            final int length = readInt(bytes, position);
+            position += Integer.BYTES;
+            if (length < 0 || length > bytes.length - position) {
+                return false;
+            }
+            position += length;
+        }
+        return position == bytes.length;
+    }
+
+    private static int readInt(@NonNull final byte[] bytes, final int position) {
+        return (bytes[position] & 0xff) << 24 | (bytes[position + 1] & 0xff) << 16 |
+                (bytes[position + 2] & 0xff) << 8 | bytes[position + 3] & 0xff;
+    }
+
+    private void append(@NonNull final String[] row) throws IOException {
+        if (writtenRows == offsets.length) {
+            offsets = Arrays.copyOf(offsets, writtenRows * 2);
+        }
+        offsets[writtenRows++] = write(row);
+    }
+
+    /**
+     * Maps the file in segments of {@value #SEGMENT_BYTES} bytes, each extended by the longest row so that a row
+     * starting in a segment never crosses its end.
+     */
+    private synchronized void map() throws UncheckedIOException {
+        if (writtenBytes <= mappedBytes) {
+            return;
+        }
+        try {
+            output.flush();
+            try (final FileChannel channel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ)) {
+                final MappedByteBuffer[] mappedSegments =
+                        new MappedByteBuffer[(int) ((writtenBytes + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+                for (int index = 0; index < mappedSegments.length; index++) {
+                    final long start = index * SEGMENT_BYTES;
+                    mappedSegments[index] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.min(SEGMENT_BYTES + maxRowBytes, writtenBytes - start));
+                }
+                segments = mappedSegments;
+                mappedBytes = writtenBytes;
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long estimateBytes(@NonNull final String[] row) {
+        long bytes = ROW_OVERHEAD_BYTES + (long) Integer.BYTES * row.length;
+        for (final String field : row) {
+            bytes += FIELD_OVERHEAD_BYTES + field.length();
+        }
+        return bytes;
+    }
+}
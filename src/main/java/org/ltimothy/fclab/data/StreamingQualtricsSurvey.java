@@ -0,0 +1,256 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.ICSVWriter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.listener.ComparisonListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Two-pass variant of {@link QualtricsSurvey} for exports too large to hold in memory. The first pass keeps only the
+ * byte offset and length of each participant's row; the second pass streams the rows back in file order, re-reading
+ * the double entry of each pair by offset, and writes the export directly. In input order pairs are written where the
+ * original entry appears in the file; in participant ID order each row is re-read by offset.
+ */
+@Slf4j
+public class StreamingQualtricsSurvey implements SurveyAnalysis {
+    private static final int QUALTRICS_PRIMARY_HEADER_INDEX = 0;
+    private static final int QUALTRICS_HEADERS_TOTAL_LENGTH = 3;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    private final File file;
+    private final int participantIdColumn;
+    private final String doubleEntryIdPrefix;
+    private final Charset charset;
+    private final char delimiter;
+    private final ExportOrder exportOrder;
+    private final SurveyOptions options;
+    private final EntryComparator entryComparator;
+    private final List<String[]> rawDataHeaders;
+    private final Map<String, Integer> participantIdToRecord;
+
+    private long[] recordOffsets;
+    private int[] recordLengths;
+    private int recordCount;
+
+    public StreamingQualtricsSurvey(@NonNull final File file, int participantIdColumn, int firstRelevantColumn,
+                                    @NonNull final String doubleEntryIdPrefix, @NonNull final Charset charset,
+                                    @NonNull final ComparisonListener listener) throws IllegalStateException {
+        this(file, SurveyOptions.builder()
+                .participantIdColumn(participantIdColumn)
+                .firstRelevantColumn(firstRelevantColumn)
+                .doubleEntryIdPrefix(doubleEntryIdPrefix)
+                .charset(charset)
+                .build(), listener);
+    }
+
+    /**
+     * Comparison threads in the options are ignored, rows are compared in the order they are streamed.
+     */
+    public StreamingQualtricsSurvey(@NonNull final File file, @NonNull final SurveyOptions options,
+                                    @NonNull final ComparisonListener listener) throws IllegalStateException {
+        final Charset charset = options.getCharset();
+        final Optional<DelimitedFileType> fileType = DelimitedFileType.fromFile(file);
+        if (fileType.isEmpty()) {
+            throw new IllegalStateException("The file selected was of an unsupported file type " + file);
+        }
+        if (!supports(charset)) {
+            throw new IllegalStateException("Streaming analysis does not support the charset " + charset);
+        }
+        if (!options.getMergedInputs().isEmpty()) {
+            throw new IllegalStateException("Streaming analysis does not support merged inputs");
+        }
+        if (!options.isPairedByPrefix()) {
+            throw new IllegalStateException("Streaming analysis only pairs entries by prefix");
+        }
+
+        this.file = file;
+        this.participantIdColumn = options.getParticipantIdColumn();
+        this.doubleEntryIdPrefix = options.getDoubleEntryIdPrefix().toLowerCase();
+        this.charset = charset;
+        this.delimiter = fileType.get().getDelimiter();
+        this.exportOrder = options.getExportOrder();
+        this.options = options;
+        this.entryComparator = new EntryComparator(participantIdColumn, options.getFirstRelevantColumn(), listener);
+        this.rawDataHeaders = new ArrayList<>();
+        this.participantIdToRecord = new HashMap<>();
+        this.recordOffsets = new long[INITIAL_INDEX_CAPACITY];
+        this.recordLengths = new int[INITIAL_INDEX_CAPACITY];
+        try (final AnalysisMetrics.StageTimer timer = options.getMetrics().start(AnalysisStage.INDEXING)) {
+            indexFile();
+            timer.addItems(recordCount);
+            timer.addBytes(file.length());
+        }
+        entryComparator.checkRows(options.getDuplicatePolicy());
+    }
+
+    public static boolean supports(@NonNull final Charset charset) {
+        return IndexedRecordReader.supports(charset);
+    }
+
+    @Override
+    public void writeTo(@NonNull final ICSVWriter writer) throws IllegalStateException, CancellationException {
+        rawDataHeaders.forEach(writer::writeNext);
+        final String[] primaryHeader = rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX);
+        final Optional<ComparisonCache> comparisonCache = options.getComparisonCacheFile()
+                .map(cacheFile -> ComparisonCache.load(cacheFile, options, primaryHeader));
+        entryComparator.usePlan(primaryHeader, options.getColumnRules(),
+                options.getPairing().pairingColumns());
+        comparisonCache.ifPresent(entryComparator::useCache);
+
+        try (final AnalysisMetrics.StageTimer timer = options.getMetrics().start(AnalysisStage.COMPARING);
+             final RecordReader reader = options.getParserType().open(file, charset, delimiter)) {
+            if (exportOrder == ExportOrder.INPUT) {
+                final int[] headersRemaining = {QUALTRICS_HEADERS_TOTAL_LENGTH};
+                final BitSet writtenRecords = new BitSet(recordCount);
+                reader.scan((record, offset, length) -> {
+                    ProgressListener.checkCancelled();
+                    if (headersRemaining[0] > 0) {
+                        headersRemaining[0]--;
+                        return;
+                    }
+
+                    if (record.size() <= participantIdColumn) {
+                        return;
+                    }
+                    final String participantId = record.get(participantIdColumn).toLowerCase();
+                    if (participantId.isBlank()) {
+                        return;
+                    }
+                    // Only the first row of a participant is written, with the row that replaced it if any.
+                    final int indexedRecord = participantIdToRecord.get(participantId);
+                    if (!writtenRecords.get(indexedRecord)) {
+                        writtenRecords.set(indexedRecord);
+                        writeParticipant(reader, writer, primaryHeader, participantId,
+                                recordOffsets[indexedRecord] == offset
+                                        ? record.toArray()
+                                        : reader.read(recordOffsets[indexedRecord], recordLengths[indexedRecord]));
+                    }
+                });
+            } else {
+                final List<String> participantIds = new ArrayList<>(participantIdToRecord.keySet());
+                exportOrder.sort(participantIds, doubleEntryIdPrefix);
+                for (final String participantId : participantIds) {
+                    ProgressListener.checkCancelled();
+                    final int record = participantIdToRecord.get(participantId);
+                    writeParticipant(reader, writer, primaryHeader, participantId,
+                            reader.read(recordOffsets[record], recordLengths[record]));
+                }
+            }
+            options.getMetrics().recordComparison(entryComparator.finish());
+            timer.addItems(recordCount);
+            timer.addBytes(file.length());
+            comparisonCache.ifPresent(this::saveComparisonCache);
+        } catch (final IOException e) {
+            log.error("Exception in streaming the file {}", file, e);
+            throw new UncheckedIOException(e);
+        } catch (final IndexOutOfBoundsException e) {
+            log.error("Column identifiers are invalid!");
+            throw new IllegalStateException("Column identifiers are invalid!");
+        }
+    }
+
+    private void saveComparisonCache(@NonNull final ComparisonCache comparisonCache) {
+        try {
+            comparisonCache.save();
+        } catch (final IOException e) {
+            log.warn("Could not save the comparison cache, the next run will recompare every pair", e);
+        }
+    }
+
+    private void writeParticipant(@NonNull final RecordReader reader, @NonNull final ICSVWriter writer,
+                                  @NonNull final String[] primaryHeader, @NonNull final String participantId,
+                                  @NonNull final String[] fields) throws IOException, IndexOutOfBoundsException {
+        if (!participantId.startsWith(doubleEntryIdPrefix)) {
+            final Integer doubleEntryRecord = participantIdToRecord.get(doubleEntryIdPrefix.concat(participantId));
+            if (doubleEntryRecord != null) {
+                final String[] doubleEntry =
+                        reader.read(recordOffsets[doubleEntryRecord], recordLengths[doubleEntryRecord]);
+                final String[][] pair = entryComparator.comparePair(participantId, primaryHeader, fields, doubleEntry);
+                writer.writeNext(pair[0]);
+                writer.writeNext(pair[1]);
+            } else {
+                writer.writeNext(fields);
+            }
+        } else {
+            final String originalEntryParticipantId = participantId.substring(doubleEntryIdPrefix.length());
+            if (!participantIdToRecord.containsKey(originalEntryParticipantId)) {
+                entryComparator.reportMissingOriginal(participantId, originalEntryParticipantId);
+                writer.writeNext(fields);
+            }
+        }
+    }
+
+    public int getParticipantCount() {
+        return recordCount;
+    }
+
+    private void indexFile() throws IllegalStateException {
+        try (final RecordReader reader = options.getParserType().open(file, charset, delimiter)) {
+            reader.scan((record, offset, length) -> {
+                ProgressListener.checkCancelled();
+                if (rawDataHeaders.size() < QUALTRICS_HEADERS_TOTAL_LENGTH) {
+                    rawDataHeaders.add(record.toArray());
+                    return;
+                }
+                indexRecord(record, offset, length);
+            });
+        } catch (final IOException e) {
+            log.error("Exception in indexing the file {}", file, e);
+            throw new IllegalStateException("Could not read the file " + file.getName());
+        } catch (final IndexOutOfBoundsException e) {
+            log.error("Column identifiers are invalid!");
+            throw new IllegalStateException("Column identifiers are invalid!");
+        }
+        log.info("Indexed {} participants in {}", recordCount, file);
+    }
+
+    /**
+     * Only the participant ID column is decoded, the rest of the row is read again when it is written. A replaced
+     * duplicate takes over the record of the first row.
+     */
+    private void indexRecord(@NonNull final DelimitedRecord record, final long offset, final int length)
+            throws IndexOutOfBoundsException {
+        final long row = entryComparator.rowRead(record.size(),
+                rawDataHeaders.get(QUALTRICS_PRIMARY_HEADER_INDEX).length);
+        if (!entryComparator.hasParticipantId(row, record.size())) {
+            return;
+        }
+        final String participantId = record.get(participantIdColumn);
+        final String participantIdLower = participantId.toLowerCase();
+        final Integer indexedRecord = participantIdToRecord.get(participantIdLower);
+        if (indexedRecord != null) {
+            if (entryComparator.reportDuplicateParticipantId(participantId, row, options.getDuplicatePolicy())) {
+                recordOffsets[indexedRecord] = offset;
+                recordLengths[indexedRecord] = length;
+            }
+            return;
+        }
+        if (participantIdLower.isBlank()) {
+            entryComparator.reportBlankParticipantId(row, record.toArray());
+            return;
+        }
+
+        if (recordCount == recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, recordCount * 2);
+            recordLengths = Arrays.copyOf(recordLengths, recordCount * 2);
+        }
+        recordOffsets[recordCount] = offset;
+        recordLengths[recordCount] = length;
+        participantIdToRecord.put(participantIdLower, recordCount);
+        entryComparator.participantIndexed();
+        recordCount++;
+    }
+}
@@ -0,0 +1,21 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.ICSVWriter;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * An analyzed survey which can write its Qualtrics-compatible export rows (headers followed by data).
+ */
+public interface SurveyAnalysis extends Closeable {
+    void writeTo(@NonNull ICSVWriter writer) throws IllegalStateException, CancellationException;
+
+    /**
+     * Deletes any temporary files holding the rows of the survey, after which it cannot be written any more.
+     */
+    @Override
+    default void close() {
+    }
+}
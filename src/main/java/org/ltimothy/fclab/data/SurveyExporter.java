@@ -0,0 +1,119 @@
+package org.ltimothy.fclab.data;
+
+import com.opencsv.CSVWriter;
+import com.opencsv.ICSVWriter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes exports through a large buffer, compressing them with gzip when the file name ends with
+ * {@value #GZIP_EXTENSION}. A failed or cancelled export deletes the partially written file.
+ */
+@Slf4j
+public final class SurveyExporter {
+    public static final String GZIP_EXTENSION = ".gz";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SurveyExporter() {
+    }
+
+    public static void export(@NonNull final SurveyAnalysis survey, @NonNull final File fileToSave,
+                              @NonNull final DelimitedFileType fileType, @NonNull final Charset charset)
+            throws IOException {
+        exportWhileAnalyzing(fileToSave, fileType, charset, survey::writeTo);
+    }
+
+    /**
+     * Opens the export before running {@code analysis}, so that an analysis which writes its rows as it compares them,
+     * such as a {@link QualtricsSurvey} created with a writer, never holds the processed rows in memory.
+     */
+    public static void exportWhileAnalyzing(@NonNull final File fileToSave, @NonNull final DelimitedFileType fileType,
+                                            @NonNull final Charset charset,
+                                            @NonNull final Consumer<ICSVWriter> analysis) throws IOException {
+        write(fileToSave, fileType, charset, analysis);
+        log.info("Exported analysis to {}", fileToSave);
+    }
+
+    /**
+     * Writes a report such as {@link org.ltimothy.fclab.listener.MismatchReport#writeSummary} the same way as an
+     * export.
+     */
+    public static void writeReport(@NonNull final File fileToSave, @NonNull final DelimitedFileType fileType,
+                                   @NonNull final Charset charset, @NonNull final Consumer<ICSVWriter> report)
+            throws IOException {
+        write(fileToSave, fileType, charset, report);
+        log.info("Wrote report {}", fileToSave);
+    }
+
+    /**
+     * Returns the report file next to {@code exportFile}, e.g. {@code out_summary.csv} for {@code out.csv.gz}. Reports
+     * are not compressed.
+     */
+    public static File reportFileFor(@NonNull final File exportFile, @NonNull final DelimitedFileType fileType,
+                                     @NonNull final String suffix) {
+        final String exportName = isCompressed(exportFile)
+                ? exportFile.getName().substring(0, exportFile.getName().length() - GZIP_EXTENSION.length())
+                : exportFile.getName();
+        final int lastDot = exportName.lastIndexOf(".");
+        final String baseName = lastDot == -1 ? exportName : exportName.substring(0, lastDot);
+        return new File(exportFile.getAbsoluteFile().getParentFile(),
+                baseName + suffix + "." + fileType.getExtension());
+    }
+
+    private static void write(@NonNull final File fileToSave, @NonNull final DelimitedFileType fileType,
+                              @NonNull final Charset charset, @NonNull final Consumer<ICSVWriter> rows)
+            throws IOException {
+        boolean exported = false;
+        try (final ICSVWriter writer = openWriter(fileToSave, fileType, charset)) {
+            rows.accept(writer);
+            if (writer.checkError()) {
+                throw new IOException("Could not write the export to " + fileToSave, writer.getException());
+            }
+            exported = true;
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (!exported && Files.deleteIfExists(fileToSave.toPath())) {
+                log.info("Deleted partially written file {}", fileToSave);
+            }
+        }
+    }
+
+    public static boolean isCompressed(@NonNull final File file) {
+        return file.getName().toLowerCase().endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * Returns {@code file} with {@value #GZIP_EXTENSION} appended, unless it already ends with it.
+     */
+    public static File compressed(@NonNull final File file) {
+        return isCompressed(file) ? file : new File(file.getPath() + GZIP_EXTENSION);
+    }
+
+    private static ICSVWriter openWriter(@NonNull final File fileToSave, @NonNull final DelimitedFileType fileType,
+                                         @NonNull final Charset charset) throws IOException {
+        OutputStream outputStream = Files.newOutputStream(fileToSave.toPath());
+        try {
+            if (isCompressed(fileToSave)) {
+                outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            }
+        } catch (final IOException e) {
+            outputStream.close();
+            throw e;
+        }
+        return new CSVWriter(new BufferedWriter(new OutputStreamWriter(outputStream, charset), BUFFER_SIZE),
+                fileType.getDelimiter(), ICSVWriter.DEFAULT_QUOTE_CHARACTER, ICSVWriter.DEFAULT_ESCAPE_CHARACTER,
+                ICSVWriter.DEFAULT_LINE_END);
+    }
+}
@@ -0,0 +1,123 @@
+package org.ltimothy.fclab.data;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Singular;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Parameters of a survey analysis shared by the GUI, the command line and the survey implementations.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class SurveyOptions {
+    public static final int SEQUENTIAL = 1;
+    /**
+     * Half of the maximum heap, leaving room for the participant index, the comparison and the export.
+     */
+    public static final long DEFAULT_MEMORY_THRESHOLD_BYTES = Runtime.getRuntime().maxMemory() / 2;
+
+    private final int participantIdColumn;
+    private final int firstRelevantColumn;
+    /**
+     * Prefix of double entries, unused when a {@link #pairingStrategy} is set.
+     */
+    @NonNull
+    @Builder.Default
+    private final String doubleEntryIdPrefix = "";
+    /**
+     * Prefixes of further entries of each participant, e.g. {@code Y_} for triple entry. When set,
+     * {@link QualtricsSurvey} compares every entry of a participant with the original in the same pass and exports a
+     * consensus row after them.
+     */
+    @Singular
+    private final List<String> additionalEntryIdPrefixes;
+    /**
+     * How the entries of a participant are told apart instead of by their prefixes, e.g. by a suffix or an entry number
+     * column. Only supported by {@link QualtricsSurvey}.
+     */
+    @NonNull
+    @Builder.Default
+    private final Optional<PairingStrategy> pairingStrategy = Optional.empty();
+    @NonNull
+    @Builder.Default
+    private final Charset charset = StandardCharsets.UTF_8;
+    @Builder.Default
+    private final int comparisonThreads = SEQUENTIAL;
+    @NonNull
+    @Builder.Default
+    private final ExportOrder exportOrder = ExportOrder.INPUT;
+    @NonNull
+    @Builder.Default
+    private final ParserType parserType = ParserType.OPENCSV;
+    /**
+     * Comparators for columns matching a header pattern, the first matching rule applies. Relevant columns without a
+     * matching rule are compared with {@link ColumnComparator#TEXT}.
+     */
+    @Singular
+    private final List<ColumnRule> columnRules;
+    /**
+     * Exports analyzed together with the main input, in the order their rows are exported. Only supported by
+     * {@link QualtricsSurvey}.
+     */
+    @Singular
+    private final List<MergedInput> mergedInputs;
+    /**
+     * Estimated size of the loaded rows above which {@link QualtricsSurvey} moves them to a memory-mapped file.
+     */
+    @Builder.Default
+    private final long memoryThresholdBytes = DEFAULT_MEMORY_THRESHOLD_BYTES;
+    @NonNull
+    @Builder.Default
+    private final DuplicatePolicy duplicatePolicy = DuplicatePolicy.FAIL;
+    /**
+     * Sidecar file used for incremental re-validation, see {@link ComparisonCache}.
+     */
+    @NonNull
+    @Builder.Default
+    private final Optional<File> comparisonCacheFile = Optional.empty();
+    /**
+     * Sidecar file holding the parsed rows of the main input, see {@link SurveySnapshot}. Only used by
+     * {@link QualtricsSurvey}.
+     */
+    @NonNull
+    @Builder.Default
+    private final Optional<File> snapshotFile = Optional.empty();
+    /**
+     * Receives the timings of each stage, see {@link AnalysisMetrics}.
+     */
+    @NonNull
+    @Builder.Default
+    private final AnalysisMetrics metrics = AnalysisMetrics.NONE;
+
+    /**
+     * Returns the {@link #pairingStrategy}, or pairing by the double-entry and additional entry prefixes.
+     */
+    public PairingStrategy getPairing() {
+        if (pairingStrategy.isPresent()) {
+            return pairingStrategy.get();
+        }
+        final List<String> entryIdPrefixes = new ArrayList<>(List.of(doubleEntryIdPrefix));
+        entryIdPrefixes.addAll(additionalEntryIdPrefixes);
+        return PairingStrategy.prefixes(entryIdPrefixes);
+    }
+
+    public boolean isPairedByPrefix() {
+        return pairingStrategy.isEmpty();
+    }
+
+    public boolean isConsensus() {
+        return getPairing().expectsFurtherEntries();
+    }
+
+    public boolean isParallel() {
+        return comparisonThreads > SEQUENTIAL;
+    }
+}
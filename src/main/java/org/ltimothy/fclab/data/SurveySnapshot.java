@@ -0,0 +1,296 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+/**
+ * Sidecar file holding the parsed header and data rows of an export, keyed by the length and CRC-32C of the export and
+ * the charset it was read with. A later run over the unchanged export maps the snapshot instead of parsing the export
+ * again, so changing the participant ID column, prefix or comparators only costs a re-comparison. Rows are stored as
+ * read, so duplicates, blank participant IDs and the participant index are worked out again from them on every run.
+ * <p>
+ * The data rows follow a short prefix with the key, then come the header rows and a fixed-size trailer pointing at
+ * both, so rows can be written while the export is parsed. Each row is its length followed by the encoding of
+ * {@link RowStore#writeRow}.
+ */
+@Slf4j
+public class SurveySnapshot {
+    private static final String SNAPSHOT_FILE_SUFFIX = ".doubleentry-snapshot";
+    private static final int MAGIC = 0x44455353;
+    private static final int VERSION = 1;
+    private static final int TRAILER_BYTES = 3 * Long.BYTES + 2 * Integer.BYTES;
+    private static final long MAP_WINDOW_BYTES = 1L << 28;
+
+    private final File file;
+    private final long inputLength;
+    private final long inputHash;
+    private final String charsetName;
+
+    private SurveySnapshot(@NonNull final File file, final long inputLength, final long inputHash,
+                           @NonNull final String charsetName) {
+        this.file = file;
+        this.inputLength = inputLength;
+        this.inputHash = inputHash;
+        this.charsetName = charsetName;
+    }
+
+    public static File defaultFileFor(@NonNull final File inputFile) {
+        return new File(inputFile.getAbsoluteFile().getParentFile(), inputFile.getName() + SNAPSHOT_FILE_SUFFIX);
+    }
+
+    /**
+     * Hashes the export, which reads it once through memory-mapped windows but does not parse it.
+     */
+    static SurveySnapshot of(@NonNull final File file, @NonNull final File inputFile, @NonNull final Charset charset)
+            throws IOException {
+        final CRC32C crc = new CRC32C();
+        final long inputLength;
+        try (final FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            inputLength = channel.size();
+            for (long position = 0; position < inputLength; position += MAP_WINDOW_BYTES) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW_BYTES, inputLength - position)));
+            }
+        }
+        return new SurveySnapshot(file, inputLength, crc.getValue(), charset.name());
+    }
+
+    /**
+     * Passes the header rows and then the data rows of the snapshot to the consumers, like parsing the export would.
+     * Returns the number of rows replayed, or nothing if there is no snapshot, it was written for a different export
+     * or charset, or it is damaged. The layout of every row is checked before any row is passed on, so a snapshot
+     * which fails with an {@link IOException} after rows were passed could no longer be read from the disk.
+     */
+    OptionalLong replay(@NonNull final List<String[]> headers, @NonNull final Consumer<String[]> rows,
+                        @NonNull final ProgressListener progressListener) throws IOException, CancellationException {
+        if (!file.isFile()) {
+            return OptionalLong.empty();
+        }
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final DataInputStream prefix = new DataInputStream(Channels.newInputStream(channel));
+            try {
+                if (size < TRAILER_BYTES || prefix.readInt() != MAGIC || prefix.readInt() != VERSION ||
+                        prefix.readLong() != inputLength || prefix.readLong() != inputHash ||
+                        !prefix.readUTF().equals(charsetName)) {
+                    log.info("Ignoring snapshot {} written for a different export or charset", file);
+                    return OptionalLong.empty();
+                }
+            } catch (final EOFException | UTFDataFormatException e) {
+                log.warn("Ignoring damaged snapshot {}", file, e);
+                return OptionalLong.empty();
+            }
+            final long prefixBytes = channel.position();
+            final ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_BYTES,
+                    TRAILER_BYTES);
+            final long dataOffset = trailer.getLong();
+            final long headersOffset = trailer.getLong();
+            final long dataRows = trailer.getLong();
+            final int headerRows = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                log.info("Ignoring incomplete snapshot {}", file);
+                return OptionalLong.empty();
+            }
+            if (dataOffset != prefixBytes || headersOffset < dataOffset || headersOffset > size - TRAILER_BYTES ||
+                    dataRows < 0 || headerRows < 0 ||
+                    !forEachRow(channel, headersOffset, headerRows, size - TRAILER_BYTES, RowStore::isRow,
+                            ProgressListener.NONE) ||
+                    !forEachRow(channel, dataOffset, dataRows, headersOffset, RowStore::isRow,
+                            ProgressListener.NONE)) {
+                log.warn("Ignoring damaged snapshot {}", file);
+                return OptionalLong.empty();
+            }
+
+            forEachRow(channel, headersOffset, headerRows, size - TRAILER_BYTES, decoding(headers::add),
+                    ProgressListener.NONE);
+            forEachRow(channel, dataOffset, dataRows, headersOffset, decoding(rows), progressListener);
+            log.info("Loaded {} rows from snapshot {}", dataRows, file);
+            return OptionalLong.of(headerRows + dataRows);
+        }
+    }
+
+    private static Predicate<byte[]> decoding(@NonNull final Consumer<String[]> rows) {
+        return bytes -> {
+            rows.accept(RowStore.readRow(bytes));
+            return true;
+        };
+    }
+
+    /**
+     * Starts writing a snapshot of this export. A snapshot that cannot be written is skipped with a warning rather
+     * than failing the analysis.
+     */
+    Recorder record() {
+        return new Recorder();
+    }
+
+    /**
+     * Maps windows of {@value #MAP_WINDOW_BYTES} bytes, or a single row if it is longer, and passes each row of the
+     * section ending at {@code end} as a single bulk copy of its bytes. Returns whether every row fit the section,
+     * which the rows fill exactly, and was accepted.
+     */
+    private static boolean forEachRow(@NonNull final FileChannel channel, final long offset, final long count,
+                                      final long end, @NonNull final Predicate<byte[]> rows,
+                                      @NonNull final ProgressListener progressListener) throws IOException,
+            CancellationException {
+        ByteBuffer window = ByteBuffer.allocate(0);
+        long windowStart = offset;
+        long position = offset;
+        for (long row = 0; row < count; row++) {
+            ProgressListener.checkCancelled();
+            if ((row + 1) % ProgressListener.REPORTING_INTERVAL == 0) {
+                progressListener.onProgress(AnalysisStage.PARSING, row + 1, count);
+            }
+            if (position + Integer.BYTES > end) {
+                return false;
+            }
+            if (position + Integer.BYTES > windowStart + window.limit()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_BYTES,
+                        end - position));
+            }
+            final int rowBytes = window.getInt((int) (position - windowStart));
+            if (rowBytes < 0 || position + Integer.BYTES + rowBytes > end) {
+                return false;
+            }
+            if (position + Integer.BYTES + rowBytes > windowStart + window.limit()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(
+                        Math.max(MAP_WINDOW_BYTES, Integer.BYTES + rowBytes), end - position));
+            }
+            final byte[] bytes = new byte[rowBytes];
+            window.get((int) (position - windowStart) + Integer.BYTES, bytes);
+            if (!rows.test(bytes)) {
+                return false;
+            }
+            position += Integer.BYTES + rowBytes;
+        }
+        return position == end;
+    }
+
+    /**
+     * Writes the rows of a parse to a temporary file, which replaces the snapshot once the parse is committed.
+     */
+    final class Recorder implements Closeable {
+        private final File temporaryFile;
+        private final ByteArrayOutputStream rowBuffer;
+        private final DataOutputStream rowOutput;
+        private DataOutputStream output;
+        private long dataOffset;
+        private long writtenBytes;
+        private long dataRows;
+
+        private Recorder() {
+            this.temporaryFile = new File(file.getPath() + ".tmp");
+            this.rowBuffer = new ByteArrayOutputStream();
+            this.rowOutput = new DataOutputStream(rowBuffer);
+            try {
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(inputLength);
+                output.writeLong(inputHash);
+                output.writeUTF(charsetName);
+                dataOffset = output.size();
+                writtenBytes = dataOffset;
+            } catch (final IOException e) {
+                fail(e);
+            }
+        }
+
+        void add(@NonNull final String[] row) {
+            if (output == null) {
+                return;
+            }
+            try {
+                write(row);
+                dataRows++;
+            } catch (final IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Writes the header rows and the trailer, and replaces the snapshot with the temporary file.
+         */
+        void commit(@NonNull final List<String[]> headers) {
+            if (output == null) {
+                return;
+            }
+            try {
+                final long headersOffset = writtenBytes;
+                for (final String[] header : headers) {
+                    write(header);
+                }
+                output.writeLong(dataOffset);
+                output.writeLong(headersOffset);
+                output.writeLong(dataRows);
+                output.writeInt(headers.size());
+                output.writeInt(MAGIC);
+                output.close();
+                output = null;
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                log.info("Saved {} rows to snapshot {}", dataRows, file);
+            } catch (final IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Deletes the temporary file of a snapshot that was not committed.
+         */
+        @Override
+        public void close() {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (final IOException e) {
+                    log.debug("Could not close snapshot {}", temporaryFile, e);
+                }
+                output = null;
+            }
+            try {
+                Files.deleteIfExists(temporaryFile.toPath());
+            } catch (final IOException e) {
+                log.warn("Could not delete the temporary snapshot {}", temporaryFile, e);
+            }
+        }
+
+        private void write(@NonNull final String[] row) throws IOException {
+            rowBuffer.reset();
+            final int rowBytes = RowStore.writeRow(rowOutput, row);
+            output.writeInt(rowBytes);
+            rowBuffer.writeTo(output);
+            writtenBytes += Integer.BYTES + rowBytes;
+        }
+
+        private void fail(@NonNull final IOException e) {
+            log.warn("Could not write snapshot {}, the next run parses the export again", file, e);
+            close();
+        }
+    }
+}
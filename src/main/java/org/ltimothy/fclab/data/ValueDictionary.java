@@ -0,0 +1,75 @@
+package org.ltimothy.fclab.data;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the distinct cell values of a survey, shared by all columns. A row is stored as an {@code int} code per
+ * cell, so a value repeated across thousands of rows, such as a Likert answer, is held only once. Equal codes always
+ * denote equal values.
+ */
+final class ValueDictionary {
+    /**
+     * Code of a cell beyond the end of a short row, decoded as an empty value.
+     */
+    static final int MISSING = -1;
+    private static final String MISSING_VALUE = "";
+
+    private final Map<String, Integer> codes;
+    private final List<String> values;
+
+    ValueDictionary() {
+        this.codes = new HashMap<>();
+        this.values = new ArrayList<>();
+    }
+
+    int[] encode(@NonNull final DelimitedRecord record) {
+        final int[] row = new int[record.size()];
+        for (int column = 0; column < row.length; column++) {
+            row[column] = encode(record.get(column));
+        }
+        return row;
+    }
+
+    int encode(@NonNull final String value) {
+        final Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        values.add(value);
+        codes.put(value, values.size() - 1);
+        return values.size() - 1;
+    }
+
+    static int code(@NonNull final int[] row, final int column) {
+        return column < row.length ? row[column] : MISSING;
+    }
+
+    String value(final int code) {
+        return code == MISSING ? MISSING_VALUE : values.get(code);
+    }
+
+    String[] decode(@NonNull final int[] row) {
+        return decode(row, row.length);
+    }
+
+    /**
+     * Decodes a row padded with {@code null} or truncated to {@code length}, like {@link Arrays#copyOf}.
+     */
+    String[] decode(@NonNull final int[] row, final int length) {
+        final String[] fields = new String[length];
+        for (int column = 0; column < Math.min(length, row.length); column++) {
+            fields[column] = values.get(row[column]);
+        }
+        return fields;
+    }
+
+    int size() {
+        return values.size();
+    }
+}
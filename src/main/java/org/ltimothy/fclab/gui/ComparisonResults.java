@@ -0,0 +1,108 @@
+package org.ltimothy.fclab.gui;
+
+import lombok.NonNull;
+import org.ltimothy.fclab.listener.ComparisonListener;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects one result per compared pair for the results table. Pairs are numbered in the order they were compared and
+ * their mismatches are kept in parallel arrays, so each pair costs its participant ID and an {@code int} offset rather
+ * than an object per row. Collected on the analysis thread and only read once the analysis has finished.
+ */
+final class ComparisonResults implements ComparisonListener {
+    static final int MISSING = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private String[] participantIds;
+    private int[] mismatchStarts;
+    private int pairs;
+
+    private int[] mismatchColumns;
+    private String[] originalValues;
+    private String[] doubleEntryValues;
+    private int mismatches;
+
+    private final Map<Integer, String> mismatchedColumnHeaders;
+
+    ComparisonResults() {
+        this.participantIds = new String[INITIAL_CAPACITY];
+        this.mismatchStarts = new int[INITIAL_CAPACITY];
+        this.mismatchColumns = new int[INITIAL_CAPACITY];
+        this.originalValues = new String[INITIAL_CAPACITY];
+        this.doubleEntryValues = new String[INITIAL_CAPACITY];
+        this.mismatchedColumnHeaders = new TreeMap<>();
+    }
+
+    @Override
+    public void pairStarted(@NonNull final String participantId) {
+        if (pairs == participantIds.length) {
+            participantIds = Arrays.copyOf(participantIds, pairs * 2);
+            mismatchStarts = Arrays.copyOf(mismatchStarts, pairs * 2);
+        }
+        participantIds[pairs] = participantId;
+        mismatchStarts[pairs] = mismatches;
+        pairs++;
+    }
+
+    /**
+     * Mismatches are raised right after their pair was started, in ascending column order.
+     */
+    @Override
+    public void mismatchFound(@NonNull final String participantId, final int columnIndex,
+                              @NonNull final String columnHeader, @NonNull final String originalValue,
+                              @NonNull final String doubleEntryValue) {
+        if (mismatches == mismatchColumns.length) {
+            mismatchColumns = Arrays.copyOf(mismatchColumns, mismatches * 2);
+            originalValues = Arrays.copyOf(originalValues, mismatches * 2);
+            doubleEntryValues = Arrays.copyOf(doubleEntryValues, mismatches * 2);
+        }
+        mismatchColumns[mismatches] = columnIndex;
+        originalValues[mismatches] = originalValue;
+        doubleEntryValues[mismatches] = doubleEntryValue;
+        mismatches++;
+        mismatchedColumnHeaders.putIfAbsent(columnIndex, columnHeader);
+    }
+
+    int getPairCount() {
+        return pairs;
+    }
+
+    String participantId(final int pair) {
+        return participantIds[pair];
+    }
+
+    int mismatchCount(final int pair) {
+        return mismatchEnd(pair) - mismatchStarts[pair];
+    }
+
+    /**
+     * Returns the mismatch of the pair in the given export column, or {@value #MISSING} if the column matched.
+     */
+    int findMismatch(final int pair, final int columnIndex) {
+        final int mismatch = Arrays.binarySearch(mismatchColumns, mismatchStarts[pair], mismatchEnd(pair),
+                columnIndex);
+        return mismatch < 0 ? MISSING : mismatch;
+    }
+
+    String originalValue(final int mismatch) {
+        return originalValues[mismatch];
+    }
+
+    String doubleEntryValue(final int mismatch) {
+        return doubleEntryValues[mismatch];
+    }
+
+    /**
+     * Returns the export columns with at least one mismatch in ascending order, with their primary headers.
+     */
+    Map<Integer, String> getMismatchedColumnHeaders() {
+        return mismatchedColumnHeaders;
+    }
+
+    private int mismatchEnd(final int pair) {
+        return pair + 1 < pairs ? mismatchStarts[pair + 1] : mismatches;
+    }
+}
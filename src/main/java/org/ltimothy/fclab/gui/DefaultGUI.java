@@ -1,415 +1,884 @@
-package org.ltimothy.fclab.gui;
-
-import com.opencsv.CSVWriter;
-import com.opencsv.ICSVParser;
-import com.opencsv.ICSVWriter;
-import lombok.Getter;
-import lombok.NonNull;
-import lombok.extern.slf4j.Slf4j;
-import org.ltimothy.fclab.data.QualtricsSurvey;
-import org.mozilla.universalchardet.UniversalDetector;
-
-import javax.inject.Named;
-import javax.swing.JButton;
-import javax.swing.JFileChooser;
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
-import javax.swing.JTextField;
-import javax.swing.SwingUtilities;
-import javax.swing.UIManager;
-import javax.swing.filechooser.FileFilter;
-import java.awt.BorderLayout;
-import java.awt.Container;
-import java.awt.Font;
-import java.awt.GridLayout;
-import java.awt.Panel;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.Optional;
-
-import static org.ltimothy.fclab.dagger.GUIModule.APP_SYSTEM_PLATFORM_NAME;
-
-@Slf4j
-public class DefaultGUI extends JFrame {
-    private static final String APP_TITLE = "Double Entry Validation Tool";
-    private static final Font APP_UNSPACED_FONT = new Font("Serif", Font.PLAIN, 12);
-    private static final Font APP_SPACED_FONT = new Font("Monospaced", Font.PLAIN, 12);
-
-    private static final boolean APP_VISIBILITY = true;
-    private static final boolean APP_WORD_WRAP_STYLE = true;
-    private static final int APP_CLOSE_BEHAVIOR = JFrame.EXIT_ON_CLOSE;
-    private static final int APP_X_COORDINATE = 100;
-    private static final int APP_Y_COORDINATE = 100;
-    private static final int APP_WIDTH = 500;
-    private static final int APP_HEIGHT = 500;
-    private static JTextArea statusTextArea;
-
-    private Container container;
-    private JTextField participantIdColumnInputTextField;
-    private JTextField firstRelevantColumnInputTextField;
-    private JTextField doubleEntryIdPrefixInputTextField;
-    private Optional<QualtricsSurvey> surveyOptional;
-    private Charset charset;
-
-    @Getter
-    private Optional<File> fileOptional;
-
-    public DefaultGUI(@Named(APP_SYSTEM_PLATFORM_NAME) final Optional<String> systemPlatform) {
-        try {
-            SwingUtilities.invokeAndWait(() -> {
-                statusTextArea = getNonEditableJTextArea();
-
-                this.participantIdColumnInputTextField = getEditableJTextField();
-                this.firstRelevantColumnInputTextField = getEditableJTextField();
-                this.doubleEntryIdPrefixInputTextField = getEditableJTextField();
-                this.fileOptional = Optional.empty();
-                this.surveyOptional = Optional.empty();
-                this.charset = StandardCharsets.UTF_8;
-
-                this.container = createDefaultContainer(systemPlatform);
-                this.container.add(getDefaultConfigurationPanel(), BorderLayout.NORTH);
-                this.container.add(getDefaultInformationPanel(), BorderLayout.CENTER);
-            });
-        } catch (final InterruptedException | InvocationTargetException e) {
-            log.error("Exception in initializing the default GUI for {}", systemPlatform, e);
-        }
-    }
-
-    public static void appendStatusTextArea(@NonNull final String statusUpdate) {
-        SwingUtilities.invokeLater(() -> {
-            String statusUpdateWithNewline = statusUpdate;
-            if (!statusUpdate.endsWith("\n")) {
-                statusUpdateWithNewline = statusUpdateWithNewline.concat("\n");
-            }
-            statusTextArea.append(statusUpdateWithNewline);
-            log.info("Appended to status panel {}", statusUpdateWithNewline);
-        });
-    }
-
-    public static void setStatusTextArea(@NonNull final String statusUpdate) {
-        SwingUtilities.invokeLater(() -> {
-            statusTextArea.setText(statusUpdate);
-            log.info("Rewrote status panel as {}", statusUpdate);
-        });
-    }
-
-    private Container createDefaultContainer(@NonNull final Optional<String> systemPlatform) {
-        log.info("Creating default container");
-        final Container container = getContentPane();
-        container.setLayout(new BorderLayout());
-
-        setTitle(APP_TITLE);
-        setBounds(APP_X_COORDINATE, APP_Y_COORDINATE, APP_WIDTH, APP_HEIGHT);
-        setDefaultCloseOperation(APP_CLOSE_BEHAVIOR);
-        setVisible(APP_VISIBILITY);
-
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-            if (systemPlatform.isPresent() && systemPlatform.get().toLowerCase().startsWith("mac")) {
-                System.setProperty("apple.laf.useScreenMenuBar", "true");
-                System.setProperty("com.apple.mrj.application.apple.menu.about.name", "Double Entry Validation Tool");
-            }
-        } catch (final Exception e) {
-            log.error("Exception in configuring native look and feel for {}", systemPlatform, e);
-        }
-
-        return container;
-    }
-
-    private Panel getDefaultConfigurationPanel() {
-        final Panel configurationPanel = new Panel(new GridLayout(5, 1));
-        configurationPanel.setVisible(APP_VISIBILITY);
-        configurationPanel.add(getFilePanel());
-        configurationPanel.add(createConfigurationInputPanel("Enter Participant ID Column (e.g. AA)",
-                participantIdColumnInputTextField));
-        configurationPanel.add(createConfigurationInputPanel("Enter First Relevant Column (e.g. F)",
-                firstRelevantColumnInputTextField));
-        configurationPanel.add(createConfigurationInputPanel("Enter Double-Entry ID Prefix (e.g. X_)",
-                doubleEntryIdPrefixInputTextField));
-        configurationPanel.add(getDefaultConfigurationButtonPanel());
-        return configurationPanel;
-    }
-
-    private Panel getDefaultConfigurationEntryPanel() {
-        final Panel defaultGridPanel = new Panel(new GridLayout(1, 2));
-        defaultGridPanel.setVisible(APP_VISIBILITY);
-        return defaultGridPanel;
-    }
-
-    private Panel getFilePanel() {
-        final Panel filePanel = getDefaultConfigurationEntryPanel();
-        filePanel.add(createJLabel("Select File"));
-        filePanel.add(createJButton("Open File...", new OpenFileListener()));
-        return filePanel;
-    }
-
-    private Panel createConfigurationInputPanel(@NonNull final String inputLabel,
-                                                @NonNull final JTextField textField) {
-        final Panel configurationInputPanel = getDefaultConfigurationEntryPanel();
-        configurationInputPanel.add(createJLabel(inputLabel));
-        configurationInputPanel.add(textField);
-        return configurationInputPanel;
-    }
-
-    private Panel getDefaultConfigurationButtonPanel() {
-        final Panel defaultConfigurationButtonPanel = new Panel(new GridLayout(1, 3));
-        defaultConfigurationButtonPanel.setVisible(APP_VISIBILITY);
-        defaultConfigurationButtonPanel.add(getClearStatusButton());
-        defaultConfigurationButtonPanel.add(getAnalyzeButton());
-        defaultConfigurationButtonPanel.add(getSaveButton());
-        return defaultConfigurationButtonPanel;
-    }
-
-    private JButton getClearStatusButton() {
-        return createJButton("Clear", action -> setStatusTextArea(""));
-    }
-
-    private JButton getAnalyzeButton() {
-        return createJButton("Analyze", new AnalyzeFileListener());
-    }
-
-    private JButton getSaveButton() {
-        return createJButton("Save", new SaveFileListener());
-    }
-
-    private Optional<Integer> decipherColumn(@NonNull final String columnText) {
-        final StringBuilder temp = new StringBuilder(columnText.trim().toLowerCase());
-        int columnNum = 0;
-
-        for (int i = 0; i < columnText.length(); i++) {
-            char identifier = temp.charAt(i);
-            if (Character.isLetter(identifier)) {
-                columnNum += (identifier - 97) + (i * 26);
-            } else {
-                log.error("Invalid column input {}", columnText);
-                appendStatusTextArea("Invalid column input " + columnText);
-                return Optional.empty();
-            }
-        }
-
-        return Optional.of(columnNum);
-    }
-
-    private Panel getDefaultInformationPanel() {
-        final Panel informationPanel = new Panel(new BorderLayout());
-        informationPanel.setVisible(APP_VISIBILITY);
-        informationPanel.add(getStatusScrollPane(), BorderLayout.CENTER);
-        informationPanel.add(getProjectMaintenanceTextArea(), BorderLayout.SOUTH);
-        return informationPanel;
-    }
-
-    private JScrollPane getStatusScrollPane() {
-        final JScrollPane statusScrollPane = new JScrollPane(statusTextArea);
-        statusScrollPane.setVisible(APP_VISIBILITY);
-        return statusScrollPane;
-    }
-
-    private JTextArea getProjectMaintenanceTextArea() {
-        final JTextArea projectMaintenanceTextArea = getNonEditableJTextArea();
-        projectMaintenanceTextArea.setText("Open Source: https://github.com/LTimothy/DoubleEntry");
-        return projectMaintenanceTextArea;
-    }
-
-    private JButton createJButton(@NonNull final String buttonText, @NonNull ActionListener actionListener) {
-        final JButton defaultJButton = new JButton(buttonText);
-        defaultJButton.setFont(APP_UNSPACED_FONT);
-        defaultJButton.addActionListener(actionListener);
-        defaultJButton.setVisible(APP_VISIBILITY);
-        return defaultJButton;
-    }
-
-    private JLabel createJLabel(@NonNull final String labelText) {
-        final JLabel defaultJLabel = new JLabel(labelText);
-        defaultJLabel.setFont(APP_UNSPACED_FONT);
-        defaultJLabel.setVisible(APP_VISIBILITY);
-        return defaultJLabel;
-    }
-
-    private JTextField getEditableJTextField() {
-        final JTextField editableJTextField = new JTextField();
-        editableJTextField.setFont(APP_SPACED_FONT);
-        editableJTextField.setVisible(APP_VISIBILITY);
-        editableJTextField.setEditable(true);
-        return editableJTextField;
-    }
-
-    private JTextArea getNonEditableJTextArea() {
-        final JTextArea nonEditableJTextArea = new JTextArea();
-        nonEditableJTextArea.setVisible(APP_VISIBILITY);
-        nonEditableJTextArea.setFont(APP_SPACED_FONT);
-        nonEditableJTextArea.setWrapStyleWord(APP_WORD_WRAP_STYLE);
-        nonEditableJTextArea.setEditable(false);
-        return nonEditableJTextArea;
-    }
-
-    private Charset detectCharset(@NonNull final File f) {
-        byte[] buf = new byte[4096];
-        final UniversalDetector detector = new UniversalDetector(null);
-        try (final FileInputStream fileInputStream = new FileInputStream(f)) {
-            int nread;
-            while ((nread = fileInputStream.read(buf)) > 0 && !detector.isDone()) {
-                detector.handleData(buf, 0, nread);
-            }
-            detector.dataEnd();
-        } catch (final IOException e) {
-            log.warn("Could not detect charset, defaulting to {}", charset, e);
-        }
-        return Charset.forName(detector.getDetectedCharset());
-    }
-
-    private class OpenFileListener implements ActionListener {
-        @Override
-        public void actionPerformed(@NonNull final ActionEvent ae) {
-            final JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setCurrentDirectory(new File("."));
-            fileChooser.setFileFilter(new FileFilter() {
-                @Override
-                public boolean accept(@NonNull final File f) {
-                    return f.getName().toLowerCase().endsWith(".tsv")
-                            || f.getName().toLowerCase().endsWith(".csv")
-                            || f.isDirectory();
-                }
-
-                @Override
-                public String getDescription() {
-                    return "Tab-separated values (*.tsv) or Comma-separated values (*.csv)";
-                }
-            });
-
-            int result = fileChooser.showOpenDialog(DefaultGUI.this);
-            if (result == JFileChooser.APPROVE_OPTION) {
-                fileOptional = Optional.ofNullable(fileChooser.getSelectedFile());
-                if (fileOptional.isPresent()) {
-                    final File file = fileOptional.get();
-                    charset = detectCharset(file);
-                    log.info("Selected file {}", file);
-                    appendStatusTextArea("Selected file " + file.getName());
-                }
-            }
-        }
-    }
-
-    private class SaveFileListener implements ActionListener {
-        @Override
-        public void actionPerformed(@NonNull final ActionEvent ae) {
-            if (surveyOptional.isPresent()) {
-                final JFileChooser fileChooser = new JFileChooser();
-                fileChooser.setCurrentDirectory(new File("."));
-                fileChooser.setFileFilter(new FileFilter() {
-                    @Override
-                    public boolean accept(@NonNull final File f) {
-                        if (f.isDirectory()) {
-                            return true;
-                        }
-                        final String name = f.getName();
-                        return name.toLowerCase().endsWith(".csv") || name.toLowerCase().endsWith(".tsv");
-                    }
-
-                    @Override
-                    public String getDescription() {
-                        return "CSV and TSV Files (*.csv, *.tsv)";
-                    }
-                });
-
-                int result = fileChooser.showSaveDialog(DefaultGUI.this);
-                if (result == JFileChooser.APPROVE_OPTION) {
-                    final File fileToSave = fileChooser.getSelectedFile();
-                    final String fileToSaveName = fileToSave.getName();
-                    final String fileExtension;
-
-                    final int lastDot = fileToSaveName.lastIndexOf(".");
-                    if (lastDot == -1) {
-                        log.error("Missing file extension (e.g. *.tsv or *.csv), was provided {}", fileToSaveName);
-                        DefaultGUI.appendStatusTextArea("Missing file extension (e.g. *.tsv or *.csv)!");
-                        return;
-                    } else {
-                        fileExtension = fileToSaveName.substring(lastDot + 1);
-                    }
-
-                    final char delimiter;
-                    if (fileExtension.equalsIgnoreCase("tsv")) {
-                        delimiter = '\t';
-                    } else if (fileExtension.equalsIgnoreCase("csv")) {
-                        delimiter = ',';
-                    } else {
-                        log.error("Invalid file extension (e.g. *.tsv or *.csv), was provided {}", fileToSaveName);
-                        DefaultGUI.appendStatusTextArea("Invalid file extension (e.g. *.tsv or *.csv)!");
-                        return;
-                    }
-
-                    try {
-                        final CSVWriter writer = new CSVWriter(new FileWriter(fileToSave, charset), delimiter,
-                                ICSVWriter.DEFAULT_QUOTE_CHARACTER, ICSVWriter.DEFAULT_ESCAPE_CHARACTER,
-                                ICSVWriter.DEFAULT_LINE_END);
-                        surveyOptional.get().getExportData().forEach(writer::writeNext);
-                        writer.close();
-                    } catch (final IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-            } else {
-                log.info("Must select and analyze a file before saving!");
-                DefaultGUI.appendStatusTextArea("Must select and analyze a file before saving!");
-            }
-        }
-    }
-
-    private class AnalyzeFileListener implements ActionListener {
-        @Override
-        public void actionPerformed(@NonNull final ActionEvent ee) {
-            final Optional<String> participantIdColumnOptional =
-                    Optional.ofNullable(participantIdColumnInputTextField.getText());
-            final Optional<String> firstRelevantColumnOptional =
-                    Optional.ofNullable(firstRelevantColumnInputTextField.getText());
-            final Optional<String> doubleEntryIdPrefixOptional =
-                    Optional.ofNullable(doubleEntryIdPrefixInputTextField.getText());
-
-            final boolean fileSelected = fileOptional.isPresent();
-            final boolean participantIdPresentAndNotBlank = participantIdColumnOptional.isPresent() &&
-                    !participantIdColumnOptional.get().isBlank();
-            final boolean firstRelevantColumnPresentAndNotBlank = firstRelevantColumnOptional.isPresent() &&
-                    !firstRelevantColumnOptional.get().isBlank();
-            final boolean doubleEntryIdPrefixPresentAndNotBlank = doubleEntryIdPrefixOptional.isPresent() &&
-                    !doubleEntryIdPrefixOptional.get().isBlank();
-
-            if (fileSelected && participantIdPresentAndNotBlank && firstRelevantColumnPresentAndNotBlank &&
-                    doubleEntryIdPrefixPresentAndNotBlank) {
-                final Optional<Integer> participantIdColumnNum = decipherColumn(participantIdColumnOptional.get());
-                final Optional<Integer> firstRelevantColumnNum = decipherColumn(firstRelevantColumnOptional.get());
-
-                if (participantIdColumnNum.isPresent() && firstRelevantColumnNum.isPresent()) {
-                    try {
-                        surveyOptional = Optional.of(new QualtricsSurvey(fileOptional.get(), participantIdColumnNum.get(),
-                                firstRelevantColumnNum.get(), doubleEntryIdPrefixOptional.get(), charset));
-                    } catch (final IllegalStateException e) {
-                        appendStatusTextArea(e.getMessage());
-                    }
-                }
-            } else {
-                log.info("One or more of the required inputs were blank: {}, {}, {}, {}", fileOptional,
-                        participantIdColumnOptional, firstRelevantColumnOptional, doubleEntryIdPrefixOptional);
-                if (!fileSelected) {
-                    appendStatusTextArea("Missing File Selection!");
-                }
-                if (!participantIdPresentAndNotBlank) {
-                    appendStatusTextArea("Missing Participant ID!");
-                }
-                if (!firstRelevantColumnPresentAndNotBlank) {
-                    appendStatusTextArea("Missing First Relevant Column!");
-                }
-                if (!doubleEntryIdPrefixPresentAndNotBlank) {
-                    appendStatusTextArea("Missing Double-Entry ID Prefix!");
-                }
-            }
-        }
-    }
-}
+package org.ltimothy.fclab.gui;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.data.AnalysisMetrics;
+import org.ltimothy.fclab.data.AnalysisStage;
+import org.ltimothy.fclab.data.CharsetDetector;
+import org.ltimothy.fclab.data.ColumnIdentifiers;
+import org.ltimothy.fclab.data.ColumnRule;
+import org.ltimothy.fclab.data.ComparisonCache;
+import org.ltimothy.fclab.data.DelimitedFileType;
+import org.ltimothy.fclab.data.DictionaryEncodedSurvey;
+import org.ltimothy.fclab.data.ExportOrder;
+import org.ltimothy.fclab.data.MetricsFormat;
+import org.ltimothy.fclab.data.PairingStrategy;
+import org.ltimothy.fclab.data.QualtricsSurvey;
+import org.ltimothy.fclab.data.SurveyAnalysis;
+import org.ltimothy.fclab.data.SurveyExporter;
+import org.ltimothy.fclab.data.SurveyOptions;
+import org.ltimothy.fclab.data.SurveySnapshot;
+import org.ltimothy.fclab.listener.ComparisonListener;
+import org.ltimothy.fclab.listener.CompositeComparisonListener;
+import org.ltimothy.fclab.listener.MismatchReport;
+
+import javax.inject.Named;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.UIManager;
+import javax.swing.filechooser.FileFilter;
+import java.awt.BorderLayout;
+import java.awt.Container;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.awt.Panel;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+
+import static org.ltimothy.fclab.dagger.GUIModule.APP_SYSTEM_PLATFORM_NAME;
+
+@Slf4j
+public class DefaultGUI extends JFrame {
+    public static final String EXIT_AFTER_FIRST_FRAME_PROPERTY = "doubleentry.exitAfterFirstFrame";
+    public static final String FIRST_FRAME_PREFIX = "First frame in ms: ";
+    private static final String APP_TITLE = "Double Entry Validation Tool";
+    private static final Font APP_UNSPACED_FONT = new Font("Serif", Font.PLAIN, 12);
+    private static final Font APP_SPACED_FONT = new Font("Monospaced", Font.PLAIN, 12);
+
+    private static final boolean APP_VISIBILITY = true;
+    private static final boolean APP_WORD_WRAP_STYLE = true;
+    private static final int APP_CLOSE_BEHAVIOR = JFrame.EXIT_ON_CLOSE;
+    private static final int APP_X_COORDINATE = 100;
+    private static final int APP_Y_COORDINATE = 100;
+    private static final int APP_WIDTH = 500;
+    private static final int APP_HEIGHT = 500;
+    private static final String MISMATCHES_REPORT_SUFFIX = "_mismatches";
+    private static final String SUMMARY_REPORT_SUFFIX = "_summary";
+    private static final String METRICS_REPORT_SUFFIX = "_metrics";
+    private static final String RESULTS_TAB = "Results";
+    private static final String STATUS_TAB = "Status";
+    private static JTextArea statusTextArea;
+    private static StatusLog statusLog;
+
+    private Container container;
+    private JTextField participantIdColumnInputTextField;
+    private JTextField firstRelevantColumnInputTextField;
+    private JTextField doubleEntryIdPrefixInputTextField;
+    private JTextField columnRulesInputTextField;
+    private JSpinner entriesSpinner;
+    private JSpinner comparisonThreadsSpinner;
+    private JComboBox<ExportOrder> exportOrderComboBox;
+    private JCheckBox incrementalCheckBox;
+    private JCheckBox snapshotCheckBox;
+    private JCheckBox dictionaryEncodingCheckBox;
+    private JCheckBox writeAfterAnalyzeCheckBox;
+    private JCheckBox reportsCheckBox;
+    private JButton analyzeButton;
+    private JButton saveButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
+    private Optional<ResultsPanel> resultsPanelOptional;
+    private Optional<JFileChooser> openFileChooserOptional;
+    private Optional<JFileChooser> saveFileChooserOptional;
+    private JTabbedPane informationTabbedPane;
+    private Optional<SurveyAnalysis> surveyOptional;
+    private Optional<MismatchReport> mismatchReportOptional;
+    private Optional<AnalysisMetrics> metricsOptional;
+    private Optional<SurveyTask<?>> runningTaskOptional;
+    private Optional<File> lastSavedFileOptional;
+    private Charset charset;
+    private long charsetDetectionNanos;
+    private final CharsetDetector charsetDetector = new CharsetDetector();
+
+    @Getter
+    private Optional<File> fileOptional;
+
+    /**
+     * Builds and shows the window, so it must be constructed on the event dispatch thread. Panels and dialogs that are
+     * not part of the first frame, the results table and the file choosers, are only created once they are used.
+     */
+    public DefaultGUI(@Named(APP_SYSTEM_PLATFORM_NAME) final Optional<String> systemPlatform) {
+        statusTextArea = getNonEditableJTextArea();
+        statusLog = new StatusLog(statusTextArea);
+        statusLog.start();
+
+        this.participantIdColumnInputTextField = getEditableJTextField();
+        this.firstRelevantColumnInputTextField = getEditableJTextField();
+        this.doubleEntryIdPrefixInputTextField = getEditableJTextField();
+        this.columnRulesInputTextField = getEditableJTextField();
+        this.entriesSpinner = getEntriesSpinner();
+        this.comparisonThreadsSpinner = getComparisonThreadsSpinner();
+        this.exportOrderComboBox = getExportOrderComboBox();
+        this.incrementalCheckBox = getIncrementalCheckBox();
+        this.snapshotCheckBox = getSnapshotCheckBox();
+        this.dictionaryEncodingCheckBox = getDictionaryEncodingCheckBox();
+        this.writeAfterAnalyzeCheckBox = getWriteAfterAnalyzeCheckBox();
+        this.reportsCheckBox = getReportsCheckBox();
+        this.fileOptional = Optional.empty();
+        this.surveyOptional = Optional.empty();
+        this.mismatchReportOptional = Optional.empty();
+        this.metricsOptional = Optional.empty();
+        this.runningTaskOptional = Optional.empty();
+        this.lastSavedFileOptional = Optional.empty();
+        this.resultsPanelOptional = Optional.empty();
+        this.openFileChooserOptional = Optional.empty();
+        this.saveFileChooserOptional = Optional.empty();
+        this.analyzeButton = createJButton("Analyze", new AnalyzeFileListener());
+        this.saveButton = createJButton("Save", new SaveFileListener());
+        this.cancelButton = createJButton("Cancel", new CancelTaskListener());
+        this.cancelButton.setEnabled(false);
+        this.progressBar = getDefaultProgressBar();
+        this.informationTabbedPane = getInformationTabbedPane();
+        this.charset = StandardCharsets.UTF_8;
+
+        this.container = createDefaultContainer(systemPlatform);
+        this.container.add(getDefaultConfigurationPanel(), BorderLayout.NORTH);
+        this.container.add(getDefaultInformationPanel(), BorderLayout.CENTER);
+        addWindowListener(new FirstFrameListener());
+        addWindowListener(new CloseSurveyListener());
+        setVisible(APP_VISIBILITY);
+    }
+
+    public static void appendStatusTextArea(@NonNull final String statusUpdate) {
+        if (statusLog == null) {
+            log.info("Status panel unavailable, logging status {}", statusUpdate);
+            return;
+        }
+        statusLog.append(statusUpdate);
+    }
+
+    public static void setStatusTextArea(@NonNull final String statusUpdate) {
+        if (statusLog == null) {
+            log.info("Status panel unavailable, logging status {}", statusUpdate);
+            return;
+        }
+        statusLog.reset(statusUpdate);
+        log.info("Rewrote status panel as {}", statusUpdate);
+    }
+
+    private Container createDefaultContainer(@NonNull final Optional<String> systemPlatform) {
+        log.info("Creating default container");
+        final Container container = getContentPane();
+        container.setLayout(new BorderLayout());
+
+        setTitle(APP_TITLE);
+        setBounds(APP_X_COORDINATE, APP_Y_COORDINATE, APP_WIDTH, APP_HEIGHT);
+        setDefaultCloseOperation(APP_CLOSE_BEHAVIOR);
+
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            if (systemPlatform.isPresent() && systemPlatform.get().toLowerCase().startsWith("mac")) {
+                System.setProperty("apple.laf.useScreenMenuBar", "true");
+                System.setProperty("com.apple.mrj.application.apple.menu.about.name", "Double Entry Validation Tool");
+            }
+        } catch (final Exception e) {
+            log.error("Exception in configuring native look and feel for {}", systemPlatform, e);
+        }
+
+        return container;
+    }
+
+    private Panel getDefaultConfigurationPanel() {
+        final Panel configurationPanel = new Panel(new GridLayout(12, 1));
+        configurationPanel.setVisible(APP_VISIBILITY);
+        configurationPanel.add(getFilePanel());
+        configurationPanel.add(createConfigurationInputPanel("Enter Participant ID Column (e.g. AA)",
+                participantIdColumnInputTextField));
+        configurationPanel.add(createConfigurationInputPanel("Enter First Relevant Column (e.g. F)",
+                firstRelevantColumnInputTextField));
+        configurationPanel.add(createConfigurationInputPanel(
+                "Enter Double-Entry ID Prefix (e.g. X_, or X_, Y_, or suffix:_2, column:AG)",
+                doubleEntryIdPrefixInputTextField));
+        configurationPanel.add(createConfigurationInputPanel(
+                "Column Rules, Optional (e.g. StartDate|IPAddress=ignore; Age=numeric:1)", columnRulesInputTextField));
+        configurationPanel.add(createConfigurationInputPanel("Entries per Participant (column: and pattern:)",
+                entriesSpinner));
+        configurationPanel.add(createConfigurationInputPanel("Comparison Threads", comparisonThreadsSpinner));
+        configurationPanel.add(createConfigurationInputPanel("Export Order", exportOrderComboBox));
+        configurationPanel.add(createConfigurationInputPanel("Reuse Unchanged Comparisons", incrementalCheckBox));
+        configurationPanel.add(createConfigurationInputPanel("Reuse Parsed File", snapshotCheckBox));
+        configurationPanel.add(createConfigurationInputPanel("Compact Memory (Dictionary Encoding)",
+                dictionaryEncodingCheckBox));
+        configurationPanel.add(createConfigurationInputPanel("Save to Last Saved File After Analyze",
+                writeAfterAnalyzeCheckBox));
+        configurationPanel.add(createConfigurationInputPanel("Also Save Mismatch, Summary and Metrics Reports",
+                reportsCheckBox));
+        configurationPanel.add(getDefaultConfigurationButtonPanel());
+        return configurationPanel;
+    }
+
+    private Panel getDefaultConfigurationEntryPanel() {
+        final Panel defaultGridPanel = new Panel(new GridLayout(1, 2));
+        defaultGridPanel.setVisible(APP_VISIBILITY);
+        return defaultGridPanel;
+    }
+
+    private Panel getFilePanel() {
+        final Panel filePanel = getDefaultConfigurationEntryPanel();
+        filePanel.add(createJLabel("Select File"));
+        filePanel.add(createJButton("Open File...", new OpenFileListener()));
+        return filePanel;
+    }
+
+    private Panel createConfigurationInputPanel(@NonNull final String inputLabel,
+                                                @NonNull final JComponent inputComponent) {
+        final Panel configurationInputPanel = getDefaultConfigurationEntryPanel();
+        configurationInputPanel.add(createJLabel(inputLabel));
+        configurationInputPanel.add(inputComponent);
+        return configurationInputPanel;
+    }
+
+    private Panel getDefaultConfigurationButtonPanel() {
+        final Panel defaultConfigurationButtonPanel = new Panel(new GridLayout(1, 4));
+        defaultConfigurationButtonPanel.setVisible(APP_VISIBILITY);
+        defaultConfigurationButtonPanel.add(getClearStatusButton());
+        defaultConfigurationButtonPanel.add(analyzeButton);
+        defaultConfigurationButtonPanel.add(saveButton);
+        defaultConfigurationButtonPanel.add(cancelButton);
+        return defaultConfigurationButtonPanel;
+    }
+
+    private JButton getClearStatusButton() {
+        return createJButton("Clear", action -> setStatusTextArea(""));
+    }
+
+    private void startTask(@NonNull final SurveyTask<?> task) {
+        runningTaskOptional = Optional.of(task);
+        setTaskRunning(true);
+        task.start();
+    }
+
+    private void finishTask(@NonNull final SurveyTask<?> task) {
+        if (runningTaskOptional.isPresent() && runningTaskOptional.get() == task) {
+            runningTaskOptional = Optional.empty();
+            setTaskRunning(false);
+        }
+    }
+
+    private void setTaskRunning(final boolean taskRunning) {
+        analyzeButton.setEnabled(!taskRunning);
+        saveButton.setEnabled(!taskRunning);
+        cancelButton.setEnabled(taskRunning);
+    }
+
+    private Optional<Integer> decipherColumn(@NonNull final String columnText) {
+        final Optional<Integer> columnNum = ColumnIdentifiers.toColumnIndex(columnText);
+        if (columnNum.isEmpty()) {
+            appendStatusTextArea("Invalid column input " + columnText);
+        }
+        return columnNum;
+    }
+
+    /**
+     * Splits comma-separated prefixes, the first is the double-entry prefix and any further ones are compared with it
+     * for a consensus. The text is known not to be blank.
+     */
+    private List<String> parseEntryIdPrefixes(@NonNull final String entryIdPrefixesText) {
+        final List<String> entryIdPrefixes = Arrays.stream(entryIdPrefixesText.split(","))
+                .map(String::trim)
+                .filter(prefix -> !prefix.isEmpty())
+                .collect(Collectors.toList());
+        return entryIdPrefixes.isEmpty() ? List.of(entryIdPrefixesText) : entryIdPrefixes;
+    }
+
+    /**
+     * Deletes any rows the previous analysis moved to disk. No task uses the survey, as only one task runs at a time.
+     */
+    private void closeSurvey() {
+        surveyOptional.ifPresent(SurveyAnalysis::close);
+        surveyOptional = Optional.empty();
+    }
+
+    /**
+     * Parses a named pairing strategy such as {@code suffix:_2}, reporting an invalid one in the status area.
+     */
+    private Optional<PairingStrategy> parsePairingStrategy(@NonNull final String pairingText) {
+        try {
+            return Optional.of(PairingStrategy.parse(pairingText, (Integer) entriesSpinner.getValue()));
+        } catch (final IllegalArgumentException e) {
+            appendStatusTextArea("Invalid pairing: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Optional<List<ColumnRule>> parseColumnRules(final String columnRulesText) {
+        try {
+            return Optional.of(ColumnRule.parseAll(columnRulesText == null ? "" : columnRulesText));
+        } catch (final IllegalArgumentException e) {
+            appendStatusTextArea("Invalid column rules: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Panel getDefaultInformationPanel() {
+        final Panel informationPanel = new Panel(new BorderLayout());
+        informationPanel.setVisible(APP_VISIBILITY);
+        informationPanel.add(progressBar, BorderLayout.NORTH);
+        informationPanel.add(informationTabbedPane, BorderLayout.CENTER);
+        informationPanel.add(getProjectMaintenanceTextArea(), BorderLayout.SOUTH);
+        return informationPanel;
+    }
+
+    /**
+     * Shows the compared pairs of the last analysis in a table, and warnings, summaries and timings as status lines.
+     */
+    private JTabbedPane getInformationTabbedPane() {
+        final JTabbedPane tabbedPane = new JTabbedPane();
+        tabbedPane.setFont(APP_UNSPACED_FONT);
+        tabbedPane.addTab(RESULTS_TAB, new JPanel());
+        tabbedPane.addTab(STATUS_TAB, getStatusScrollPane());
+        tabbedPane.setSelectedIndex(tabbedPane.indexOfTab(STATUS_TAB));
+        tabbedPane.addChangeListener(change -> {
+            if (tabbedPane.getSelectedIndex() == tabbedPane.indexOfTab(RESULTS_TAB)) {
+                getResultsPanel();
+            }
+        });
+        tabbedPane.setVisible(APP_VISIBILITY);
+        return tabbedPane;
+    }
+
+    /**
+     * Creates the results table the first time results are shown or the tab is selected, in place of the empty tab.
+     */
+    private ResultsPanel getResultsPanel() {
+        if (resultsPanelOptional.isEmpty()) {
+            final ResultsPanel resultsPanel = new ResultsPanel(APP_UNSPACED_FONT);
+            resultsPanelOptional = Optional.of(resultsPanel);
+            informationTabbedPane.setComponentAt(informationTabbedPane.indexOfTab(RESULTS_TAB), resultsPanel);
+        }
+        return resultsPanelOptional.get();
+    }
+
+    private void showResults(@NonNull final ComparisonResults results) {
+        getResultsPanel().showResults(results);
+        informationTabbedPane.setSelectedIndex(informationTabbedPane.indexOfTab(RESULTS_TAB));
+    }
+
+    private JScrollPane getStatusScrollPane() {
+        final JScrollPane statusScrollPane = new JScrollPane(statusTextArea);
+        statusScrollPane.setVisible(APP_VISIBILITY);
+        return statusScrollPane;
+    }
+
+    private JTextArea getProjectMaintenanceTextArea() {
+        final JTextArea projectMaintenanceTextArea = getNonEditableJTextArea();
+        projectMaintenanceTextArea.setText("Open Source: https://github.com/LTimothy/DoubleEntry");
+        return projectMaintenanceTextArea;
+    }
+
+    private JButton createJButton(@NonNull final String buttonText, @NonNull ActionListener actionListener) {
+        final JButton defaultJButton = new JButton(buttonText);
+        defaultJButton.setFont(APP_UNSPACED_FONT);
+        defaultJButton.addActionListener(actionListener);
+        defaultJButton.setVisible(APP_VISIBILITY);
+        return defaultJButton;
+    }
+
+    private JProgressBar getDefaultProgressBar() {
+        final JProgressBar defaultProgressBar = new JProgressBar(0, 100);
+        defaultProgressBar.setFont(APP_UNSPACED_FONT);
+        defaultProgressBar.setStringPainted(true);
+        defaultProgressBar.setString("");
+        defaultProgressBar.setVisible(APP_VISIBILITY);
+        return defaultProgressBar;
+    }
+
+    private JLabel createJLabel(@NonNull final String labelText) {
+        final JLabel defaultJLabel = new JLabel(labelText);
+        defaultJLabel.setFont(APP_UNSPACED_FONT);
+        defaultJLabel.setVisible(APP_VISIBILITY);
+        return defaultJLabel;
+    }
+
+    private JTextField getEditableJTextField() {
+        final JTextField editableJTextField = new JTextField();
+        editableJTextField.setFont(APP_SPACED_FONT);
+        editableJTextField.setVisible(APP_VISIBILITY);
+        editableJTextField.setEditable(true);
+        return editableJTextField;
+    }
+
+    private JSpinner getEntriesSpinner() {
+        final JSpinner spinner = new JSpinner(new SpinnerNumberModel(PairingStrategy.DEFAULT_ENTRIES,
+                PairingStrategy.DEFAULT_ENTRIES, PairingStrategy.MAX_ENTRIES, 1));
+        spinner.setFont(APP_SPACED_FONT);
+        spinner.setVisible(APP_VISIBILITY);
+        return spinner;
+    }
+
+    private JSpinner getComparisonThreadsSpinner() {
+        final int availableProcessors = Runtime.getRuntime().availableProcessors();
+        final JSpinner threadsSpinner = new JSpinner(new SpinnerNumberModel(SurveyOptions.SEQUENTIAL,
+                SurveyOptions.SEQUENTIAL, Math.max(SurveyOptions.SEQUENTIAL, availableProcessors), 1));
+        threadsSpinner.setFont(APP_SPACED_FONT);
+        threadsSpinner.setVisible(APP_VISIBILITY);
+        return threadsSpinner;
+    }
+
+    private JComboBox<ExportOrder> getExportOrderComboBox() {
+        final JComboBox<ExportOrder> orderComboBox = new JComboBox<>(ExportOrder.values());
+        orderComboBox.setFont(APP_UNSPACED_FONT);
+        orderComboBox.setSelectedItem(ExportOrder.INPUT);
+        orderComboBox.setVisible(APP_VISIBILITY);
+        return orderComboBox;
+    }
+
+    private JCheckBox getIncrementalCheckBox() {
+        final JCheckBox checkBox = new JCheckBox();
+        checkBox.setToolTipText("Keeps a *.doubleentry-cache file next to the export and only recompares changed " +
+                "pairs");
+        checkBox.setVisible(APP_VISIBILITY);
+        return checkBox;
+    }
+
+    private JCheckBox getSnapshotCheckBox() {
+        final JCheckBox checkBox = new JCheckBox();
+        checkBox.setToolTipText("Keeps a *.doubleentry-snapshot file next to the export so that analyzing the " +
+                "unchanged export again, e.g. with other columns or prefix, skips parsing it");
+        checkBox.setVisible(APP_VISIBILITY);
+        return checkBox;
+    }
+
+    private JCheckBox getDictionaryEncodingCheckBox() {
+        final JCheckBox checkBox = new JCheckBox();
+        checkBox.setToolTipText("Stores each distinct value once and cells as codes, for exports that do not fit in " +
+                "memory otherwise. Comparison threads are not used.");
+        checkBox.setVisible(APP_VISIBILITY);
+        return checkBox;
+    }
+
+    private JCheckBox getWriteAfterAnalyzeCheckBox() {
+        final JCheckBox checkBox = new JCheckBox();
+        checkBox.setToolTipText("Writes rows to the last saved file while comparing instead of keeping the analysis " +
+                "for the Save button");
+        checkBox.setVisible(APP_VISIBILITY);
+        return checkBox;
+    }
+
+    private JCheckBox getReportsCheckBox() {
+        final JCheckBox checkBox = new JCheckBox();
+        checkBox.setToolTipText("Writes *_mismatches, *_summary and *_metrics files next to the saved file, listing " +
+                "every mismatching cell, the mismatch rates per column and participant, and the timings of each stage");
+        checkBox.setVisible(APP_VISIBILITY);
+        return checkBox;
+    }
+
+    private JTextArea getNonEditableJTextArea() {
+        final JTextArea nonEditableJTextArea = new JTextArea();
+        nonEditableJTextArea.setVisible(APP_VISIBILITY);
+        nonEditableJTextArea.setFont(APP_SPACED_FONT);
+        nonEditableJTextArea.setWrapStyleWord(APP_WORD_WRAP_STYLE);
+        nonEditableJTextArea.setEditable(false);
+        return nonEditableJTextArea;
+    }
+
+    /**
+     * File choosers are slow to create, so each one is created on first use and then kept, which also keeps the
+     * directory it was last in.
+     */
+    private JFileChooser getOpenFileChooser() {
+        if (openFileChooserOptional.isEmpty()) {
+            final JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setCurrentDirectory(new File("."));
+            fileChooser.setFileFilter(new FileFilter() {
+                @Override
+                public boolean accept(@NonNull final File f) {
+                    return f.getName().toLowerCase().endsWith(".tsv")
+                            || f.getName().toLowerCase().endsWith(".csv")
+                            || f.isDirectory();
+                }
+
+                @Override
+                public String getDescription() {
+                    return "Tab-separated values (*.tsv) or Comma-separated values (*.csv)";
+                }
+            });
+            openFileChooserOptional = Optional.of(fileChooser);
+        }
+        return openFileChooserOptional.get();
+    }
+
+    private JFileChooser getSaveFileChooser() {
+        if (saveFileChooserOptional.isEmpty()) {
+            final JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setCurrentDirectory(new File("."));
+            fileChooser.setFileFilter(new FileFilter() {
+                @Override
+                public boolean accept(@NonNull final File f) {
+                    if (f.isDirectory()) {
+                        return true;
+                    }
+                    return DelimitedFileType.fromExportFile(f).isPresent();
+                }
+
+                @Override
+                public String getDescription() {
+                    return "CSV and TSV Files, optionally gzipped (*.csv, *.tsv, *.csv.gz, *.tsv.gz)";
+                }
+            });
+            saveFileChooserOptional = Optional.of(fileChooser);
+        }
+        return saveFileChooserOptional.get();
+    }
+
+    /**
+     * Logs the time from JVM start to the first frame, and exits right after it if
+     * {@value #EXIT_AFTER_FIRST_FRAME_PROPERTY} is set, as the startup benchmark and the class-data sharing training
+     * run do.
+     */
+    private static class FirstFrameListener extends WindowAdapter {
+        @Override
+        public void windowOpened(@NonNull final WindowEvent event) {
+            final long firstFrameMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            log.info("Showed the first frame {} ms after the JVM started", firstFrameMillis);
+            if (Boolean.getBoolean(EXIT_AFTER_FIRST_FRAME_PROPERTY)) {
+                System.out.println(FIRST_FRAME_PREFIX + firstFrameMillis);
+                System.exit(0);
+            }
+        }
+    }
+
+    /**
+     * Deletes the rows the last analysis moved to disk and the spilled status lines when the window is closed.
+     */
+    private class CloseSurveyListener extends WindowAdapter {
+        @Override
+        public void windowClosing(@NonNull final WindowEvent event) {
+            closeSurvey();
+            statusLog.close();
+        }
+    }
+
+    private class OpenFileListener implements ActionListener {
+        @Override
+        public void actionPerformed(@NonNull final ActionEvent ae) {
+            final JFileChooser fileChooser = getOpenFileChooser();
+            int result = fileChooser.showOpenDialog(DefaultGUI.this);
+            if (result == JFileChooser.APPROVE_OPTION) {
+                fileOptional = Optional.ofNullable(fileChooser.getSelectedFile());
+                if (fileOptional.isPresent()) {
+                    final File file = fileOptional.get();
+                    final long detectionStartNanos = System.nanoTime();
+                    charset = charsetDetector.detectCharset(file);
+                    charsetDetectionNanos = System.nanoTime() - detectionStartNanos;
+                    log.info("Selected file {}", file);
+                    appendStatusTextArea("Selected file " + file.getName());
+                }
+            }
+        }
+    }
+
+    private class SaveFileListener implements ActionListener {
+        @Override
+        public void actionPerformed(@NonNull final ActionEvent ae) {
+            if (surveyOptional.isPresent()) {
+                final JFileChooser fileChooser = getSaveFileChooser();
+                int result = fileChooser.showSaveDialog(DefaultGUI.this);
+                if (result == JFileChooser.APPROVE_OPTION) {
+                    final File fileToSave = fileChooser.getSelectedFile();
+                    final String fileToSaveName = fileToSave.getName();
+
+                    if (fileToSaveName.lastIndexOf(".") == -1) {
+                        log.error("Missing file extension (e.g. *.tsv or *.csv), was provided {}", fileToSaveName);
+                        DefaultGUI.appendStatusTextArea("Missing file extension (e.g. *.tsv or *.csv)!");
+                        return;
+                    }
+
+                    final Optional<DelimitedFileType> fileType = DelimitedFileType.fromExportFile(fileToSave);
+                    if (fileType.isEmpty()) {
+                        log.error("Invalid file extension (e.g. *.tsv or *.csv), was provided {}", fileToSaveName);
+                        DefaultGUI.appendStatusTextArea("Invalid file extension (e.g. *.tsv or *.csv)!");
+                        return;
+                    }
+
+                    final SurveyAnalysis survey = surveyOptional.get();
+                    final Optional<MismatchReport> mismatchReport = reportsCheckBox.isSelected()
+                            ? mismatchReportOptional
+                            : Optional.empty();
+                    final AnalysisMetrics metrics = metricsOptional.orElse(AnalysisMetrics.NONE);
+                    final Charset exportCharset = charset;
+                    startTask(new SurveyTask<File>("Saving", progressBar) {
+                        @Override
+                        protected File runTask() throws IOException {
+                            SurveyExporter.export(survey, fileToSave, fileType.get(), exportCharset);
+                            if (mismatchReport.isPresent()) {
+                                writeReports(mismatchReport.get(), metrics, fileToSave, fileType.get(),
+                                        exportCharset);
+                            }
+                            return fileToSave;
+                        }
+
+                        @Override
+                        protected void onSuccess(@NonNull final File savedFile) {
+                            lastSavedFileOptional = Optional.of(savedFile);
+                            appendStatusTextArea("Saved " + savedFile.getName());
+                        }
+
+                        @Override
+                        protected void onCancelled() {
+                            super.onCancelled();
+                            if (fileToSave.delete()) {
+                                log.info("Deleted partially written file {}", fileToSave);
+                            }
+                        }
+
+                        @Override
+                        protected void onFinished() {
+                            finishTask(this);
+                        }
+                    });
+                }
+            } else {
+                log.info("Must select and analyze a file before saving!");
+                DefaultGUI.appendStatusTextArea("Must select and analyze a file before saving!");
+            }
+        }
+    }
+
+    private class AnalyzeFileListener implements ActionListener {
+        @Override
+        public void actionPerformed(@NonNull final ActionEvent ee) {
+            final Optional<String> participantIdColumnOptional =
+                    Optional.ofNullable(participantIdColumnInputTextField.getText());
+            final Optional<String> firstRelevantColumnOptional =
+                    Optional.ofNullable(firstRelevantColumnInputTextField.getText());
+            final Optional<String> doubleEntryIdPrefixOptional =
+                    Optional.ofNullable(doubleEntryIdPrefixInputTextField.getText());
+
+            final boolean fileSelected = fileOptional.isPresent();
+            final boolean participantIdPresentAndNotBlank = participantIdColumnOptional.isPresent() &&
+                    !participantIdColumnOptional.get().isBlank();
+            final boolean firstRelevantColumnPresentAndNotBlank = firstRelevantColumnOptional.isPresent() &&
+                    !firstRelevantColumnOptional.get().isBlank();
+            final boolean doubleEntryIdPrefixPresentAndNotBlank = doubleEntryIdPrefixOptional.isPresent() &&
+                    !doubleEntryIdPrefixOptional.get().isBlank();
+
+            if (fileSelected && participantIdPresentAndNotBlank && firstRelevantColumnPresentAndNotBlank &&
+                    doubleEntryIdPrefixPresentAndNotBlank) {
+                final Optional<Integer> participantIdColumnNum = decipherColumn(participantIdColumnOptional.get());
+                final Optional<Integer> firstRelevantColumnNum = decipherColumn(firstRelevantColumnOptional.get());
+
+                final Optional<List<ColumnRule>> columnRules = parseColumnRules(columnRulesInputTextField.getText());
+                final boolean pairingNamed = PairingStrategy.isNamed(doubleEntryIdPrefixOptional.get());
+                final Optional<PairingStrategy> pairingStrategy = pairingNamed
+                        ? parsePairingStrategy(doubleEntryIdPrefixOptional.get())
+                        : Optional.empty();
+
+                if (participantIdColumnNum.isPresent() && firstRelevantColumnNum.isPresent() &&
+                        columnRules.isPresent() && (!pairingNamed || pairingStrategy.isPresent())) {
+                    final File file = fileOptional.get();
+                    final List<String> entryIdPrefixes = pairingNamed
+                            ? List.of("")
+                            : parseEntryIdPrefixes(doubleEntryIdPrefixOptional.get());
+                    final AnalysisMetrics metrics = new AnalysisMetrics();
+                    metrics.record(AnalysisStage.CHARSET_DETECTION, charsetDetectionNanos, 1, 0);
+                    final SurveyOptions options = SurveyOptions.builder()
+                            .participantIdColumn(participantIdColumnNum.get())
+                            .firstRelevantColumn(firstRelevantColumnNum.get())
+                            .doubleEntryIdPrefix(entryIdPrefixes.get(0))
+                            .additionalEntryIdPrefixes(entryIdPrefixes.subList(1, entryIdPrefixes.size()))
+                            .pairingStrategy(pairingStrategy)
+                            .charset(charset)
+                            .comparisonThreads((Integer) comparisonThreadsSpinner.getValue())
+                            .exportOrder((ExportOrder) exportOrderComboBox.getSelectedItem())
+                            .columnRules(columnRules.get())
+                            .comparisonCacheFile(incrementalCheckBox.isSelected()
+                                    ? Optional.of(ComparisonCache.defaultFileFor(file))
+                                    : Optional.empty())
+                            .snapshotFile(snapshotCheckBox.isSelected()
+                                    ? Optional.of(SurveySnapshot.defaultFileFor(file))
+                                    : Optional.empty())
+                            .metrics(metrics)
+                            .build();
+                    final boolean dictionaryEncoded = dictionaryEncodingCheckBox.isSelected() &&
+                            DictionaryEncodedSurvey.supports(charset) && !options.isConsensus() &&
+                            options.isPairedByPrefix();
+                    if (dictionaryEncodingCheckBox.isSelected() && !options.isPairedByPrefix()) {
+                        appendStatusTextArea("Dictionary encoding is not supported with this pairing, loading as " +
+                                "text.");
+                    } else if (dictionaryEncodingCheckBox.isSelected() && options.isConsensus()) {
+                        appendStatusTextArea("Dictionary encoding is not supported with several prefixes, " +
+                                "loading as text.");
+                    } else if (dictionaryEncodingCheckBox.isSelected() && !dictionaryEncoded) {
+                        appendStatusTextArea("Dictionary encoding is not supported for " + charset +
+                                ", loading as text.");
+                    }
+                    closeSurvey();
+                    mismatchReportOptional = Optional.empty();
+                    metricsOptional = Optional.empty();
+                    final MismatchReport mismatchReport = new MismatchReport();
+                    final ComparisonResults results = new ComparisonResults();
+                    resultsPanelOptional.ifPresent(ResultsPanel::clear);
+                    informationTabbedPane.setSelectedIndex(informationTabbedPane.indexOfTab(STATUS_TAB));
+                    if (writeAfterAnalyzeCheckBox.isSelected() && lastSavedFileOptional.isPresent()) {
+                        startTask(createWriteThroughTask(file, options, dictionaryEncoded, mismatchReport, results,
+                                metrics, lastSavedFileOptional.get()));
+                    } else {
+                        if (writeAfterAnalyzeCheckBox.isSelected()) {
+                            appendStatusTextArea("Save once to choose the file later analyses are written to.");
+                        }
+                        startTask(new SurveyTask<SurveyAnalysis>("Analyzing", progressBar) {
+                            /**
+                             * The analyzed survey, closed if the task is cancelled after the analysis finished.
+                             */
+                            private SurveyAnalysis analyzedSurvey;
+
+                            @Override
+                            protected SurveyAnalysis runTask() {
+                                final ComparisonListener listener = CompositeComparisonListener.of(
+                                        List.of(new StatusPanelComparisonListener(), mismatchReport, results));
+                                final SurveyAnalysis survey = dictionaryEncoded
+                                        ? new DictionaryEncodedSurvey(file, options, listener, this)
+                                        : new QualtricsSurvey(file, options, listener, this);
+                                synchronized (this) {
+                                    if (isCancelled()) {
+                                        survey.close();
+                                        throw new CancellationException("Analysis was cancelled");
+                                    }
+                                    analyzedSurvey = survey;
+                                }
+                                return survey;
+                            }
+
+                            @Override
+                            protected void onCancelled() {
+                                super.onCancelled();
+                                synchronized (this) {
+                                    if (analyzedSurvey != null) {
+                                        analyzedSurvey.close();
+                                    }
+                                }
+                            }
+
+                            @Override
+                            protected void onSuccess(@NonNull final SurveyAnalysis survey) {
+                                surveyOptional = Optional.of(survey);
+                                mismatchReportOptional = Optional.of(mismatchReport);
+                                metricsOptional = Optional.of(metrics);
+                                metrics.describe().forEach(DefaultGUI::appendStatusTextArea);
+                                showResults(results);
+                            }
+
+                            @Override
+                            protected void onFinished() {
+                                finishTask(this);
+                            }
+                        });
+                    }
+                }
+            } else {
+                log.info("One or more of the required inputs were blank: {}, {}, {}, {}", fileOptional,
+                        participantIdColumnOptional, firstRelevantColumnOptional, doubleEntryIdPrefixOptional);
+                if (!fileSelected) {
+                    appendStatusTextArea("Missing File Selection!");
+                }
+                if (!participantIdPresentAndNotBlank) {
+                    appendStatusTextArea("Missing Participant ID!");
+                }
+                if (!firstRelevantColumnPresentAndNotBlank) {
+                    appendStatusTextArea("Missing First Relevant Column!");
+                }
+                if (!doubleEntryIdPrefixPresentAndNotBlank) {
+                    appendStatusTextArea("Missing Double-Entry ID Prefix!");
+                }
+            }
+        }
+
+        /**
+         * Writes the export rows to {@code fileToSave} while the pairs are compared, so the analysis is not kept for
+         * the Save button.
+         */
+        private SurveyTask<File> createWriteThroughTask(@NonNull final File file, @NonNull final SurveyOptions options,
+                                                        final boolean dictionaryEncoded,
+                                                        @NonNull final MismatchReport mismatchReport,
+                                                        @NonNull final ComparisonResults results,
+                                                        @NonNull final AnalysisMetrics metrics,
+                                                        @NonNull final File fileToSave) {
+            final DelimitedFileType fileType = DelimitedFileType.fromExportFile(fileToSave).orElseThrow();
+            final Charset exportCharset = charset;
+            final boolean saveReports = reportsCheckBox.isSelected();
+            return new SurveyTask<File>("Analyzing", progressBar) {
+                @Override
+                protected File runTask() throws IOException {
+                    final ComparisonListener listener = CompositeComparisonListener.of(
+                            List.of(new StatusPanelComparisonListener(), mismatchReport, results));
+                    if (dictionaryEncoded) {
+                        SurveyExporter.export(new DictionaryEncodedSurvey(file, options, listener, this), fileToSave,
+                                fileType, exportCharset);
+                    } else {
+                        SurveyExporter.exportWhileAnalyzing(fileToSave, fileType, exportCharset, writer ->
+                                new QualtricsSurvey(file, options, listener, this, writer));
+                    }
+                    if (saveReports) {
+                        writeReports(mismatchReport, metrics, fileToSave, fileType, exportCharset);
+                    }
+                    return fileToSave;
+                }
+
+                @Override
+                protected void onSuccess(@NonNull final File savedFile) {
+                    metrics.describe().forEach(DefaultGUI::appendStatusTextArea);
+                    appendStatusTextArea("Saved " + savedFile.getName());
+                    showResults(results);
+                }
+
+                @Override
+                protected void onFinished() {
+                    finishTask(this);
+                }
+            };
+        }
+    }
+
+    /**
+     * Writes the mismatch, summary and metrics reports of an analysis next to its saved export. Metrics are always
+     * written as CSV.
+     */
+    private static void writeReports(@NonNull final MismatchReport mismatchReport,
+                                     @NonNull final AnalysisMetrics metrics, @NonNull final File exportFile,
+                                     @NonNull final DelimitedFileType fileType, @NonNull final Charset charset)
+            throws IOException {
+        SurveyExporter.writeReport(SurveyExporter.reportFileFor(exportFile, fileType, MISMATCHES_REPORT_SUFFIX),
+                fileType, charset, mismatchReport::writeMismatches);
+        SurveyExporter.writeReport(SurveyExporter.reportFileFor(exportFile, fileType, SUMMARY_REPORT_SUFFIX),
+                fileType, charset, mismatchReport::writeSummary);
+        MetricsFormat.CSV.write(metrics, SurveyExporter.reportFileFor(exportFile, DelimitedFileType.CSV,
+                METRICS_REPORT_SUFFIX));
+    }
+
+    private class CancelTaskListener implements ActionListener {
+        @Override
+        public void actionPerformed(@NonNull final ActionEvent ae) {
+            runningTaskOptional.ifPresent(task -> {
+                log.info("Cancelling the running task");
+                task.cancel(true);
+            });
+        }
+    }
+}
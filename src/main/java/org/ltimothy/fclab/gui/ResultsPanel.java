@@ -0,0 +1,190 @@
+package org.ltimothy.fclab.gui;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntPredicate;
+
+/**
+ * Results view with one table row per compared pair and mismatching cells highlighted. The table only renders visible
+ * rows; filtering to mismatches or to one column and sorting by a clicked column header are computed by a background
+ * worker, and a newer request replaces the view of an older one that is still running.
+ */
+@Slf4j
+class ResultsPanel extends JPanel {
+    private static final String ALL_COLUMNS = "All Columns";
+    private static final Color MISMATCH_COLOR = new Color(255, 204, 204);
+    private static final int MAX_FITTED_COLUMNS = 8;
+    private static final int EXPORT_COLUMN_WIDTH = 150;
+
+    private final ResultsTableModel tableModel;
+    private final JTable table;
+    private final JCheckBox mismatchesOnlyCheckBox;
+    private final JComboBox<String> columnFilterComboBox;
+    private final JLabel viewLabel;
+    private OptionalInt sortColumn;
+    private boolean sortAscending;
+    private boolean updatingFilters;
+    private Optional<SwingWorker<int[], Void>> viewWorkerOptional;
+
+    ResultsPanel(@NonNull final Font font) {
+        super(new BorderLayout());
+        this.tableModel = new ResultsTableModel();
+        this.table = new JTable(tableModel);
+        this.mismatchesOnlyCheckBox = new JCheckBox("Mismatches Only");
+        this.columnFilterComboBox = new JComboBox<>(new String[]{ALL_COLUMNS});
+        this.viewLabel = new JLabel();
+        this.sortColumn = OptionalInt.empty();
+        this.sortAscending = true;
+        this.viewWorkerOptional = Optional.empty();
+
+        table.setFont(font);
+        table.setFillsViewportHeight(true);
+        table.setDefaultRenderer(String.class, new MismatchCellRenderer());
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().addMouseListener(new SortColumnListener());
+        mismatchesOnlyCheckBox.setFont(font);
+        mismatchesOnlyCheckBox.addActionListener(action -> refreshView());
+        columnFilterComboBox.setFont(font);
+        columnFilterComboBox.addActionListener(action -> {
+            if (!updatingFilters) {
+                refreshView();
+            }
+        });
+        viewLabel.setFont(font);
+
+        final JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(mismatchesOnlyCheckBox);
+        filterPanel.add(columnFilterComboBox);
+        filterPanel.add(viewLabel);
+        add(filterPanel, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+    }
+
+    /**
+     * Shows the pairs of a finished analysis, unsorted and filtered to all columns. Mismatches Only stays as selected.
+     */
+    void showResults(@NonNull final ComparisonResults results) {
+        updatingFilters = true;
+        columnFilterComboBox.removeAllItems();
+        columnFilterComboBox.addItem(ALL_COLUMNS);
+        tableModel.setResults(results);
+        for (int column = ResultsTableModel.MISMATCHES_COLUMN + 1; column < tableModel.getColumnCount(); column++) {
+            columnFilterComboBox.addItem(tableModel.getColumnName(column));
+            table.getColumnModel().getColumn(column).setPreferredWidth(EXPORT_COLUMN_WIDTH);
+        }
+        updatingFilters = false;
+        table.setAutoResizeMode(tableModel.getColumnCount() > MAX_FITTED_COLUMNS
+                ? JTable.AUTO_RESIZE_OFF
+                : JTable.AUTO_RESIZE_SUBSEQUENT_COLUMNS);
+        sortColumn = OptionalInt.empty();
+        refreshView();
+    }
+
+    void clear() {
+        showResults(new ComparisonResults());
+    }
+
+    private void refreshView() {
+        viewWorkerOptional.ifPresent(worker -> worker.cancel(true));
+        final ComparisonResults results = tableModel.getResults();
+        final int filterIndex = Math.max(0, columnFilterComboBox.getSelectedIndex());
+        final OptionalInt exportColumn = filterIndex == 0 ? OptionalInt.empty() :
+                tableModel.exportColumn(ResultsTableModel.MISMATCHES_COLUMN + filterIndex);
+        final IntPredicate filter = ResultsTableModel.pairFilter(results, mismatchesOnlyCheckBox.isSelected(),
+                exportColumn);
+        final Optional<Comparator<Integer>> order = sortColumn.isPresent()
+                ? Optional.of(tableModel.pairOrder(sortColumn.getAsInt(), sortAscending))
+                : Optional.empty();
+        viewLabel.setText("Filtering...");
+
+        final SwingWorker<int[], Void> worker = new SwingWorker<>() {
+            @Override
+            protected int[] doInBackground() {
+                return ResultsTableModel.computeView(results, filter, order);
+            }
+
+            @Override
+            protected void done() {
+                if (viewWorkerOptional.isEmpty() || viewWorkerOptional.get() != this || isCancelled()) {
+                    return;
+                }
+                try {
+                    final int[] view = get();
+                    tableModel.setView(view);
+                    viewLabel.setText("Showing " + view.length + " of " + results.getPairCount() + " pairs" +
+                            describeSort());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final CancellationException | ExecutionException e) {
+                    log.error("Exception in filtering the results table", e);
+                    viewLabel.setText("Could not filter the results");
+                }
+                viewWorkerOptional = Optional.empty();
+            }
+        };
+        viewWorkerOptional = Optional.of(worker);
+        worker.execute();
+    }
+
+    private String describeSort() {
+        if (sortColumn.isEmpty()) {
+            return "";
+        }
+        return ", sorted by " + tableModel.getColumnName(sortColumn.getAsInt()) +
+                (sortAscending ? " (ascending)" : " (descending)");
+    }
+
+    private class SortColumnListener extends MouseAdapter {
+        @Override
+        public void mouseClicked(@NonNull final MouseEvent event) {
+            final int column = table.convertColumnIndexToModel(table.getTableHeader().columnAtPoint(event.getPoint()));
+            if (column < 0) {
+                return;
+            }
+            if (sortColumn.isPresent() && sortColumn.getAsInt() == column) {
+                sortAscending = !sortAscending;
+            } else {
+                sortColumn = OptionalInt.of(column);
+                sortAscending = true;
+            }
+            refreshView();
+        }
+    }
+
+    private class MismatchCellRenderer extends DefaultTableCellRenderer {
+        @Override
+        public Component getTableCellRendererComponent(@NonNull final JTable renderedTable, final Object value,
+                                                       final boolean isSelected, final boolean hasFocus,
+                                                       final int row, final int column) {
+            final Component component = super.getTableCellRendererComponent(renderedTable, value, isSelected,
+                    hasFocus, row, column);
+            if (!isSelected) {
+                component.setBackground(tableModel.isMismatch(row, renderedTable.convertColumnIndexToModel(column))
+                        ? MISMATCH_COLOR
+                        : renderedTable.getBackground());
+            }
+            return component;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.ltimothy.fclab.gui;
+
+import lombok.NonNull;
+import org.ltimothy.fclab.data.ColumnIdentifiers;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Table of compared pairs with one row per pair: the participant ID, the number of mismatches and one column per export
+ * column that mismatched in any pair. Cells are computed from {@link ComparisonResults} when the table paints them, so
+ * only visible rows cost anything. The rows shown are a view of pair numbers which is filtered and sorted off the event
+ * dispatch thread by {@link #computeView} and then swapped in.
+ */
+final class ResultsTableModel extends AbstractTableModel {
+    static final int PARTICIPANT_ID_COLUMN = 0;
+    static final int MISMATCHES_COLUMN = 1;
+    private static final int FIRST_EXPORT_COLUMN = 2;
+    private static final String VALUE_SEPARATOR = " / ";
+
+    private ComparisonResults results;
+    private int[] exportColumns;
+    private String[] exportColumnNames;
+    private int[] view;
+
+    ResultsTableModel() {
+        this.results = new ComparisonResults();
+        this.exportColumns = new int[0];
+        this.exportColumnNames = new String[0];
+        this.view = new int[0];
+    }
+
+    /**
+     * Shows the pairs of a finished analysis, starting with an empty view.
+     */
+    void setResults(@NonNull final ComparisonResults comparisonResults) {
+        final Map<Integer, String> headers = comparisonResults.getMismatchedColumnHeaders();
+        results = comparisonResults;
+        exportColumns = headers.keySet().stream().mapToInt(Integer::intValue).toArray();
+        exportColumnNames = headers.entrySet().stream()
+                .map(header -> ColumnIdentifiers.toColumnIdentifier(header.getKey()) + " " + header.getValue())
+                .toArray(String[]::new);
+        view = new int[0];
+        fireTableStructureChanged();
+    }
+
+    void setView(@NonNull final int[] pairs) {
+        view = pairs;
+        fireTableDataChanged();
+    }
+
+    ComparisonResults getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the export column shown in a table column, if it shows one.
+     */
+    OptionalInt exportColumn(final int column) {
+        return column < FIRST_EXPORT_COLUMN ? OptionalInt.empty() :
+                OptionalInt.of(exportColumns[column - FIRST_EXPORT_COLUMN]);
+    }
+
+    boolean isMismatch(final int row, final int column) {
+        return column >= FIRST_EXPORT_COLUMN && results.findMismatch(view[row],
+                exportColumns[column - FIRST_EXPORT_COLUMN]) != ComparisonResults.MISSING;
+    }
+
+    @Override
+    public int getRowCount() {
+        return view.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return FIRST_EXPORT_COLUMN + exportColumns.length;
+    }
+
+    @Override
+    public String getColumnName(final int column) {
+        switch (column) {
+            case PARTICIPANT_ID_COLUMN:
+                return "Participant ID";
+            case MISMATCHES_COLUMN:
+                return "Mismatches";
+            default:
+                return exportColumnNames[column - FIRST_EXPORT_COLUMN];
+        }
+    }
+
+    @Override
+    public Class<?> getColumnClass(final int column) {
+        return column == MISMATCHES_COLUMN ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(final int row, final int column) {
+        final int pair = view[row];
+        switch (column) {
+            case PARTICIPANT_ID_COLUMN:
+                return results.participantId(pair);
+            case MISMATCHES_COLUMN:
+                return results.mismatchCount(pair);
+            default:
+                return cellValue(results, pair, exportColumns[column - FIRST_EXPORT_COLUMN]);
+        }
+    }
+
+    /**
+     * Keeps pairs with at least one mismatch, or with a mismatch in the given export column.
+     */
+    static IntPredicate pairFilter(@NonNull final ComparisonResults results, final boolean mismatchesOnly,
+                                   @NonNull final OptionalInt exportColumn) {
+        if (exportColumn.isPresent()) {
+            return pair -> results.findMismatch(pair, exportColumn.getAsInt()) != ComparisonResults.MISSING;
+        }
+        return mismatchesOnly ? pair -> results.mismatchCount(pair) > 0 : pair -> true;
+    }
+
+    /**
+     * Orders pairs by the value shown in a table column, with matching cells after mismatching ones.
+     */
+    Comparator<Integer> pairOrder(final int column, final boolean ascending) {
+        final ComparisonResults sortedResults = results;
+        final Comparator<Integer> order;
+        if (column == PARTICIPANT_ID_COLUMN) {
+            order = Comparator.comparing(sortedResults::participantId, String.CASE_INSENSITIVE_ORDER);
+        } else if (column == MISMATCHES_COLUMN) {
+            order = Comparator.comparingInt(sortedResults::mismatchCount);
+        } else {
+            final int exportColumn = exportColumns[column - FIRST_EXPORT_COLUMN];
+            final Comparator<String> values = ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+            return Comparator.comparing(pair -> cellValue(sortedResults, pair, exportColumn),
+                    Comparator.nullsLast(values));
+        }
+        return ascending ? order : order.reversed();
+    }
+
+    /**
+     * Runs on a background thread; the results of a finished analysis are no longer written to.
+     */
+    static int[] computeView(@NonNull final ComparisonResults results, @NonNull final IntPredicate filter,
+                             @NonNull final Optional<Comparator<Integer>> order) {
+        final IntStream pairs = IntStream.range(0, results.getPairCount()).filter(filter);
+        if (order.isEmpty()) {
+            return pairs.toArray();
+        }
+        return pairs.boxed().sorted(order.get()).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String cellValue(@NonNull final ComparisonResults results, final int pair,
+                                    final int exportColumn) {
+        final int mismatch = results.findMismatch(pair, exportColumn);
+        if (mismatch == ComparisonResults.MISSING) {
+            return null;
+        }
+        return results.originalValue(mismatch) + VALUE_SEPARATOR + results.doubleEntryValue(mismatch);
+    }
+}
@@ -0,0 +1,175 @@
+package org.ltimothy.fclab.gui;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Status sink for the status panel. Messages may be appended from any thread; they are queued without locking and
+ * flushed onto the text area in one batch per timer tick, so bursts of messages cost one repaint rather than one event
+ * per line. The text area keeps only the most recent lines, older lines are spilled to a temporary log file which is
+ * deleted when the status log is closed.
+ */
+@Slf4j
+class StatusLog {
+    static final int DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    static final int DEFAULT_MAX_VISIBLE_LINES = 5000;
+    private static final String SPILL_FILE_PREFIX = "double-entry-status-";
+    private static final String SPILL_FILE_SUFFIX = ".log";
+    private static final String NEWLINE = "\n";
+
+    private final JTextArea textArea;
+    private final int maxVisibleLines;
+    private final Queue<String> pendingLines;
+    private final Deque<String> visibleLines;
+    private final Timer flushTimer;
+
+    private Path spillFile;
+    private BufferedWriter spillWriter;
+    private boolean spillFailed;
+    private boolean closed;
+
+    StatusLog(@NonNull final JTextArea textArea) {
+        this(textArea, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MAX_VISIBLE_LINES);
+    }
+
+    StatusLog(@NonNull final JTextArea textArea, final int flushIntervalMillis, final int maxVisibleLines) {
+        this.textArea = textArea;
+        this.maxVisibleLines = maxVisibleLines;
+        this.pendingLines = new ConcurrentLinkedQueue<>();
+        this.visibleLines = new ArrayDeque<>();
+        this.flushTimer = new Timer(flushIntervalMillis, event -> flush());
+        this.flushTimer.setCoalesce(true);
+    }
+
+    void start() {
+        flushTimer.start();
+    }
+
+    /**
+     * Queues a status line, safe to call from any thread.
+     */
+    void append(@NonNull final String statusUpdate) {
+        pendingLines.add(statusUpdate.endsWith(NEWLINE) ? statusUpdate : statusUpdate.concat(NEWLINE));
+    }
+
+    /**
+     * Drops queued and visible lines and shows the given text instead, safe to call from any thread.
+     */
+    void reset(@NonNull final String statusText) {
+        SwingUtilities.invokeLater(() -> {
+            pendingLines.clear();
+            visibleLines.clear();
+            textArea.setText("");
+            if (!statusText.isEmpty()) {
+                append(statusText);
+            }
+        });
+    }
+
+    /**
+     * Stops flushing, closes the spill file and deletes it. Call on the event dispatch thread when the window closes.
+     */
+    void close() {
+        flushTimer.stop();
+        closed = true;
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (final IOException e) {
+                log.debug("Could not close the spilled status lines {}", spillFile, e);
+            }
+            spillWriter = null;
+        }
+        if (spillFile != null) {
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (final IOException e) {
+                log.warn("Could not delete the spilled status lines {}", spillFile, e);
+            }
+            spillFile = null;
+        }
+    }
+
+    private void flush() {
+        if (closed || pendingLines.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder batch = new StringBuilder();
+        int batchLines = 0;
+        String line;
+        while ((line = pendingLines.poll()) != null) {
+            visibleLines.addLast(line);
+            batch.append(line);
+            batchLines++;
+        }
+
+        int evictedLength = 0;
+        while (visibleLines.size() > maxVisibleLines) {
+            final String evictedLine = visibleLines.removeFirst();
+            evictedLength += evictedLine.length();
+            spill(evictedLine);
+        }
+        flushSpill();
+
+        final int documentLength = textArea.getDocument().getLength();
+        if (evictedLength >= documentLength) {
+            // Everything currently shown is evicted, only the tail of this batch stays visible.
+            final int batchOffset = evictedLength - documentLength;
+            textArea.setText(batch.substring(batchOffset));
+        } else {
+            try {
+                textArea.getDocument().remove(0, evictedLength);
+            } catch (final BadLocationException e) {
+                log.warn("Could not trim the status panel", e);
+            }
+            textArea.append(batch.toString());
+        }
+        log.debug("Appended {} lines to status panel", batchLines);
+    }
+
+    private void spill(@NonNull final String line) {
+        if (spillFailed) {
+            return;
+        }
+        try {
+            if (spillWriter == null) {
+                spillFile = Files.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX);
+                spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+                log.info("Spilling older status lines to {}", spillFile);
+                pendingLines.add("Older status lines are saved to " + spillFile + " until the window is closed" +
+                        NEWLINE);
+            }
+            spillWriter.write(line);
+        } catch (final IOException e) {
+            log.warn("Could not spill status lines, older lines will be discarded", e);
+            spillFailed = true;
+        }
+    }
+
+    private void flushSpill() {
+        if (spillWriter == null || spillFailed) {
+            return;
+        }
+        try {
+            spillWriter.flush();
+        } catch (final IOException e) {
+            log.warn("Could not flush spilled status lines", e);
+            spillFailed = true;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.ltimothy.fclab.gui;
+
+import lombok.NonNull;
+import org.ltimothy.fclab.listener.TextComparisonListener;
+
+/**
+ * Renders comparison events into the status panel. Compared pairs and their mismatches are shown in the results table
+ * instead, so only warnings and the summary become status lines.
+ */
+public class StatusPanelComparisonListener extends TextComparisonListener {
+    public StatusPanelComparisonListener() {
+        super(DefaultGUI::appendStatusTextArea);
+    }
+
+    @Override
+    public void pairStarted(@NonNull final String participantId) {
+    }
+
+    @Override
+    public void mismatchFound(@NonNull final String participantId, final int columnIndex,
+                              @NonNull final String columnHeader, @NonNull final String originalValue,
+                              @NonNull final String doubleEntryValue) {
+    }
+}
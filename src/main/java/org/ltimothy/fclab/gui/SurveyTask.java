@@ -0,0 +1,102 @@
+package org.ltimothy.fclab.gui;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.data.AnalysisStage;
+import org.ltimothy.fclab.data.ProgressListener;
+
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs analysis or export work off the event dispatch thread, forwarding progress to a progress bar. Cancelling the
+ * task interrupts the worker thread, which the survey classes check between rows.
+ */
+@Slf4j
+abstract class SurveyTask<T> extends SwingWorker<T, String> implements ProgressListener {
+    private static final String PROGRESS_PROPERTY = "progress";
+    private static final int PERCENT = 100;
+
+    private final String description;
+    private final JProgressBar progressBar;
+
+    SurveyTask(@NonNull final String description, @NonNull final JProgressBar progressBar) {
+        this.description = description;
+        this.progressBar = progressBar;
+        addPropertyChangeListener(event -> {
+            if (PROGRESS_PROPERTY.equals(event.getPropertyName())) {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue((Integer) event.getNewValue());
+            }
+        });
+    }
+
+    protected abstract T runTask() throws Exception;
+
+    protected abstract void onSuccess(T result);
+
+    protected abstract void onFinished();
+
+    protected void onCancelled() {
+        DefaultGUI.appendStatusTextArea(description + " was cancelled.");
+    }
+
+    protected void onFailure(@NonNull final Throwable cause) {
+        log.error("Exception in background task {}", description, cause);
+        DefaultGUI.appendStatusTextArea(cause.getMessage() == null ? cause.toString() : cause.getMessage());
+    }
+
+    void start() {
+        progressBar.setValue(0);
+        progressBar.setIndeterminate(true);
+        progressBar.setString(description + "...");
+        execute();
+    }
+
+    @Override
+    public void onProgress(@NonNull final AnalysisStage stage, final long completed, final long total) {
+        if (total > 0) {
+            setProgress((int) Math.min(PERCENT, completed * PERCENT / total));
+            publish(stage.getVerb() + " " + completed + " of " + total + " " + stage.getUnit());
+        } else {
+            publish(stage.getVerb() + " " + completed + " " + stage.getUnit());
+        }
+    }
+
+    @Override
+    protected final T doInBackground() throws Exception {
+        return runTask();
+    }
+
+    @Override
+    protected void process(@NonNull final List<String> chunks) {
+        progressBar.setString(chunks.get(chunks.size() - 1));
+    }
+
+    @Override
+    protected final void done() {
+        try {
+            onSuccess(get());
+            progressBar.setString(description + " complete");
+        } catch (final CancellationException e) {
+            onCancelled();
+            progressBar.setString(description + " cancelled");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                onCancelled();
+                progressBar.setString(description + " cancelled");
+            } else {
+                onFailure(e.getCause());
+                progressBar.setString(description + " failed");
+            }
+        } finally {
+            progressBar.setIndeterminate(false);
+            onFinished();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package org.ltimothy.fclab.handler;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.cli.CommandLineArguments;
+import org.ltimothy.fclab.cli.InputFiles;
+import org.ltimothy.fclab.data.AnalysisMetrics;
+import org.ltimothy.fclab.data.AnalysisStage;
+import org.ltimothy.fclab.data.CharsetDetector;
+import org.ltimothy.fclab.data.ColumnIdentifiers;
+import org.ltimothy.fclab.data.ComparisonCache;
+import org.ltimothy.fclab.data.DelimitedFileType;
+import org.ltimothy.fclab.data.DictionaryEncodedSurvey;
+import org.ltimothy.fclab.data.MetricsFormat;
+import org.ltimothy.fclab.data.ProgressListener;
+import org.ltimothy.fclab.data.QualtricsSurvey;
+import org.ltimothy.fclab.data.StreamingQualtricsSurvey;
+import org.ltimothy.fclab.data.SurveyAnalysis;
+import org.ltimothy.fclab.data.SurveyExporter;
+import org.ltimothy.fclab.data.SurveyOptions;
+import org.ltimothy.fclab.data.SurveySnapshot;
+import org.ltimothy.fclab.listener.ComparisonListener;
+import org.ltimothy.fclab.listener.CompositeComparisonListener;
+import org.ltimothy.fclab.listener.CountingComparisonListener;
+import org.ltimothy.fclab.listener.DataQualityReport;
+import org.ltimothy.fclab.listener.JsonLinesComparisonListener;
+import org.ltimothy.fclab.listener.MismatchReport;
+import org.ltimothy.fclab.listener.TextComparisonListener;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@Slf4j
+public class BatchHandler {
+    public static final int EXIT_SUCCESS = 0;
+    public static final int EXIT_FAILURE = 1;
+    private static final String OUTPUT_SUFFIX = "_validated";
+    private static final String EVENTS_SUFFIX = "_events.jsonl";
+    private static final String MISMATCHES_SUFFIX = "_mismatches";
+    private static final String SUMMARY_SUFFIX = "_summary";
+    private static final String METRICS_SUFFIX = "_metrics";
+    private static final String ISSUES_SUFFIX = "_issues";
+    private static final List<String> REPORT_SUFFIXES =
+            List.of(MISMATCHES_SUFFIX, SUMMARY_SUFFIX, METRICS_SUFFIX, ISSUES_SUFFIX);
+
+    private final CharsetDetector charsetDetector;
+    private final PrintStream console;
+
+    @Inject
+    public BatchHandler(final CharsetDetector charsetDetector, final PrintStream console) {
+        this.charsetDetector = charsetDetector;
+        this.console = console;
+    }
+
+    public int run(@NonNull final CommandLineArguments arguments) {
+        if (arguments.isHelp()) {
+            console.println(CommandLineArguments.USAGE);
+            return EXIT_SUCCESS;
+        }
+
+        final Optional<Integer> participantIdColumn =
+                ColumnIdentifiers.toColumnIndex(arguments.getParticipantIdColumn());
+        final Optional<Integer> firstRelevantColumn =
+                ColumnIdentifiers.toColumnIndex(arguments.getFirstRelevantColumn());
+        if (participantIdColumn.isEmpty() || firstRelevantColumn.isEmpty()) {
+            console.println("Invalid column input " + arguments.getParticipantIdColumn() + ", " +
+                    arguments.getFirstRelevantColumn());
+            return EXIT_FAILURE;
+        }
+
+        final List<File> inputFiles;
+        try {
+            inputFiles = InputFiles.resolve(arguments.getInputs());
+        } catch (final IOException e) {
+            log.error("Exception in resolving inputs {}", arguments.getInputs(), e);
+            console.println("Could not resolve inputs " + arguments.getInputs() + ": " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+        if (inputFiles.isEmpty()) {
+            console.println("No *.csv or *.tsv files matched " + arguments.getInputs());
+            return EXIT_FAILURE;
+        }
+        if (!arguments.getMergedInputs().isEmpty() && inputFiles.size() > 1) {
+            console.println("--merge and --double-entries require a single input but " + arguments.getInputs() +
+                    " matched " + inputFiles.size() + " files");
+            return EXIT_FAILURE;
+        }
+
+        final Optional<File> outputDirectory;
+        if (arguments.getOutput().isPresent() && inputFiles.size() > 1) {
+            final File directory = new File(arguments.getOutput().get());
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                console.println("Could not create output directory " + directory);
+                return EXIT_FAILURE;
+            }
+            outputDirectory = Optional.of(directory);
+        } else {
+            outputDirectory = Optional.empty();
+        }
+
+        int failures = 0;
+        for (final File inputFile : inputFiles) {
+            final File uncompressedOutputFile = arguments.getOutput().isPresent() && outputDirectory.isEmpty()
+                    ? new File(arguments.getOutput().get())
+                    : getDefaultOutputFile(inputFile, outputDirectory);
+            final File outputFile = arguments.isGzip()
+                    ? SurveyExporter.compressed(uncompressedOutputFile)
+                    : uncompressedOutputFile;
+            final AnalysisMetrics metrics = arguments.getMetricsFormat().isPresent()
+                    ? new AnalysisMetrics()
+                    : AnalysisMetrics.NONE;
+            if (!processFile(inputFile, outputFile, participantIdColumn.get(), firstRelevantColumn.get(), arguments,
+                    metrics)) {
+                failures++;
+            }
+        }
+
+        console.println("Processed " + (inputFiles.size() - failures) + " of " + inputFiles.size() + " file(s).");
+        return failures == 0 ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+
+    /**
+     * Validates one export and writes its output and reports, printing its status prefixed with the input file name.
+     * Also used by the {@link ValidationDaemon}, whose workers call this for different files at the same time.
+     */
+    boolean processFile(@NonNull final File inputFile, @NonNull final File outputFile,
+                        final int participantIdColumn, final int firstRelevantColumn,
+                        @NonNull final CommandLineArguments arguments, @NonNull final AnalysisMetrics metrics) {
+        final Optional<DelimitedFileType> inputFileType = DelimitedFileType.fromFile(inputFile);
+        final Optional<DelimitedFileType> outputFileType = DelimitedFileType.fromExportFile(outputFile);
+        if (inputFileType.isEmpty() || !inputFile.isFile()) {
+            console.println("[" + inputFile + "] Not a *.csv or *.tsv file, skipping.");
+            return false;
+        }
+        if (outputFileType.isEmpty()) {
+            console.println("[" + inputFile + "] Invalid output file extension (e.g. *.tsv or *.csv) " + outputFile);
+            return false;
+        }
+
+        final Consumer<String> statusConsumer = status -> console.println("[" + inputFile.getName() + "] " + status);
+        final CountingComparisonListener countingListener = new CountingComparisonListener();
+        final List<ComparisonListener> listeners = new ArrayList<>();
+        listeners.add(countingListener);
+        if (!arguments.isQuiet()) {
+            listeners.add(new TextComparisonListener(statusConsumer));
+        }
+        final Optional<MismatchReport> mismatchReport = arguments.isMismatches() || arguments.isSummary()
+                ? Optional.of(new MismatchReport())
+                : Optional.empty();
+        mismatchReport.ifPresent(listeners::add);
+        final Optional<DataQualityReport> dataQualityReport = arguments.isIssues()
+                ? Optional.of(new DataQualityReport())
+                : Optional.empty();
+        dataQualityReport.ifPresent(listeners::add);
+
+        Optional<JsonLinesComparisonListener> eventsListener = Optional.empty();
+        try {
+            if (arguments.isEvents()) {
+                eventsListener = Optional.of(new JsonLinesComparisonListener(
+                        getSidecarFile(outputFile, EVENTS_SUFFIX)));
+                listeners.add(eventsListener.get());
+            }
+            final ComparisonListener listener = CompositeComparisonListener.of(listeners);
+
+            final Charset charset;
+            if (arguments.getCharset().isPresent()) {
+                charset = Charset.forName(arguments.getCharset().get());
+            } else {
+                try (final AnalysisMetrics.StageTimer timer = metrics.start(AnalysisStage.CHARSET_DETECTION)) {
+                    charset = charsetDetector.detectCharset(inputFile);
+                    timer.addItems(1);
+                }
+            }
+            final SurveyOptions options = SurveyOptions.builder()
+                    .participantIdColumn(participantIdColumn)
+                    .firstRelevantColumn(firstRelevantColumn)
+                    .doubleEntryIdPrefix(arguments.getDoubleEntryIdPrefix())
+                    .additionalEntryIdPrefixes(arguments.getAdditionalEntryIdPrefixes())
+                    .pairingStrategy(arguments.getPairingStrategy())
+                    .charset(charset)
+                    .comparisonThreads(arguments.getComparisonThreads())
+                    .exportOrder(arguments.getExportOrder())
+                    .parserType(arguments.getParserType())
+                    .columnRules(arguments.getColumnRules())
+                    .mergedInputs(arguments.getMergedInputs())
+                    .memoryThresholdBytes(arguments.getMemoryThresholdBytes())
+                    .duplicatePolicy(arguments.getDuplicatePolicy())
+                    .comparisonCacheFile(arguments.isIncremental()
+                            ? Optional.of(ComparisonCache.defaultFileFor(inputFile))
+                            : Optional.empty())
+                    .snapshotFile(arguments.isSnapshot()
+                            ? Optional.of(SurveySnapshot.defaultFileFor(inputFile))
+                            : Optional.empty())
+                    .metrics(metrics)
+                    .build();
+            final boolean merged = !arguments.getMergedInputs().isEmpty();
+            final boolean consensus = options.isConsensus();
+            final boolean pairedByPrefix = options.isPairedByPrefix();
+            if (arguments.isStreaming() && StreamingQualtricsSurvey.supports(charset) && !merged && !consensus &&
+                    pairedByPrefix) {
+                try (final SurveyAnalysis survey = new StreamingQualtricsSurvey(inputFile, options, listener)) {
+                    SurveyExporter.export(survey, outputFile, outputFileType.get(), charset);
+                }
+            } else if (arguments.isDictionary() && DictionaryEncodedSurvey.supports(charset) && !merged &&
+                    !consensus && pairedByPrefix) {
+                try (final SurveyAnalysis survey = new DictionaryEncodedSurvey(inputFile, options, listener,
+                        ProgressListener.NONE)) {
+                    SurveyExporter.export(survey, outputFile, outputFileType.get(), charset);
+                }
+            } else {
+                if (arguments.isStreaming() && merged) {
+                    statusConsumer.accept("Streaming is not supported with merged inputs, loading into memory.");
+                } else if (arguments.isStreaming() && !pairedByPrefix) {
+                    statusConsumer.accept("Streaming is not supported with --pairing, loading into memory.");
+                } else if (arguments.isStreaming() && consensus) {
+                    statusConsumer.accept("Streaming is not supported with several prefixes, loading into memory.");
+                } else if (arguments.isStreaming()) {
+                    statusConsumer.accept("Streaming is not supported for " + charset + ", loading into memory.");
+                } else if (arguments.isDictionary() && merged) {
+                    statusConsumer.accept("Dictionary encoding is not supported with merged inputs, loading as text.");
+                } else if (arguments.isDictionary() && !pairedByPrefix) {
+                    statusConsumer.accept("Dictionary encoding is not supported with --pairing, loading as text.");
+                } else if (arguments.isDictionary() && consensus) {
+                    statusConsumer.accept("Dictionary encoding is not supported with several prefixes, loading as " +
+                            "text.");
+                } else if (arguments.isDictionary()) {
+                    statusConsumer.accept("Dictionary encoding is not supported for " + charset +
+                            ", loading as text.");
+                }
+                SurveyExporter.exportWhileAnalyzing(outputFile, outputFileType.get(), charset, writer ->
+                        new QualtricsSurvey(inputFile, options, listener, ProgressListener.NONE, writer));
+            }
+            if (arguments.isQuiet() && countingListener.getSummary() != null) {
+                statusConsumer.accept(countingListener.getSummary().toString());
+            }
+            statusConsumer.accept("Wrote " + outputFile);
+            if (mismatchReport.isPresent()) {
+                writeReports(mismatchReport.get(), outputFile, outputFileType.get(), charset, arguments,
+                        statusConsumer);
+            }
+            if (arguments.getMetricsFormat().isPresent()) {
+                final MetricsFormat metricsFormat = arguments.getMetricsFormat().get();
+                metrics.describe().forEach(statusConsumer);
+                final File metricsFile = getSidecarFile(outputFile,
+                        METRICS_SUFFIX + "." + metricsFormat.getExtension());
+                metricsFormat.write(metrics, metricsFile);
+                statusConsumer.accept("Wrote " + metricsFile);
+            }
+            return true;
+        } catch (final RuntimeException | IOException e) {
+            // Any failure is confined to this export, so that the remaining exports of a batch are still validated.
+            log.error("Exception in processing the file {}", inputFile, e);
+            statusConsumer.accept(e.getMessage() == null ? e.toString() : e.getMessage());
+            return false;
+        } finally {
+            eventsListener.ifPresent(this::closeEventsListener);
+            dataQualityReport.ifPresent(report -> writeIssues(report, outputFile, outputFileType.get(),
+                    statusConsumer));
+        }
+    }
+
+    /**
+     * Written whether or not the analysis succeeded, since the issues are most useful when they made it fail.
+     */
+    private void writeIssues(@NonNull final DataQualityReport dataQualityReport, @NonNull final File outputFile,
+                             @NonNull final DelimitedFileType outputFileType,
+                             @NonNull final Consumer<String> statusConsumer) {
+        final File issuesFile = SurveyExporter.reportFileFor(outputFile, outputFileType, ISSUES_SUFFIX);
+        try {
+            SurveyExporter.writeReport(issuesFile, outputFileType, StandardCharsets.UTF_8, dataQualityReport::write);
+            statusConsumer.accept("Wrote " + dataQualityReport.getIssueCount() + " issue(s) to " + issuesFile);
+        } catch (final IOException e) {
+            log.error("Exception in writing the issues report {}", issuesFile, e);
+            statusConsumer.accept("Could not write " + issuesFile);
+        }
+    }
+
+    private void writeReports(@NonNull final MismatchReport mismatchReport, @NonNull final File outputFile,
+                              @NonNull final DelimitedFileType outputFileType, @NonNull final Charset charset,
+                              @NonNull final CommandLineArguments arguments,
+                              @NonNull final Consumer<String> statusConsumer) throws IOException {
+        if (arguments.isMismatches()) {
+            final File mismatchesFile = SurveyExporter.reportFileFor(outputFile, outputFileType, MISMATCHES_SUFFIX);
+            SurveyExporter.writeReport(mismatchesFile, outputFileType, charset, mismatchReport::writeMismatches);
+            statusConsumer.accept("Wrote " + mismatchesFile);
+        }
+        if (arguments.isSummary()) {
+            final File summaryFile = SurveyExporter.reportFileFor(outputFile, outputFileType, SUMMARY_SUFFIX);
+            SurveyExporter.writeReport(summaryFile, outputFileType, charset, mismatchReport::writeSummary);
+            statusConsumer.accept("Wrote " + summaryFile);
+        }
+    }
+
+    private void closeEventsListener(@NonNull final JsonLinesComparisonListener eventsListener) {
+        try {
+            eventsListener.close();
+        } catch (final IOException e) {
+            log.error("Exception in closing the comparison events file", e);
+        }
+    }
+
+    private File getSidecarFile(@NonNull final File outputFile, @NonNull final String suffix) {
+        final String outputName = SurveyExporter.isCompressed(outputFile)
+                ? outputFile.getName().substring(0, outputFile.getName().length() -
+                        SurveyExporter.GZIP_EXTENSION.length())
+                : outputFile.getName();
+        final int lastDot = outputName.lastIndexOf(".");
+        return new File(outputFile.getAbsoluteFile().getParentFile(),
+                outputName.substring(0, lastDot) + suffix);
+    }
+
+    /**
+     * Returns whether a file is named like an output or report written next to its input, so that watching the
+     * directory of an export does not validate its own outputs again.
+     */
+    static boolean isOutputFile(@NonNull final File file) {
+        final String name = SurveyExporter.isCompressed(file)
+                ? file.getName().substring(0, file.getName().length() - SurveyExporter.GZIP_EXTENSION.length())
+                : file.getName();
+        final int lastDot = name.lastIndexOf(".");
+        final String baseName = lastDot == -1 ? name : name.substring(0, lastDot);
+        return baseName.endsWith(OUTPUT_SUFFIX) ||
+                REPORT_SUFFIXES.stream().anyMatch(suffix -> baseName.endsWith(OUTPUT_SUFFIX + suffix));
+    }
+
+    File getDefaultOutputFile(@NonNull final File inputFile, @NonNull final Optional<File> outputDirectory) {
+        final String inputName = inputFile.getName();
+        final int lastDot = inputName.lastIndexOf(".");
+        final String outputName = inputName.substring(0, lastDot) + OUTPUT_SUFFIX + inputName.substring(lastDot);
+        final File directory = outputDirectory.orElse(inputFile.getAbsoluteFile().getParentFile());
+        return new File(directory, outputName);
+    }
+}
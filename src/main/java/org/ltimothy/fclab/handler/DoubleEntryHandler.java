@@ -1,18 +1,23 @@
-package org.ltimothy.fclab.handler;
-
-import org.ltimothy.fclab.gui.DefaultGUI;
-
-import javax.inject.Inject;
-import javax.swing.SwingUtilities;
-
-public class DoubleEntryHandler {
-    private final DefaultGUI defaultGUI;
-    @Inject
-    public DoubleEntryHandler(final DefaultGUI defaultGUI) {
-        this.defaultGUI = defaultGUI;
-    }
-
-    public void launchGUI() {
-        SwingUtilities.invokeLater(() -> new DoubleEntryHandler(defaultGUI));
-    }
-}
+package org.ltimothy.fclab.handler;
+
+import dagger.Lazy;
+import org.ltimothy.fclab.gui.DefaultGUI;
+
+import javax.inject.Inject;
+import javax.swing.SwingUtilities;
+
+public class DoubleEntryHandler {
+    private final Lazy<DefaultGUI> defaultGUI;
+    @Inject
+    public DoubleEntryHandler(final Lazy<DefaultGUI> defaultGUI) {
+        this.defaultGUI = defaultGUI;
+    }
+
+    /**
+     * Provisions the window on the event dispatch thread, where it is built and shown, instead of blocking the main
+     * thread on it.
+     */
+    public void launchGUI() {
+        SwingUtilities.invokeLater(defaultGUI::get);
+    }
+}
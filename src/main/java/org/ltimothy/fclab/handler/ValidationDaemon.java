@@ -0,0 +1,459 @@
+package org.ltimothy.fclab.handler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.ltimothy.fclab.cli.CommandLineArguments;
+import org.ltimothy.fclab.cli.InputFiles;
+import org.ltimothy.fclab.data.AnalysisMetrics;
+import org.ltimothy.fclab.data.ColumnIdentifiers;
+import org.ltimothy.fclab.data.DelimitedFileType;
+import org.ltimothy.fclab.data.SurveyExporter;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.ltimothy.fclab.listener.JsonLinesComparisonListener.quote;
+
+/**
+ * Keeps one JVM running to validate exports as they arrive, so the lab does not pay for startup and JIT warm-up per
+ * file. Exports are queued through a small HTTP/JSON endpoint bound to the loopback address, by dropping them into a
+ * watched directory, or with {@code --input} at startup. A fixed number of workers validate them through the same
+ * {@link BatchHandler#processFile} path as the command line, and a bounded queue turns away work beyond that instead
+ * of piling it up in memory. Jobs of the same export share its output and sidecar files, so only one of them runs at
+ * a time: queuing an export which is still waiting returns the waiting job, and queuing it while it is validated
+ * queues one more job which runs once the running one finished.
+ *
+ * <ul>
+ *     <li>{@code POST /jobs} with the path of an export as the body queues it, answering 202 with the job.</li>
+ *     <li>{@code GET /jobs/<id>} returns one job.</li>
+ *     <li>{@code GET /status} returns the pool and every recent job with its queue and run time in milliseconds and
+ *     the stage metrics of the analysis once it finished.</li>
+ * </ul>
+ */
+@Slf4j
+public class ValidationDaemon {
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int MAX_JOBS_KEPT = 1000;
+    private static final long SETTLE_MILLIS = 1000;
+    private static final long SHUTDOWN_SECONDS = 30;
+    private static final String JOBS_PATH = "/jobs";
+    private static final String STATUS_PATH = "/status";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final Set<String> LOCAL_HOSTS = Set.of("localhost", "127.0.0.1", "[::1]");
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_ACCEPTED = 202;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_FORBIDDEN = 403;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+    private static final int HTTP_UNAVAILABLE = 503;
+
+    private final BatchHandler batchHandler;
+    private final PrintStream console;
+    private final AtomicLong lastJobId;
+    private final Map<Long, ValidationJob> jobs;
+    private final CountDownLatch stopped;
+
+    @Inject
+    public ValidationDaemon(final BatchHandler batchHandler, final PrintStream console) {
+        this.batchHandler = batchHandler;
+        this.console = console;
+        this.lastJobId = new AtomicLong();
+        this.jobs = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, ValidationJob> eldest) {
+                return size() > MAX_JOBS_KEPT;
+            }
+        };
+        this.stopped = new CountDownLatch(1);
+    }
+
+    /**
+     * Serves until the JVM shuts down, e.g. on Ctrl+C, after which running jobs get some time to finish.
+     */
+    public int run(@NonNull final CommandLineArguments arguments) {
+        final Optional<Integer> participantIdColumn =
+                ColumnIdentifiers.toColumnIndex(arguments.getParticipantIdColumn());
+        final Optional<Integer> firstRelevantColumn =
+                ColumnIdentifiers.toColumnIndex(arguments.getFirstRelevantColumn());
+        if (participantIdColumn.isEmpty() || firstRelevantColumn.isEmpty()) {
+            console.println("Invalid column input " + arguments.getParticipantIdColumn() + ", " +
+                    arguments.getFirstRelevantColumn());
+            return BatchHandler.EXIT_FAILURE;
+        }
+        final Optional<Path> watchDirectory = arguments.getWatchDirectory().map(Paths::get);
+        if (watchDirectory.isPresent() && !watchDirectory.get().toFile().isDirectory()) {
+            console.println("Not a directory " + watchDirectory.get());
+            return BatchHandler.EXIT_FAILURE;
+        }
+
+        final ThreadPoolExecutor workers = new ThreadPoolExecutor(arguments.getWorkers(), arguments.getWorkers(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+        final Worker worker = new Worker(workers, participantIdColumn.get(), firstRelevantColumn.get(), arguments);
+        final HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), arguments.getPort()), 0);
+        } catch (final IOException e) {
+            log.error("Exception in binding port {}", arguments.getPort(), e);
+            console.println("Could not listen on port " + arguments.getPort() + ": " + e.getMessage());
+            workers.shutdown();
+            return BatchHandler.EXIT_FAILURE;
+        }
+        server.createContext(JOBS_PATH, exchange -> handle(exchange, () -> handleJobs(exchange, worker)));
+        server.createContext(STATUS_PATH, exchange -> handle(exchange, () -> handleStatus(exchange, workers)));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(server, workers)));
+        console.println("Serving on http://localhost:" + server.getAddress().getPort() + " with " +
+                arguments.getWorkers() + " worker(s)");
+
+        try {
+            for (final File inputFile : InputFiles.resolve(arguments.getInputs())) {
+                worker.submit(inputFile, "input");
+            }
+        } catch (final IOException e) {
+            log.error("Exception in resolving inputs {}", arguments.getInputs(), e);
+            console.println("Could not resolve inputs " + arguments.getInputs() + ": " + e.getMessage());
+        }
+
+        try {
+            if (watchDirectory.isPresent()) {
+                watch(watchDirectory.get(), worker);
+            }
+            stopped.await();
+        } catch (final IOException e) {
+            log.error("Exception in watching {}", watchDirectory.get(), e);
+            console.println("Could not watch " + watchDirectory.get() + ": " + e.getMessage());
+            stop(server, workers);
+            return BatchHandler.EXIT_FAILURE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return BatchHandler.EXIT_SUCCESS;
+    }
+
+    /**
+     * Queues exports created or changed in the directory once they were left alone for {@value #SETTLE_MILLIS} ms, so
+     * a file that is still being copied in is not validated half written. Outputs written next to an export are
+     * ignored. Returns when the daemon stops or the directory can no longer be watched.
+     */
+    private void watch(@NonNull final Path directory, @NonNull final Worker worker)
+            throws IOException, InterruptedException {
+        try (final WatchService watchService = directory.getFileSystem().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            console.println("Watching " + directory.toAbsolutePath());
+            final Map<Path, Long> lastChangedNanos = new HashMap<>();
+            while (stopped.getCount() > 0) {
+                final WatchKey key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (final WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            continue;
+                        }
+                        final Path path = directory.resolve((Path) event.context());
+                        if (DelimitedFileType.fromFile(path.toFile()).isPresent() &&
+                                !BatchHandler.isOutputFile(path.toFile())) {
+                            lastChangedNanos.put(path, System.nanoTime());
+                        }
+                    }
+                    if (!key.reset()) {
+                        console.println("Stopped watching " + directory + ", it is no longer accessible");
+                        return;
+                    }
+                }
+
+                final long settledNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS);
+                final Iterator<Map.Entry<Path, Long>> changes = lastChangedNanos.entrySet().iterator();
+                while (changes.hasNext()) {
+                    final Map.Entry<Path, Long> change = changes.next();
+                    if (change.getValue() - settledNanos <= 0) {
+                        changes.remove();
+                        if (change.getKey().toFile().isFile()) {
+                            worker.submit(change.getKey().toFile(), "watch");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void handleJobs(@NonNull final HttpExchange exchange, @NonNull final Worker worker) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        if (path.equals(JOBS_PATH) || path.equals(JOBS_PATH + "/")) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, HTTP_METHOD_NOT_ALLOWED, error("Queue an export with POST " + JOBS_PATH));
+                return;
+            }
+            final String input = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+            final File inputFile = new File(input);
+            if (input.isEmpty() || !inputFile.isFile() || DelimitedFileType.fromFile(inputFile).isEmpty()) {
+                respond(exchange, HTTP_BAD_REQUEST, error("Not a *.csv or *.tsv file: " + input));
+                return;
+            }
+            final Optional<ValidationJob> job = worker.submit(inputFile, "http");
+            if (job.isPresent()) {
+                respond(exchange, HTTP_ACCEPTED, job.get().toJson());
+            } else {
+                respond(exchange, HTTP_UNAVAILABLE, error("The queue is full, try again later"));
+            }
+            return;
+        }
+
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, HTTP_METHOD_NOT_ALLOWED, error("Read a job with GET " + JOBS_PATH + "/<id>"));
+            return;
+        }
+        final Optional<ValidationJob> job;
+        try {
+            job = findJob(Long.parseLong(path.substring(JOBS_PATH.length() + 1)));
+        } catch (final NumberFormatException e) {
+            respond(exchange, HTTP_NOT_FOUND, error("No such job " + path));
+            return;
+        }
+        if (job.isPresent()) {
+            respond(exchange, HTTP_OK, job.get().toJson());
+        } else {
+            respond(exchange, HTTP_NOT_FOUND, error("No such job " + path));
+        }
+    }
+
+    private void handleStatus(@NonNull final HttpExchange exchange, @NonNull final ThreadPoolExecutor workers)
+            throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, HTTP_METHOD_NOT_ALLOWED, error("Read the status with GET " + STATUS_PATH));
+            return;
+        }
+        final List<ValidationJob> recentJobs;
+        synchronized (jobs) {
+            recentJobs = new ArrayList<>(jobs.values());
+        }
+        respond(exchange, HTTP_OK, "{\"workers\":" + workers.getMaximumPoolSize() +
+                ",\"running\":" + workers.getActiveCount() +
+                ",\"queued\":" + workers.getQueue().size() +
+                ",\"queueCapacity\":" + QUEUE_CAPACITY +
+                ",\"jobs\":[" + recentJobs.stream().map(ValidationJob::toJson).collect(Collectors.joining(",")) +
+                "]}");
+    }
+
+    /**
+     * Only answers requests addressed to this machine by name and not made by a web page, so neither another host nor
+     * a site open in a local browser can queue jobs or read the paths of exports.
+     */
+    private void handle(@NonNull final HttpExchange exchange, @NonNull final ExchangeHandler handler) {
+        try (exchange) {
+            final String host = Optional.ofNullable(exchange.getRequestHeaders().getFirst("Host")).orElse("");
+            final int portStart = host.lastIndexOf(':');
+            final String hostName = portStart > host.lastIndexOf(']') ? host.substring(0, portStart) : host;
+            if (exchange.getRequestHeaders().containsKey("Origin") || !LOCAL_HOSTS.contains(hostName)) {
+                respond(exchange, HTTP_FORBIDDEN, error("Only local requests are served"));
+                return;
+            }
+            handler.handle();
+        } catch (final IOException | RuntimeException e) {
+            log.error("Exception in handling {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+        }
+    }
+
+    private Optional<ValidationJob> findJob(final long id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id));
+        }
+    }
+
+    private void stop(@NonNull final HttpServer server, @NonNull final ThreadPoolExecutor workers) {
+        if (stopped.getCount() == 0) {
+            return;
+        }
+        stopped.countDown();
+        server.stop(0);
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                console.println("Stopped with " + workers.getActiveCount() + " job(s) still running");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(@NonNull final HttpExchange exchange, final int status, @NonNull final String json)
+            throws IOException {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (final OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static String error(@NonNull final String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private interface ExchangeHandler {
+        void handle() throws IOException;
+    }
+
+    /**
+     * Queues jobs on the bounded pool and validates them with the options the daemon was started with.
+     */
+    private class Worker {
+        private final ThreadPoolExecutor workers;
+        private final int participantIdColumn;
+        private final int firstRelevantColumn;
+        private final CommandLineArguments arguments;
+        /**
+         * The queued or running job of each export by canonical path.
+         */
+        private final Map<File, ValidationJob> activeJobs;
+        /**
+         * The job of each export queued while it was validated, run once the active job finished.
+         */
+        private final Map<File, ValidationJob> followingJobs;
+
+        private Worker(@NonNull final ThreadPoolExecutor workers, final int participantIdColumn,
+                       final int firstRelevantColumn, @NonNull final CommandLineArguments arguments) {
+            this.workers = workers;
+            this.participantIdColumn = participantIdColumn;
+            this.firstRelevantColumn = firstRelevantColumn;
+            this.arguments = arguments;
+            this.activeJobs = new HashMap<>();
+            this.followingJobs = new HashMap<>();
+        }
+
+        /**
+         * Returns the queued job, which may be one queued earlier for the same export, or empty if the queue is full
+         * or the daemon is stopping.
+         */
+        private Optional<ValidationJob> submit(@NonNull final File inputFile, @NonNull final String source) {
+            final File input = canonicalFile(inputFile);
+            synchronized (activeJobs) {
+                final ValidationJob activeJob = activeJobs.get(input);
+                if (activeJob != null && activeJob.getState() == ValidationJob.State.QUEUED) {
+                    console.println("[" + inputFile.getName() + "] Already queued as job " + activeJob.getId());
+                    return Optional.of(activeJob);
+                }
+                final ValidationJob followingJob = followingJobs.get(input);
+                if (followingJob != null) {
+                    console.println("[" + inputFile.getName() + "] Already queued as job " + followingJob.getId());
+                    return Optional.of(followingJob);
+                }
+
+                final ValidationJob job = createJob(inputFile, source);
+                if (activeJob != null) {
+                    followingJobs.put(input, job);
+                    console.println("[" + inputFile.getName() + "] Queued as job " + job.getId() + " from " +
+                            source + " to run after job " + activeJob.getId());
+                    return Optional.of(job);
+                }
+                if (!execute(job, input)) {
+                    synchronized (jobs) {
+                        jobs.remove(job.getId());
+                    }
+                    console.println("[" + inputFile.getName() + "] Not queued, the queue is full.");
+                    return Optional.empty();
+                }
+                activeJobs.put(input, job);
+                console.println("[" + inputFile.getName() + "] Queued as job " + job.getId() + " from " + source);
+                return Optional.of(job);
+            }
+        }
+
+        private ValidationJob createJob(@NonNull final File inputFile, @NonNull final String source) {
+            final File uncompressedOutputFile = batchHandler.getDefaultOutputFile(inputFile, Optional.empty());
+            final ValidationJob job = new ValidationJob(lastJobId.incrementAndGet(), inputFile,
+                    arguments.isGzip() ? SurveyExporter.compressed(uncompressedOutputFile) : uncompressedOutputFile,
+                    source);
+            synchronized (jobs) {
+                jobs.put(job.getId(), job);
+            }
+            return job;
+        }
+
+        private boolean execute(@NonNull final ValidationJob job, @NonNull final File input) {
+            try {
+                workers.execute(() -> validate(job, input));
+                return true;
+            } catch (final RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Runs the job queued while the export was validated, if any.
+         */
+        private void finished(@NonNull final File input) {
+            synchronized (activeJobs) {
+                activeJobs.remove(input);
+                final ValidationJob followingJob = followingJobs.remove(input);
+                if (followingJob == null) {
+                    return;
+                }
+                if (execute(followingJob, input)) {
+                    activeJobs.put(input, followingJob);
+                } else {
+                    followingJob.rejected();
+                    console.println("[" + input.getName() + "] Job " + followingJob.getId() + " was not run, the " +
+                            "queue is full or the daemon is stopping.");
+                }
+            }
+        }
+
+        private void validate(@NonNull final ValidationJob job, @NonNull final File input) {
+            final AnalysisMetrics metrics = AnalysisMetrics.forConcurrentAnalysis();
+            job.started(metrics);
+            boolean succeeded = false;
+            try {
+                succeeded = batchHandler.processFile(job.getInputFile(), job.getOutputFile(), participantIdColumn,
+                        firstRelevantColumn, arguments, metrics);
+            } catch (final RuntimeException e) {
+                log.error("Exception in validating {}", job.getInputFile(), e);
+            } finally {
+                job.finished(succeeded);
+                finished(input);
+            }
+        }
+    }
+
+    /**
+     * Resolves links and relative paths so that every path of an export keys the same job, falling back to the
+     * absolute path if the file cannot be resolved.
+     */
+    private static File canonicalFile(@NonNull final File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (final IOException e) {
+            log.warn("Could not resolve {}, keying its jobs by its absolute path", file, e);
+            return file.getAbsoluteFile();
+        }
+    }
+}
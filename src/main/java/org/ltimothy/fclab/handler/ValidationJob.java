@@ -0,0 +1,114 @@
+package org.ltimothy.fclab.handler;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.ltimothy.fclab.data.AnalysisMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Optional;
+
+import static org.ltimothy.fclab.listener.JsonLinesComparisonListener.quote;
+
+/**
+ * One export queued on the {@link ValidationDaemon}, from the moment it was queued until its worker finished it. The
+ * daemon's workers update it while the status endpoint reads it, so its state is only accessed while synchronized.
+ */
+final class ValidationJob {
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    enum State {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    @Getter
+    private final long id;
+    @Getter
+    private final File inputFile;
+    @Getter
+    private final File outputFile;
+    /**
+     * How the export was queued, e.g. {@code http} or {@code watch}.
+     */
+    private final String source;
+    private final Instant queuedAt;
+    private final long queuedNanos;
+    private State state;
+    private long startedNanos;
+    private long finishedNanos;
+    private Optional<AnalysisMetrics> metrics;
+
+    ValidationJob(final long id, @NonNull final File inputFile, @NonNull final File outputFile,
+                  @NonNull final String source) {
+        this.id = id;
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.source = source;
+        this.queuedAt = Instant.now();
+        this.queuedNanos = System.nanoTime();
+        this.state = State.QUEUED;
+        this.metrics = Optional.empty();
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized void started(@NonNull final AnalysisMetrics analysisMetrics) {
+        state = State.RUNNING;
+        startedNanos = System.nanoTime();
+        metrics = Optional.of(analysisMetrics);
+    }
+
+    /**
+     * Fails a job which never got a worker, e.g. because the daemon was stopping when it was due to run.
+     */
+    synchronized void rejected() {
+        state = State.FAILED;
+        startedNanos = System.nanoTime();
+        finishedNanos = startedNanos;
+    }
+
+    synchronized void finished(final boolean succeeded) {
+        state = succeeded ? State.SUCCEEDED : State.FAILED;
+        finishedNanos = System.nanoTime();
+    }
+
+    /**
+     * Milliseconds spent waiting for a worker and validating so far, followed by the stages of the analysis.
+     */
+    synchronized String toJson() {
+        final long now = System.nanoTime();
+        final long waitedUntil = state == State.QUEUED ? now : startedNanos;
+        final long ranUntil = state == State.RUNNING ? now : finishedNanos;
+        final StringBuilder json = new StringBuilder("{\"id\":").append(id)
+                .append(",\"input\":").append(quote(inputFile.getPath()))
+                .append(",\"output\":").append(quote(outputFile.getPath()))
+                .append(",\"source\":").append(quote(source))
+                .append(",\"state\":\"").append(state.name().toLowerCase(Locale.ROOT)).append('"')
+                .append(",\"queuedAt\":\"").append(queuedAt).append('"')
+                .append(",\"queueMillis\":").append(millis(waitedUntil - queuedNanos))
+                .append(",\"runMillis\":").append(state == State.QUEUED ? millis(0) : millis(ranUntil - startedNanos));
+        if (metrics.isPresent() && state != State.RUNNING) {
+            final StringWriter metricsJson = new StringWriter();
+            try {
+                metrics.get().writeJson(metricsJson);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            json.append(",\"metrics\":").append(metricsJson.toString().trim());
+        }
+        return json.append('}').toString();
+    }
+
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI);
+    }
+}
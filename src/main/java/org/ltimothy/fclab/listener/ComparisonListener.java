@@ -0,0 +1,49 @@
+package org.ltimothy.fclab.listener;
+
+import lombok.NonNull;
+
+/**
+ * Receives comparison events from a survey analysis. Events are raised from the comparison loop, so implementations
+ * should only do the work they need; every method defaults to doing nothing.
+ */
+public interface ComparisonListener {
+    ComparisonListener NONE = new ComparisonListener() { };
+
+    default void pairStarted(@NonNull String participantId) {
+    }
+
+    default void mismatchFound(@NonNull String participantId, int columnIndex, @NonNull String columnHeader,
+                               @NonNull String originalValue, @NonNull String doubleEntryValue) {
+    }
+
+    default void orphanDoubleEntry(@NonNull String doubleEntryParticipantId,
+                                   @NonNull String originalEntryParticipantId) {
+    }
+
+    /**
+     * A column of a participant with more than two entries in which no value was matched by more than half of them.
+     */
+    default void noMajority(@NonNull String participantId, int columnIndex, @NonNull String columnHeader) {
+    }
+
+    /**
+     * Rows are numbered from 1 after the header rows, continuing across merged inputs in the order they are read.
+     */
+    default void blankParticipantIdDropped(long row, @NonNull String[] fields) {
+    }
+
+    /**
+     * A row whose participant ID was already read, which either replaced the earlier row or was skipped.
+     */
+    default void duplicateParticipantId(@NonNull String participantId, long row, boolean replacedEarlierRow) {
+    }
+
+    /**
+     * A row with more or fewer fields than the primary header.
+     */
+    default void raggedRow(long row, int fields, int expectedFields) {
+    }
+
+    default void finished(@NonNull ComparisonSummary summary) {
+    }
+}
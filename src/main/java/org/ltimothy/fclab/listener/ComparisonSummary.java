@@ -0,0 +1,49 @@
+package org.ltimothy.fclab.listener;
+
+import lombok.Getter;
+
+@Getter
+public class ComparisonSummary {
+    private final int participants;
+    private final int pairsCompared;
+    private final long mismatches;
+    private final int orphanDoubleEntries;
+    private final int blankParticipantIds;
+    private final int duplicateParticipantIds;
+    /**
+     * Rows with more or fewer fields than the primary header.
+     */
+    private final int raggedRows;
+    /**
+     * Number of columns compared per pair.
+     */
+    private final int comparedColumns;
+    /**
+     * Columns of participants with more than two entries in which no value had a majority across the entries.
+     */
+    private final long noMajorityCells;
+
+    public ComparisonSummary(final int participants, final int pairsCompared, final long mismatches,
+                             final int orphanDoubleEntries, final int blankParticipantIds,
+                             final int duplicateParticipantIds, final int raggedRows, final int comparedColumns,
+                             final long noMajorityCells) {
+        this.participants = participants;
+        this.pairsCompared = pairsCompared;
+        this.mismatches = mismatches;
+        this.orphanDoubleEntries = orphanDoubleEntries;
+        this.blankParticipantIds = blankParticipantIds;
+        this.duplicateParticipantIds = duplicateParticipantIds;
+        this.raggedRows = raggedRows;
+        this.comparedColumns = comparedColumns;
+        this.noMajorityCells = noMajorityCells;
+    }
+
+    @Override
+    public String toString() {
+        return "Compared " + pairsCompared + " pair(s) across " + participants + " participant row(s), found " +
+                mismatches + " mismatch(es), " + orphanDoubleEntries + " double-entry row(s) without an original, " +
+                blankParticipantIds + " row(s) with a blank participant ID, " + duplicateParticipantIds +
+                " duplicate participant ID(s) and " + raggedRows + " row(s) with an unexpected number of fields." +
+                (noMajorityCells > 0 ? " " + noMajorityCells + " cell(s) had no majority across the entries." : "");
+    }
+}
@@ -0,0 +1,84 @@
+package org.ltimothy.fclab.listener;
+
+import lombok.NonNull;
+
+import java.util.List;
+
+/**
+ * Forwards every event to each of the given listeners in order.
+ */
+public class CompositeComparisonListener implements ComparisonListener {
+    private final ComparisonListener[] listeners;
+
+    public CompositeComparisonListener(@NonNull final List<ComparisonListener> listeners) {
+        this.listeners = listeners.toArray(new ComparisonListener[0]);
+    }
+
+    public static ComparisonListener of(@NonNull final List<ComparisonListener> listeners) {
+        if (listeners.isEmpty()) {
+            return ComparisonListener.NONE;
+        }
+        return listeners.size() == 1 ? listeners.get(0) : new CompositeComparisonListener(listeners);
+    }
+
+    @Override
+    public void pairStarted(@NonNull final String participantId) {
+        for (final ComparisonListener listener : listeners) {
+            listener.pairStarted(participantId);
+        }
+    }
+
+    @Override
+    public void mismatchFound(@NonNull final String participantId, final int columnIndex,
+                              @NonNull final String columnHeader, @NonNull final String originalValue,
+                              @NonNull final String doubleEntryValue) {
+        for (final ComparisonListener listener : listeners) {
+            listener.mismatchFound(participantId, columnIndex, columnHeader, originalValue, doubleEntryValue);
+        }
+    }
+
+    @Override
+    public void noMajority(@NonNull final String participantId, final int columnIndex,
+                           @NonNull final String columnHeader) {
+        for (final ComparisonListener listener : listeners) {
+            listener.noMajority(participantId, columnIndex, columnHeader);
+        }
+    }
+
+    @Override
+    public void orphanDoubleEntry(@NonNull final String doubleEntryParticipantId,
+                                  @NonNull final String originalEntryParticipantId) {
+        for (final ComparisonListener listener : listeners) {
+            listener.orphanDoubleEntry(doubleEntryParticipantId, originalEntryParticipantId);
+        }
+    }
+
+    @Override
+    public void blankParticipantIdDropped(final long row, @NonNull final String[] fields) {
+        for (final ComparisonListener listener : listeners) {
+            listener.blankParticipantIdDropped(row, fields);
+        }
+    }
+
+    @Override
+    public void duplicateParticipantId(@NonNull final String participantId, final long row,
+                                       final boolean replacedEarlierRow) {
+        for (final ComparisonListener listener : listeners) {
+            listener.duplicateParticipantId(participantId, row, replacedEarlierRow);
+        }
+    }
+
+    @Override
+    public void raggedRow(final long row, final int fields, final int expectedFields) {
+        for (final ComparisonListener listener : listeners) {
+            listener.raggedRow(row, fields, expectedFields);
+        }
+    }
+
+    @Override
+    public void finished(@NonNull final ComparisonSummary summary) {
+        for (final ComparisonListener listener : listeners) {
+            listener.finished(summary);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.ltimothy.fclab.listener;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Keeps running counts of comparison events, for callers that only need totals.
+ */
+@Getter
+public class CountingComparisonListener implements ComparisonListener {
+    private int pairsStarted;
+    private long mismatches;
+    private long noMajorityCells;
+    private int orphanDoubleEntries;
+    private int blankParticipantIds;
+    private int duplicateParticipantIds;
+    private int raggedRows;
+    private ComparisonSummary summary;
+
+    @Override
+    public void pairStarted(@NonNull final String participantId) {
+        pairsStarted++;
+    }
+
+    @Override
+    public void mismatchFound(@NonNull final String participantId, final int columnIndex,
+                              @NonNull final String columnHeader, @NonNull final String originalValue,
+                              @NonNull final String doubleEntryValue) {
+        mismatches++;
+    }
+
+    @Override
+    public void noMajority(@NonNull final String participantId, final int columnIndex,
+                           @NonNull final String columnHeader) {
+        noMajorityCells++;
+    }
+
+    @Override
+    public void orphanDoubleEntry(@NonNull final String doubleEntryParticipantId,
+                                  @NonNull final String originalEntryParticipantId) {
+        orphanDoubleEntries++;
+    }
+
+    @Override
+    public void blankParticipantIdDropped(final long row, @NonNull final String[] fields) {
+        blankParticipantIds++;
+    }
+
+    @Override
+    public void duplicateParticipantId(@NonNull final String participantId, final long row,
+                                       final boolean replacedEarlierRow) {
+        duplicateParticipantIds++;
+    }
+
+    @Override
+    public void raggedRow(final long row, final int fields, final int expectedFields) {
+        raggedRows++;
+    }
+
+    @Override
+    public void finished(@NonNull final ComparisonSummary summary) {
+        this.summary = summary;
+    }
+}
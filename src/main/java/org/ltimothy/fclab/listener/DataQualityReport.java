@@ -0,0 +1,74 @@
+package org.ltimothy.fclab.listener;
+
+import com.opencsv.ICSVWriter;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects every duplicate participant ID, blank participant ID, double entry without an original and row with an
+ * unexpected number of fields, so a single run lists all data-quality issues of an export. Issues found while reading
+ * are collected even when the analysis fails afterwards because of them.
+ */
+public class DataQualityReport implements ComparisonListener {
+    private static final String[] HEADER = {"Issue", "Row", "ParticipantID", "Detail"};
+    private static final String DUPLICATE_ISSUE = "duplicate";
+    private static final String BLANK_ISSUE = "blank";
+    private static final String ORPHAN_ISSUE = "orphan";
+    private static final String RAGGED_ISSUE = "ragged";
+
+    private final List<Issue> issues;
+
+    public DataQualityReport() {
+        this.issues = new ArrayList<>();
+    }
+
+    @Override
+    public void duplicateParticipantId(@NonNull final String participantId, final long row,
+                                       final boolean replacedEarlierRow) {
+        issues.add(new Issue(DUPLICATE_ISSUE, Long.toString(row), participantId,
+                replacedEarlierRow ? "replaced the earlier row" : "skipped"));
+    }
+
+    @Override
+    public void blankParticipantIdDropped(final long row, @NonNull final String[] fields) {
+        issues.add(new Issue(BLANK_ISSUE, Long.toString(row), "", "removed"));
+    }
+
+    @Override
+    public void orphanDoubleEntry(@NonNull final String doubleEntryParticipantId,
+                                  @NonNull final String originalEntryParticipantId) {
+        issues.add(new Issue(ORPHAN_ISSUE, "", doubleEntryParticipantId, "no original " + originalEntryParticipantId));
+    }
+
+    @Override
+    public void raggedRow(final long row, final int fields, final int expectedFields) {
+        issues.add(new Issue(RAGGED_ISSUE, Long.toString(row), "", fields + " fields instead of " + expectedFields));
+    }
+
+    public int getIssueCount() {
+        return issues.size();
+    }
+
+    /**
+     * Writes one row per issue in the order they were found, rows read before pairs compared. Orphan double entries
+     * are found after reading and have no row number.
+     */
+    public void write(@NonNull final ICSVWriter writer) {
+        writer.writeNext(HEADER);
+        for (final Issue issue : issues) {
+            writer.writeNext(new String[]{issue.getIssue(), issue.getRow(), issue.getParticipantId(),
+                    issue.getDetail()});
+        }
+    }
+
+    @Value
+    private static class Issue {
+        String issue;
+        String row;
+        String participantId;
+        String detail;
+    }
+}
@@ -0,0 +1,137 @@
+package org.ltimothy.fclab.listener;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes every comparison event as one JSON object per line, for review tooling that consumes structured output.
+ */
+@Slf4j
+public class JsonLinesComparisonListener implements ComparisonListener, Closeable {
+    private final Writer writer;
+
+    public JsonLinesComparisonListener(@NonNull final File file) throws IOException {
+        this(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    public JsonLinesComparisonListener(@NonNull final Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
+    @Override
+    public void pairStarted(@NonNull final String participantId) {
+        write("{\"event\":\"pairStarted\",\"participantId\":" + quote(participantId) + "}");
+    }
+
+    @Override
+    public void mismatchFound(@NonNull final String participantId, final int columnIndex,
+                              @NonNull final String columnHeader, @NonNull final String originalValue,
+                              @NonNull final String doubleEntryValue) {
+        write("{\"event\":\"mismatch\",\"participantId\":" + quote(participantId) +
+                ",\"columnIndex\":" + columnIndex +
+                ",\"columnHeader\":" + quote(columnHeader) +
+                ",\"originalValue\":" + quote(originalValue) +
+                ",\"doubleEntryValue\":" + quote(doubleEntryValue) + "}");
+    }
+
+    @Override
+    public void noMajority(@NonNull final String participantId, final int columnIndex,
+                           @NonNull final String columnHeader) {
+        write("{\"event\":\"noMajority\",\"participantId\":" + quote(participantId) +
+                ",\"columnIndex\":" + columnIndex +
+                ",\"columnHeader\":" + quote(columnHeader) + "}");
+    }
+
+    @Override
+    public void orphanDoubleEntry(@NonNull final String doubleEntryParticipantId,
+                                  @NonNull final String originalEntryParticipantId) {
+        write("{\"event\":\"orphanDoubleEntry\",\"participantId\":" + quote(doubleEntryParticipantId) +
+                ",\"originalParticipantId\":" + quote(originalEntryParticipantId) + "}");
+    }
+
+    @Override
+    public void blankParticipantIdDropped(final long row, @NonNull final String[] fields) {
+        write("{\"event\":\"blankParticipantId\",\"row\":" + row + ",\"fields\":" + fields.length + "}");
+    }
+
+    @Override
+    public void duplicateParticipantId(@NonNull final String participantId, final long row,
+                                       final boolean replacedEarlierRow) {
+        write("{\"event\":\"duplicateParticipantId\",\"participantId\":" + quote(participantId) +
+                ",\"row\":" + row + ",\"replacedEarlierRow\":" + replacedEarlierRow + "}");
+    }
+
+    @Override
+    public void raggedRow(final long row, final int fields, final int expectedFields) {
+        write("{\"event\":\"raggedRow\",\"row\":" + row + ",\"fields\":" + fields +
+                ",\"expectedFields\":" + expectedFields + "}");
+    }
+
+    @Override
+    public void finished(@NonNull final ComparisonSummary summary) {
+        write("{\"event\":\"finished\",\"participants\":" + summary.getParticipants() +
+                ",\"pairsCompared\":" + summary.getPairsCompared() +
+                ",\"mismatches\":" + summary.getMismatches() +
+                ",\"orphanDoubleEntries\":" + summary.getOrphanDoubleEntries() +
+                ",\"blankParticipantIds\":" + summary.getBlankParticipantIds() +
+                ",\"duplicateParticipantIds\":" + summary.getDuplicateParticipantIds() +
+                ",\"raggedRows\":" + summary.getRaggedRows() +
+                ",\"comparedColumns\":" + summary.getComparedColumns() +
+                ",\"noMajorityCells\":" + summary.getNoMajorityCells() + "}");
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    public static String quote(@NonNull final String value) {
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private void write(@NonNull final String line) {
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } catch (final IOException e) {
+            log.error("Exception in writing comparison event", e);
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.ltimothy.fclab.listener;
+
+import com.opencsv.ICSVWriter;
+import lombok.NonNull;
+import lombok.Value;
+import org.ltimothy.fclab.data.ColumnIdentifiers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Collects the mismatches of an analysis as it runs, for reports that are much smaller than the full export: a long
+ * format file with one row per mismatching cell, and a summary of mismatch rates per column and per participant. Only
+ * mismatches and one count per compared pair are kept, so the report stays small when few cells differ.
+ */
+public class MismatchReport implements ComparisonListener {
+    private static final String[] MISMATCHES_HEADER =
+            {"ParticipantID", "Column", "ColumnHeader", "OriginalValue", "DoubleEntryValue"};
+    private static final String[] SUMMARY_HEADER =
+            {"Scope", "ID", "ColumnHeader", "Mismatches", "Compared", "MismatchRate"};
+    private static final String TOTAL_SCOPE = "total";
+    private static final String COLUMN_SCOPE = "column";
+    private static final String PARTICIPANT_SCOPE = "participant";
+
+    private final List<Mismatch> mismatches;
+    private final Map<Integer, ColumnMismatches> columnMismatches;
+    private final Map<String, Integer> participantMismatches;
+    private Optional<ComparisonSummary> summary;
+
+    public MismatchReport() {
+        this.mismatches = new ArrayList<>();
+        this.columnMismatches = new TreeMap<>();
+        this.participantMismatches = new LinkedHashMap<>();
+        this.summary = Optional.empty();
+    }
+
+    @Override
+    public void pairStarted(@NonNull final String participantId) {
+        participantMismatches.put(participantId, 0);
+    }
+
+    @Override
+    public void mismatchFound(@NonNull final String participantId, final int columnIndex,
+                              @NonNull final String columnHeader, @NonNull final String originalValue,
+                              @NonNull final String doubleEntryValue) {
+        mismatches.add(new Mismatch(participantId, columnIndex, columnHeader, originalValue, doubleEntryValue));
+        columnMismatches.computeIfAbsent(columnIndex, index -> new ColumnMismatches(columnHeader)).count++;
+        participantMismatches.merge(participantId, 1, Integer::sum);
+    }
+
+    @Override
+    public void finished(@NonNull final ComparisonSummary comparisonSummary) {
+        this.summary = Optional.of(comparisonSummary);
+    }
+
+    public int getMismatchCount() {
+        return mismatches.size();
+    }
+
+    /**
+     * Writes one row per mismatching cell, in the order the mismatches were found.
+     */
+    public void writeMismatches(@NonNull final ICSVWriter writer) {
+        writer.writeNext(MISMATCHES_HEADER);
+        for (final Mismatch mismatch : mismatches) {
+            writer.writeNext(new String[]{mismatch.getParticipantId(),
+                    ColumnIdentifiers.toColumnIdentifier(mismatch.getColumnIndex()), mismatch.getColumnHeader(),
+                    mismatch.getOriginalValue(), mismatch.getDoubleEntryValue()});
+        }
+    }
+
+    /**
+     * Writes the overall mismatch rate, followed by the rate of every column with at least one mismatch (out of all
+     * compared pairs) and the rate of every compared participant (out of all compared columns).
+     */
+    public void writeSummary(@NonNull final ICSVWriter writer) throws IllegalStateException {
+        final ComparisonSummary comparisonSummary = summary.orElseThrow(() ->
+                new IllegalStateException("The analysis has not finished yet"));
+        final long pairsCompared = comparisonSummary.getPairsCompared();
+        final long comparedColumns = comparisonSummary.getComparedColumns();
+
+        writer.writeNext(SUMMARY_HEADER);
+        writer.writeNext(summaryRow(TOTAL_SCOPE, "", "", comparisonSummary.getMismatches(),
+                pairsCompared * comparedColumns));
+        for (final Map.Entry<Integer, ColumnMismatches> column : columnMismatches.entrySet()) {
+            writer.writeNext(summaryRow(COLUMN_SCOPE, ColumnIdentifiers.toColumnIdentifier(column.getKey()),
+                    column.getValue().header, column.getValue().count, pairsCompared));
+        }
+        for (final Map.Entry<String, Integer> participant : participantMismatches.entrySet()) {
+            writer.writeNext(summaryRow(PARTICIPANT_SCOPE, participant.getKey(), "", participant.getValue(),
+                    comparedColumns));
+        }
+    }
+
+    private static String[] summaryRow(@NonNull final String scope, @NonNull final String id,
+                                       @NonNull final String columnHeader, final long mismatchCount,
+                                       final long compared) {
+        final double rate = compared == 0 ? 0 : (double) mismatchCount / compared;
+        return new String[]{scope, id, columnHeader, Long.toString(mismatchCount), Long.toString(compared),
+                String.format(Locale.ROOT, "%.4f", rate)};
+    }
+
+    @Value
+    private static class Mismatch {
+        String participantId;
+        int columnIndex;
+        String columnHeader;
+        String originalValue;
+        String doubleEntryValue;
+    }
+
+    private static final class ColumnMismatches {
+        private final String header;
+        private long count;
+
+        private ColumnMismatches(@NonNull final String header) {
+            this.header = header;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.ltimothy.fclab.listener;
+
+import lombok.NonNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Renders comparison events as the human-readable status lines shown in the status panel and on the console.
+ */
+public class TextComparisonListener implements ComparisonListener {
+    private static final int BOX_WIDTH = 50;
+
+    private final Consumer<String> statusConsumer;
+
+    public TextComparisonListener(@NonNull final Consumer<String> statusConsumer) {
+        this.statusConsumer = statusConsumer;
+    }
+
+    @Override
+    public void pairStarted(@NonNull final String participantId) {
+        printAnalysisHeader(participantId);
+    }
+
+    @Override
+    public void mismatchFound(@NonNull final String participantId, final int columnIndex,
+                              @NonNull final String columnHeader, @NonNull final String originalValue,
+                              @NonNull final String doubleEntryValue) {
+        statusConsumer.accept("[Mismatch] " + columnHeader + " originally was \"" +
+                originalValue.trim() + "\" but was \"" + doubleEntryValue.trim() + "\" in the double entry.");
+    }
+
+    @Override
+    public void noMajority(@NonNull final String participantId, final int columnIndex,
+                           @NonNull final String columnHeader) {
+        statusConsumer.accept("[No majority] " + columnHeader + " has no majority across the entries of " +
+                participantId);
+    }
+
+    @Override
+    public void orphanDoubleEntry(@NonNull final String doubleEntryParticipantId,
+                                  @NonNull final String originalEntryParticipantId) {
+        printAnalysisHeader(doubleEntryParticipantId);
+        statusConsumer.accept("[Warning] There was no entry " +
+                originalEntryParticipantId + " for double-entry " + doubleEntryParticipantId);
+    }
+
+    @Override
+    public void blankParticipantIdDropped(final long row, @NonNull final String[] fields) {
+        statusConsumer.accept("A row with a blank participant id was removed!");
+    }
+
+    @Override
+    public void duplicateParticipantId(@NonNull final String participantId, final long row,
+                                       final boolean replacedEarlierRow) {
+        statusConsumer.accept("[Warning] Row " + row + " repeats participant id " + participantId +
+                (replacedEarlierRow ? " and replaced the earlier row" : " and was skipped"));
+    }
+
+    @Override
+    public void raggedRow(final long row, final int fields, final int expectedFields) {
+        statusConsumer.accept("[Warning] Row " + row + " has " + fields + " fields instead of " + expectedFields);
+    }
+
+    @Override
+    public void finished(@NonNull final ComparisonSummary summary) {
+        statusConsumer.accept(summary.toString());
+    }
+
+    private void printAnalysisHeader(@NonNull final String participantId) {
+        int padding = (BOX_WIDTH - participantId.length()) / 2;
+        boolean isOdd = participantId.length() % 2 == 1;
+
+        statusConsumer.accept("+" + "-".repeat(BOX_WIDTH - 2) + "+");
+        statusConsumer.accept("|" + " ".repeat(BOX_WIDTH - 2) + "|");
+        statusConsumer.accept(String.format("|%" + padding + "s%s%" + (isOdd ? padding - 1 : padding) +
+                "s|\n", "", participantId, ""));
+        statusConsumer.accept("|" + " ".repeat(BOX_WIDTH - 2) + "|");
+        statusConsumer.accept("+" + "-".repeat(BOX_WIDTH - 2) + "+");
+    }
+}